@@ -0,0 +1,21 @@
+package edu.kit.tm.ptp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An interface for subscribers to received byte[] messages which parse the bytes in place.
+ * If pooled receive buffers are enabled in the configuration the messages are passed without
+ * allocating memory.
+ *
+ * @see Configuration#getPooledReceiveBuffers()
+ */
+public interface ByteBufferReceiveListener {
+  /**
+   * Indicates that a message was received. The buffer is only valid until the method returns and
+   * is reused for other messages afterwards. Copy the bytes to keep them.
+   *
+   * @param data Read-only buffer containing the message between position and limit.
+   * @param source The hidden service identifier of the source of the message.
+   */
+  void messageReceived(ByteBuffer data, Identifier source);
+}
@@ -1,12 +1,17 @@
 package edu.kit.tm.ptp;
 
+import edu.kit.tm.ptp.thread.SharedScheduler;
+import edu.kit.tm.ptp.thread.WaitStrategy;
 import edu.kit.tm.ptp.utility.Constants;
 
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.logging.Logger;
 
 
 /**
  * Holds the PeerTorPeer (PTP) configuration.
+ * None of the options makes PTP compatible with released versions (v0.4.1 and earlier), which
+ * use another wire format, see {@link edu.kit.tm.ptp.serialization.CodecRegistry}.
  *
  * @author Timon Hackenjos
  * @author Simeon Andreev
@@ -17,6 +22,10 @@ public class Configuration {
   public static final int DEFAULT_CONNECTRETRYINTERVAL = 30 * 1000;
   public static final int DEFAULT_ISALIVETIMEOUT = 60 * 1000;
   public static final int DEFAULT_ISALIVESENDTIMEOUT = 20 * 1000;
+  public static final int DEFAULT_EVENTQUEUECAPACITY = 4096;
+  public static final WaitStrategy.Type DEFAULT_EVENTWAITSTRATEGY = WaitStrategy.Type.PARK;
+  public static final int DEFAULT_DECODETHREADS = 0;
+  public static final int DEFAULT_LISTENERTHREADS = 0;
 
   /** The logger for this class. */
   private Logger logger = null;
@@ -42,6 +51,14 @@ public class Configuration {
   private int isAliveSendTimeout = DEFAULT_ISALIVESENDTIMEOUT;
   private int connectRetryInterval = DEFAULT_CONNECTRETRYINTERVAL;
   private int messageSendRetryInterval = DEFAULT_MESSAGESENDRETRYINTERVAL;
+  private int eventQueueCapacity = DEFAULT_EVENTQUEUECAPACITY;
+  private WaitStrategy.Type eventWaitStrategy = DEFAULT_EVENTWAITSTRATEGY;
+  private boolean useEventLoop = false;
+  private int decodeThreads = DEFAULT_DECODETHREADS;
+  private boolean pooledReceiveBuffers = false;
+  private int listenerThreads = DEFAULT_LISTENERTHREADS;
+  private boolean rawFrames = false;
+  private ScheduledExecutorService scheduler = null;
 
   protected Configuration() {
 
@@ -90,6 +107,38 @@ public class Configuration {
     sb.append(isAliveSendTimeout);
     sb.append("\n");
 
+    sb.append("\tEvent queue capacity = ");
+    sb.append(eventQueueCapacity);
+    sb.append("\n");
+
+    sb.append("\tEvent wait strategy = ");
+    sb.append(eventWaitStrategy);
+    sb.append("\n");
+
+    sb.append("\tUse event loop = ");
+    sb.append(useEventLoop);
+    sb.append("\n");
+
+    sb.append("\tDecode threads = ");
+    sb.append(decodeThreads);
+    sb.append("\n");
+
+    sb.append("\tPooled receive buffers = ");
+    sb.append(pooledReceiveBuffers);
+    sb.append("\n");
+
+    sb.append("\tListener threads = ");
+    sb.append(listenerThreads);
+    sb.append("\n");
+
+    sb.append("\tRaw frames = ");
+    sb.append(rawFrames);
+    sb.append("\n");
+
+    sb.append("\tScheduler = ");
+    sb.append(scheduler == null ? "shared" : scheduler);
+    sb.append("\n");
+
     sb.append("</Configuration>");
 
     return sb.toString();
@@ -180,6 +229,69 @@ public class Configuration {
     this.messageSendRetryInterval = messageSendRetryInterval;
   }
 
+  public synchronized void setEventQueueCapacity(int eventQueueCapacity) {
+    if (eventQueueCapacity <= 0) {
+      throw new IllegalArgumentException();
+    }
+
+    this.eventQueueCapacity = eventQueueCapacity;
+  }
+
+  public synchronized void setEventWaitStrategy(WaitStrategy.Type eventWaitStrategy) {
+    if (eventWaitStrategy == null) {
+      throw new IllegalArgumentException();
+    }
+
+    this.eventWaitStrategy = eventWaitStrategy;
+  }
+
+  public synchronized void setUseEventLoop(boolean useEventLoop) {
+    this.useEventLoop = useEventLoop;
+  }
+
+  public synchronized void setDecodeThreads(int decodeThreads) {
+    if (decodeThreads < 0) {
+      throw new IllegalArgumentException();
+    }
+
+    this.decodeThreads = decodeThreads;
+  }
+
+  public synchronized void setPooledReceiveBuffers(boolean pooledReceiveBuffers) {
+    this.pooledReceiveBuffers = pooledReceiveBuffers;
+  }
+
+  public synchronized void setListenerThreads(int listenerThreads) {
+    if (listenerThreads < 0) {
+      throw new IllegalArgumentException();
+    }
+
+    this.listenerThreads = listenerThreads;
+  }
+
+  /**
+   * Sets whether byte arrays and buffers are sent as raw frames. Disabled by default. Peers
+   * running a version without raw frames read the flagged length as a negative message length,
+   * fail to allocate a buffer for it and terminate their process, so raw frames may only be
+   * enabled if all peers support them. Received raw frames are read regardless of this setting.
+   *
+   * @param rawFrames True to send bytes as raw frames, false to send them as encoded byte[]
+   *        messages.
+   */
+  public synchronized void setRawFrames(boolean rawFrames) {
+    this.rawFrames = rawFrames;
+  }
+
+  /**
+   * Sets the scheduler which runs the timers of PTP. Allows several PTP instances to share threads.
+   * The scheduler isn't shut down by PTP.
+   *
+   * @param scheduler The scheduler or null to use the scheduler shared by all PTP instances.
+   */
+  public synchronized void setScheduler(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+  }
+
   /**
    * Returns the PTP working directory.
    */
@@ -226,7 +338,9 @@ public class Configuration {
   }
 
   /**
-   * Returns the interval (in milliseconds) at which timers are updated.
+   * Returns the maximum interval (in milliseconds) at which timers are updated. Timers expire at
+   * most {@link edu.kit.tm.ptp.connection.TimerManager#MAX_TICK} milliseconds late, the interval
+   * only bounds how long the event loop takes to notice timers set by other threads.
    */
   public synchronized int getTimerUpdateInterval() {
     return timerUpdateInterval;
@@ -243,7 +357,8 @@ public class Configuration {
 
   /**
    * Returns the time (in milliseconds) the sender of a message waits for a response
-   * before closing the connection.
+   * before closing the connection. Once the round-trip time to the peer has been measured
+   * the IsAliveSendTimeout plus a timeout derived from the round-trip time is used instead.
    */
   public synchronized int getIsAliveTimeout() {
     return isAliveTimeout;
@@ -259,11 +374,75 @@ public class Configuration {
 
   /**
    * Returns the time (in milliseconds) to wait before retrying to send messages.
+   * Not used anymore, unsent messages are retried as soon as their connection makes progress or
+   * their timeout elapses. Kept for existing configuration files.
    */
   public synchronized int getMessageSendRetryInterval() {
     return messageSendRetryInterval;
   }
 
+  /**
+   * Returns the maximum number of events queued for the ConnectionManager.
+   */
+  public synchronized int getEventQueueCapacity() {
+    return eventQueueCapacity;
+  }
+
+  /**
+   * Returns how the thread of the ConnectionManager waits for new events.
+   */
+  public synchronized WaitStrategy.Type getEventWaitStrategy() {
+    return eventWaitStrategy;
+  }
+
+  /**
+   * Returns true if connections, messages and timers are handled by a single thread.
+   */
+  public synchronized boolean getUseEventLoop() {
+    return useEventLoop;
+  }
+
+  /**
+   * Returns the number of threads decoding received messages. 0 means that messages are decoded
+   * by the thread handling the connections.
+   */
+  public synchronized int getDecodeThreads() {
+    return decodeThreads;
+  }
+
+  /**
+   * Returns true if received messages are read into pooled buffers instead of a new array per
+   * message.
+   */
+  public synchronized boolean getPooledReceiveBuffers() {
+    return pooledReceiveBuffers;
+  }
+
+  /**
+   * Returns the number of threads calling the listeners of the application. 0 means that
+   * listeners are called by the thread which handled the message.
+   */
+  public synchronized int getListenerThreads() {
+    return listenerThreads;
+  }
+
+  /**
+   * Returns true if byte arrays and buffers are sent as raw frames without encoding them.
+   */
+  public synchronized boolean getRawFrames() {
+    return rawFrames;
+  }
+
+  /**
+   * Returns the scheduler which runs the timers of PTP. Defaults to the scheduler shared by all PTP
+   * instances of the JVM.
+   *
+   * @see SharedScheduler
+   */
+  public synchronized ScheduledExecutorService getScheduler() {
+    return scheduler == null ? SharedScheduler.get() : scheduler;
+  }
+
   private void portValid(int port) {
     if (port < 0 || port > Constants.maxport) {
       throw new IllegalArgumentException();
@@ -1,5 +1,6 @@
 package edu.kit.tm.ptp;
 
+import edu.kit.tm.ptp.thread.WaitStrategy;
 import edu.kit.tm.ptp.utility.Constants;
 
 import java.io.BufferedReader;
@@ -9,6 +10,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.logging.Logger;
 
 
@@ -34,6 +36,13 @@ public class ConfigurationFileReader {
   public static final String IsAliveSendTimeout = "IsAliveSendTimeout";
   public static final String ConnectRetryInterval = "ConnectRetryInterval";
   public static final String MessageSendRetryInterval = "MessageSendRetryInterval";
+  public static final String EventQueueCapacity = "EventQueueCapacity";
+  public static final String EventWaitStrategy = "EventWaitStrategy";
+  public static final String UseEventLoop = "UseEventLoop";
+  public static final String DecodeThreads = "DecodeThreads";
+  public static final String PooledReceiveBuffers = "PooledReceiveBuffers";
+  public static final String ListenerThreads = "ListenerThreads";
+  public static final String RawFrames = "RawFrames";
 
   /**
    * Constructor method.
@@ -144,6 +153,54 @@ public class ConfigurationFileReader {
       logger.info("Read " + MessageSendRetryInterval + " = " + messageSendRetryInterval);
     }
 
+    if (check(properties, EventQueueCapacity)) {
+      int eventQueueCapacity = parse(properties, EventQueueCapacity);
+      config.setEventQueueCapacity(eventQueueCapacity);
+      logger.info("Read " + EventQueueCapacity + " = " + eventQueueCapacity);
+    }
+
+    if (check(properties, EventWaitStrategy)) {
+      String value = properties.get(EventWaitStrategy);
+
+      try {
+        config.setEventWaitStrategy(WaitStrategy.Type.valueOf(value.toUpperCase(Locale.ENGLISH)));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown value of the " + EventWaitStrategy
+            + " property: " + value);
+      }
+      logger.info("Read " + EventWaitStrategy + " = " + value);
+    }
+
+    if (check(properties, UseEventLoop)) {
+      boolean useEventLoop = parseBoolean(properties, UseEventLoop);
+      config.setUseEventLoop(useEventLoop);
+      logger.info("Read " + UseEventLoop + " = " + useEventLoop);
+    }
+
+    if (check(properties, DecodeThreads)) {
+      int decodeThreads = parse(properties, DecodeThreads);
+      config.setDecodeThreads(decodeThreads);
+      logger.info("Read " + DecodeThreads + " = " + decodeThreads);
+    }
+
+    if (check(properties, PooledReceiveBuffers)) {
+      boolean pooledReceiveBuffers = parseBoolean(properties, PooledReceiveBuffers);
+      config.setPooledReceiveBuffers(pooledReceiveBuffers);
+      logger.info("Read " + PooledReceiveBuffers + " = " + pooledReceiveBuffers);
+    }
+
+    if (check(properties, ListenerThreads)) {
+      int listenerThreads = parse(properties, ListenerThreads);
+      config.setListenerThreads(listenerThreads);
+      logger.info("Read " + ListenerThreads + " = " + listenerThreads);
+    }
+
+    if (check(properties, RawFrames)) {
+      boolean rawFrames = parseBoolean(properties, RawFrames);
+      config.setRawFrames(rawFrames);
+      logger.info("Read " + RawFrames + " = " + rawFrames);
+    }
+
     return config;
   }
 
@@ -178,4 +235,24 @@ public class ConfigurationFileReader {
     return value;
 
   }
+
+  /**
+   * Parses the boolean value of a specific key in a string-to-string hash map.
+   *
+   * @param map The hash map containing the key value pair.
+   * @param key The key of the value to be parsed.
+   */
+  private boolean parseBoolean(HashMap<String, String> map, String key) {
+    logger.info("Parsing boolean value of the " + key + " property: " + map.get(key));
+    String value = map.get(key);
+
+    if ("true".equalsIgnoreCase(value)) {
+      return true;
+    } else if ("false".equalsIgnoreCase(value)) {
+      return false;
+    }
+
+    throw new IllegalArgumentException(
+        "Could not parse the boolean value of the " + key + " property.");
+  }
 }
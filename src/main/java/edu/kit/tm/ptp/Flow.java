@@ -0,0 +1,68 @@
+package edu.kit.tm.ptp;
+
+/**
+ * Interfaces for demand driven streams of messages. Mirror java.util.concurrent.Flow which isn't
+ * available on every platform PTP supports, adapters only need to forward the calls.
+ */
+public final class Flow {
+  private Flow() {
+  }
+
+  /**
+   * Produces items for subscribers which request them.
+   *
+   * @param <T> The type of the items.
+   */
+  public interface Publisher<T> {
+    /**
+     * Adds the subscriber. The subscriber is informed about its subscription by
+     * {@link Subscriber#onSubscribe(Subscription)}.
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+  }
+
+  /**
+   * Receives items of a publisher. The methods of a subscription are never called concurrently.
+   *
+   * @param <T> The type of the items.
+   */
+  public interface Subscriber<T> {
+    /**
+     * Gets called before any other method. No items are passed until they have been requested
+     * using the subscription.
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Gets called for every requested item.
+     */
+    void onNext(T item);
+
+    /**
+     * Gets called if the subscription failed. No other method is called afterwards.
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * Gets called if no more items will be passed.
+     */
+    void onComplete();
+  }
+
+  /**
+   * Connects a publisher and a subscriber.
+   */
+  public interface Subscription {
+    /**
+     * Adds the number of items to the demand of the subscriber.
+     *
+     * @param n The number of items. Must be positive.
+     */
+    void request(long n);
+
+    /**
+     * Stops passing items to the subscriber.
+     */
+    void cancel();
+  }
+}
@@ -1,5 +1,8 @@
 package edu.kit.tm.ptp;
 
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Interface for a generic queue which can only be polled.
  * 
@@ -8,6 +11,23 @@ package edu.kit.tm.ptp;
  * @param <T> The type of the items in the queue.
  */
 public interface IMessageQueue<T> {
+  /**
+   * Decides what happens to a received message if a bounded queue is full.
+   */
+  enum OverflowPolicy {
+    /**
+     * Waits until the queue has space. Blocks the thread handling received messages, which stalls
+     * the other peers of the thread as well.
+     *
+     * @see Configuration#getDecodeThreads()
+     */
+    BLOCK,
+    /** Removes the oldest message of the queue to make space. */
+    DROP_OLDEST,
+    /** Drops the received message. */
+    DROP_NEWEST
+  }
+
   /**
    * Returns true if the queue contains a message.
    */
@@ -17,4 +37,38 @@ public interface IMessageQueue<T> {
    * Return the next item in the queue or null if the queue is empty.
    */
   QueuedMessage<T> pollMessage();
+
+  /**
+   * Returns the next item in the queue. Waits until an item is available.
+   *
+   * @throws InterruptedException If the thread has been interrupted while waiting.
+   */
+  QueuedMessage<T> take() throws InterruptedException;
+
+  /**
+   * Returns the next item in the queue. Waits up to the supplied time until an item is available.
+   *
+   * @return The item or null if the time elapsed.
+   * @throws InterruptedException If the thread has been interrupted while waiting.
+   */
+  QueuedMessage<T> poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+  /**
+   * Removes up to the supplied number of items and adds them to the collection. Doesn't wait.
+   *
+   * @return The number of items added.
+   */
+  int drainTo(Collection<? super QueuedMessage<T>> target, int maxItems);
+
+  /**
+   * Returns the number of items which have been dropped because the queue was full.
+   */
+  long getDropped();
+
+  /**
+   * Returns the number of items which have been discarded because their TTL elapsed.
+   *
+   * @see PTP#setMessageTtl(Class, long)
+   */
+  long getExpired();
 }
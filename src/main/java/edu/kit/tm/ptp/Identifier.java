@@ -14,6 +14,12 @@ public class Identifier {
   private String address;
   
   private static final Pattern validOnionAddress = Pattern.compile("[a-z2-7]{16}.onion");
+  private static final byte UNKNOWN = 0;
+  private static final byte VALID = 1;
+  private static final byte INVALID = 2;
+
+  /** Cached result of {@link #isValid()}. Avoids to match the pattern for every message. */
+  private transient volatile byte validity = UNKNOWN;
   
   public Identifier() {
     address = null;
@@ -68,7 +74,14 @@ public class Identifier {
   }
   
   public boolean isValid() {
-    return validOnionAddress.matcher(address).matches();
+    byte cached = validity;
+
+    if (cached == UNKNOWN) {
+      cached = validOnionAddress.matcher(address).matches() ? VALID : INVALID;
+      validity = cached;
+    }
+
+    return cached == VALID;
   }
 
 }
@@ -2,8 +2,15 @@ package edu.kit.tm.ptp;
 
 import edu.kit.tm.ptp.connection.ExpireListener;
 import edu.kit.tm.ptp.connection.TimerManager;
+import edu.kit.tm.ptp.serialization.CodecRegistry;
+import edu.kit.tm.ptp.utility.KeyCounter;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -14,6 +21,12 @@ import java.util.logging.Logger;
  * configured by Configuration.getIsAliveTimeout().
  * If the receiver has no regular message to send it can send an IsAliveMessage.
  * IsAliveMessages must NOT be replied to by another IsAliveMessage.
+ * The round-trip time to every peer is measured by pings which the peer answers at once by a
+ * pong. Once there is a sample the time to wait for an answer is derived from the round-trip
+ * time instead of using Configuration.getIsAliveTimeout().
+ * Versions without pings can't decode them. They treat a ping like a regular message which needs
+ * an answer and log a warning, so a peer which never answered a ping isn't probed again, see
+ * {@link RttEstimator#startProbe(long, long)}.
  * 
  * @author Timon Hackenjos
  *
@@ -29,16 +42,35 @@ public class IsAliveManager implements ExpireListener {
   private TimerManager timerManager;
 
   private ReentrantLock tmLock = new ReentrantLock();
+  /** Identifiers whose messages aren't read at the moment and therefore can't time out. */
+  private final KeyCounter<Identifier> pausedReading = new KeyCounter<>();
+  /** Identifiers whose receive timer expired while reading was paused. */
+  private final Set<Identifier> ignoredTimeouts =
+      Collections.newSetFromMap(new ConcurrentHashMap<Identifier, Boolean>());
+  private final Map<Identifier, RttEstimator> estimators = new ConcurrentHashMap<>();
+  /** False while the network is disabled. No timers are set until it is enabled again. */
+  private volatile boolean networkEnabled = true;
 
   private static final Logger logger = Logger.getLogger(IsAliveManager.class.getName());
 
   public IsAliveManager(PTP ptp, Configuration config) {
-    this(ptp, config, null);
+    this(ptp, config, (Executor) null);
   }
 
   public IsAliveManager(PTP ptp, Configuration config, ThreadGroup group) {
+    this(ptp, config, (Executor) null);
+  }
+
+  /**
+   * Constructs an IsAliveManager which handles expired timers in the threads of the executor.
+   *
+   * @param executor Handles expired timers instead of the threads of the scheduler or null.
+   */
+  public IsAliveManager(PTP ptp, Configuration config, Executor executor) {
     this.ptp = ptp;
-    timerManager = new TimerManager(this, config.getTimerUpdateInterval());
+    // Share the threads with the timers of other PTP instances
+    timerManager = new TimerManager(this, config.getTimerUpdateInterval(),
+        config.getScheduler(), executor);
     isAliveTimeout = config.getIsAliveTimeout();
     isAliveSendTimeout = config.getIsAliveSendTimeout();
   }
@@ -53,7 +85,7 @@ public class IsAliveManager implements ExpireListener {
     // We received a message. Stop receive timer.
     timerManager.remove(source, RECEIVETIMERCLASS);
 
-    if (!isAliveMsg) {
+    if (!isAliveMsg && networkEnabled) {
       // It's not a isAliveMessage so we have to answer it. Set timer
       timerManager.setTimerIfNoneExists(source, isAliveSendTimeout, SENDTIMERCLASS);
     }
@@ -65,14 +97,115 @@ public class IsAliveManager implements ExpireListener {
    * @param destination The destination of the message.
    */
   public void messageSent(Identifier destination) {
-    System.out.println("DEBUG: timerManage remove, try Lock");
     // We sent a regular message so we don't have to send an IsAliveMessage
     timerManager.remove(destination, SENDTIMERCLASS);
 
+    if (!networkEnabled) {
+      return;
+    }
+
     // We expect an answer. Set timer
-    timerManager.setTimerIfNoneExists(destination, isAliveTimeout, RECEIVETIMERCLASS);
+    timerManager.setTimerIfNoneExists(destination, getReceiveTimeout(destination),
+        RECEIVETIMERCLASS);
+
+    probeIfDue(destination);
   }
 
+  /**
+   * Informs the manager that a ping or a pong was received. Pings and pongs are keepalives.
+   *
+   * @param source The identifier of the source of the message.
+   * @param ping True if the message was a ping, false if it was a pong.
+   * @param stamp The stamp of the ping.
+   */
+  public void probeReceived(Identifier source, boolean ping, long stamp) {
+    messageReceived(source, true);
+
+    if (ping) {
+      // Answer at once, the delay would be measured as well
+      ptp.sendProbe(source, CodecRegistry.encodeProbe(CodecRegistry.PONG_TAG, stamp),
+          getAnswerTimeout(source));
+      return;
+    }
+
+    RttEstimator estimator = estimators.get(source);
+
+    if (estimator != null
+        && estimator.probeAnswered(stamp, System.currentTimeMillis(), System.nanoTime())) {
+      logger.log(Level.FINE, "Round-trip time to " + source + " is " + estimator.getSrtt()
+          + "ms, timeout " + estimator.getRto() + "ms");
+    }
+  }
+
+  /**
+   * Returns the smoothed round-trip time to the peer in milliseconds or -1 if it hasn't been
+   * measured yet.
+   */
+  public long getRtt(Identifier identifier) {
+    RttEstimator estimator = estimators.get(identifier);
+
+    return estimator != null ? estimator.getSrtt() : -1;
+  }
+
+  /**
+   * Returns the time to wait for an answer to a message sent to the identifier. The peer answers
+   * after its IsAliveSendTimeout at the latest, the round-trip time comes on top.
+   */
+  int getReceiveTimeout(Identifier identifier) {
+    long rto = getRto(identifier);
+
+    return rto >= 0 ? (int) (isAliveSendTimeout + rto) : isAliveTimeout;
+  }
+
+
+  /**
+   * Informs the manager that messages of the identifier aren't read at the moment. Connections to
+   * the identifier don't time out while reading is paused. Calls are counted like
+   * {@link edu.kit.tm.ptp.connection.ConnectionManager#pauseReading}.
+   *
+   * A timeout which has been ignored while reading was paused is started again once reading is
+   * resumed.
+   *
+   * @param identifier The identifier of the peer.
+   * @param paused True if reading has been paused, false if it has been resumed.
+   */
+  public void setReadingPaused(Identifier identifier, boolean paused) {
+    if (paused) {
+      pausedReading.increment(identifier);
+    } else if (pausedReading.decrement(identifier) <= 0 && ignoredTimeouts.remove(identifier)
+        && networkEnabled) {
+      // The answer is still missing, give the peer another timeout to send it
+      timerManager.setTimerIfNoneExists(identifier, getReceiveTimeout(identifier),
+          RECEIVETIMERCLASS);
+    }
+  }
+
+  /**
+   * Informs the manager that the connection to the identifier has been closed. The next
+   * connection may take another route, so the round-trip time is measured again.
+   *
+   * @param identifier The identifier of the peer.
+   */
+  public void connectionClosed(Identifier identifier) {
+    estimators.remove(identifier);
+  }
+
+  /**
+   * Informs the manager if the network is available. While the network is disabled no timers are
+   * set, so connections don't time out and no keepalives are sent.
+   *
+   * @param enabled False if the network has been disabled.
+   */
+  public void changeNetwork(boolean enabled) {
+    networkEnabled = enabled;
+
+    if (!enabled) {
+      timerManager.clear();
+      ignoredTimeouts.clear();
+      // The routes to the peers change
+      estimators.clear();
+    }
+  }
 
   public void start() {
     timerManager.start();
@@ -81,6 +214,14 @@ public class IsAliveManager implements ExpireListener {
   public void stop() {
     timerManager.stop();
   }
+
+  /**
+   * Returns the TimerManager to allow updating the timers by an event loop
+   * instead of calling {@link #start()}.
+   */
+  public TimerManager getTimerManager() {
+    return timerManager;
+  }
   
 
   @Override
@@ -101,17 +242,68 @@ public class IsAliveManager implements ExpireListener {
   private void sendExpired(Identifier identifier) {
     // The sent timer expired so we didn't send a regular message since we received the last message
     logger.log(Level.INFO, "Sending IsAliveMessage to " + identifier);
-    // Send an IsAliveMessage
-    ptp.sendIsAlive(identifier, isAliveTimeout - isAliveSendTimeout);
+    // Send an IsAliveMessage, a ping if the round-trip time needs to be measured
+    if (!probeIfDue(identifier)) {
+      ptp.sendIsAlive(identifier, getAnswerTimeout(identifier));
+    }
+  }
+
+  /**
+   * Sends a ping to the identifier if the round-trip time needs to be measured.
+   *
+   * @return True if a ping has been sent.
+   */
+  private boolean probeIfDue(Identifier identifier) {
+    RttEstimator estimator = estimators.get(identifier);
+
+    if (estimator == null) {
+      estimator = new RttEstimator();
+      RttEstimator existing = estimators.putIfAbsent(identifier, estimator);
+      estimator = existing != null ? existing : estimator;
+    }
+
+    long stamp = System.nanoTime();
+
+    if (!estimator.startProbe(System.currentTimeMillis(), stamp)) {
+      return false;
+    }
+
+    ptp.sendProbe(identifier, CodecRegistry.encodeProbe(CodecRegistry.PING_TAG, stamp),
+        getAnswerTimeout(identifier));
+    return true;
+  }
+
+  /**
+   * Returns the time left to send a keepalive before the peer considers the connection dead.
+   * The peer waits for IsAliveTimeout independent of the round-trip time.
+   */
+  private long getAnswerTimeout(Identifier identifier) {
+    return isAliveTimeout - isAliveSendTimeout;
+  }
 
+  private long getRto(Identifier identifier) {
+    RttEstimator estimator = estimators.get(identifier);
 
-    // for test
-    logger.log(Level.INFO, "IsAliveMessage successfully sent to " + identifier);
+    return estimator != null ? estimator.getRto() : -1;
   }
   
   private void receiveExpired(Identifier identifier) {
+    if (pausedReading.contains(identifier)) {
+      logger.log(Level.INFO, "Ignoring timeout of " + identifier + " while reading is paused.");
+      ignoredTimeouts.add(identifier);
+
+      if (!pausedReading.contains(identifier) && ignoredTimeouts.remove(identifier)) {
+        // Reading has been resumed meanwhile
+        timerManager.setTimerIfNoneExists(identifier, getReceiveTimeout(identifier),
+            RECEIVETIMERCLASS);
+      }
+      return;
+    }
+
     // We didn't get an answer to our last message. Kill the connection.
     logger.log(Level.INFO, "Connection to " + identifier + " timed out.");
+    // The next connection may take another route
+    estimators.remove(identifier);
     ptp.closeConnections(identifier);
   }
 }
@@ -0,0 +1,50 @@
+package edu.kit.tm.ptp;
+
+import edu.kit.tm.ptp.serialization.ByteArrayMessage;
+import edu.kit.tm.ptp.serialization.CodecRegistry;
+
+import java.io.IOException;
+
+/**
+ * Received message which is decoded on first access. Allows to route a message by its type and to
+ * decode it in the thread consuming it. Thread-safe.
+ */
+final class LazyMessage {
+  private final CodecRegistry codecs;
+  private byte[] data;
+  private Object message = null;
+
+  /**
+   * Constructs a new LazyMessage.
+   *
+   * @param data The encoded message. Must not be modified afterwards.
+   * @param codecs The codecs to decode the message with.
+   */
+  LazyMessage(byte[] data, CodecRegistry codecs) {
+    this.data = data;
+    this.codecs = codecs;
+  }
+
+  /**
+   * Returns the decoded message. byte[] sent as ByteArrayMessage are unwrapped.
+   *
+   * @throws IOException If the message can't be decoded.
+   */
+  synchronized Object get() throws IOException {
+    if (message == null) {
+      Object obj = codecs.decode(data);
+
+      if (obj instanceof ByteArrayMessage) {
+        // Sent as object by the application
+        obj = ((ByteArrayMessage) obj).getData();
+      }
+
+      message = obj;
+      // Not needed anymore
+      data = null;
+    }
+
+    return message;
+  }
+
+}
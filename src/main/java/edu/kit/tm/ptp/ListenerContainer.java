@@ -1,21 +1,57 @@
 package edu.kit.tm.ptp;
 
-import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Container to store a listener for a class type.
  * Inspired by typesafe heterogeneous containers.
  * Effective Java, Second Edition, Item 29.
+ *
+ * <p>
+ * The registered type, listener, queue and publisher of a concrete class are resolved once and
+ * cached until the next registration, so routing a message costs a single lock-free lookup.
+ * </p>
  * 
  * @author Timon Hackenjos
  *
  */
 public class ListenerContainer {
-  private Map<Class<?>, Object> listeners = new Hashtable<Class<?>, Object>();
-  protected Set<Class<?>> registerClasses = new HashSet<Class<?>>();
+  private Map<Class<?>, Object> listeners = new ConcurrentHashMap<Class<?>, Object>();
+  /** Read by the receiving thread without locking. */
+  private Set<Class<?>> registerClasses =
+      Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+  /** Incremented by every registration to invalidate the cached routes. */
+  private final AtomicInteger generation = new AtomicInteger(0);
+  /** Cached routes of concrete classes, only reachable through this container. */
+  private final Map<Class<?>, Route> routes = new ConcurrentHashMap<Class<?>, Route>();
+
+  /**
+   * Where messages of a concrete class go. Immutable.
+   */
+  protected static final class Route {
+    private final int generation;
+    /** The registered type or null if the class hasn't been registered. */
+    final Class<?> type;
+    /** The listener of the registered type or null. */
+    final MessageReceivedListener<Object> listener;
+    /** The queue of the registered type or null. */
+    final MessageBuffer queue;
+    /** The publisher of the registered type or null. */
+    final MessagePublisher<Object> publisher;
+
+    private Route(int generation, Class<?> type, MessageReceivedListener<Object> listener,
+        MessageBuffer queue, MessagePublisher<Object> publisher) {
+      this.generation = generation;
+      this.type = type;
+      this.listener = listener;
+      this.queue = queue;
+      this.publisher = publisher;
+    }
+  }
 
   /**
    * Maps the listener to the supplied class type.
@@ -26,54 +62,77 @@ public class ListenerContainer {
     }
     
     listeners.put(type, listener);
+    register(type);
+  }
+
+  /**
+   * Adds the type to the registered types and invalidates the cached routes.
+   */
+  protected void register(Class<?> type) {
     registerClasses.add(type);
+    generation.incrementAndGet();
   }
-  
-  protected Class<?> getType(Object obj) {
-    for (Class<?> cl : registerClasses) {
-      if (cl.isInstance(obj)) {
-        return cl;
-      }
-    }
-    
-    throw new IllegalStateException("Type of object hasn't been registered before");
+
+  /**
+   * Invalidates the cached routes after the queue of a type has changed.
+   */
+  protected void invalidateRoutes() {
+    generation.incrementAndGet();
   }
-  
-  protected Class<?> getTypeOrNull(Object obj) {
-    for (Class<?> cl : registerClasses) {
-      if (cl.isInstance(obj)) {
-        return cl;
-      }
+
+  /**
+   * Returns the route of messages of the supplied concrete class.
+   */
+  protected Route route(Class<?> type) {
+    Route route = routes.get(type);
+    // Read the generation before resolving so that a concurrent registration is never missed
+    int current = generation.get();
+
+    if (route == null || route.generation != current) {
+      route = resolve(type, current);
+      routes.put(type, route);
     }
-    
-    return null;
+
+    return route;
   }
-  
-  
+
   /**
-   * Calls a previously registered listener.
+   * Returns the queue of the registered type or null if there is none.
    */
-  public void callReceiveListener(Object obj, Identifier source) {
-    if (!hasListener(obj)) {
-      throw new IllegalArgumentException();
-    }
-    
-    callListener(getType(obj).cast(obj), source);
+  protected MessageBuffer queueOf(Class<?> registeredType) {
+    return null;
   }
-  
-  public boolean hasListener(Object obj) {
-    return listeners.get(getType(obj)) != null;
+
+  /**
+   * Returns the publisher of the registered type or null if there is none.
+   */
+  protected MessagePublisher<Object> publisherOf(Class<?> registeredType) {
+    return null;
   }
-  
-  private <T> void callListener(T object, Identifier source) {
-    @SuppressWarnings("unchecked")
-    MessageReceivedListener<T> listener = 
-        (MessageReceivedListener<T>) listeners.get(object.getClass());
-    
-    if (listener == null) {
-      throw new IllegalArgumentException("Type of object hasn't been registered before");
+
+  private Route resolve(Class<?> type, int generation) {
+    Class<?> registeredType = null;
+
+    if (registerClasses.contains(type)) {
+      registeredType = type;
+    } else {
+      for (Class<?> cl : registerClasses) {
+        if (cl.isAssignableFrom(type)) {
+          registeredType = cl;
+          break;
+        }
+      }
     }
-    
-    listener.messageReceived(object, source);
+
+    if (registeredType == null) {
+      return new Route(generation, null, null, null, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    MessageReceivedListener<Object> listener =
+        (MessageReceivedListener<Object>) listeners.get(registeredType);
+
+    return new Route(generation, registeredType, listener, queueOf(registeredType),
+        publisherOf(registeredType));
   }
 }
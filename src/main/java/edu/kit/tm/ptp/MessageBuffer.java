@@ -0,0 +1,256 @@
+package edu.kit.tm.ptp;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Blocking queue of received messages with an optional capacity and TTL. Expired messages are
+ * skipped when polling and removed by {@link #evictExpired(long)}. Thread-safe.
+ */
+class MessageBuffer {
+  private static final Logger logger = Logger.getLogger(MessageBuffer.class.getName());
+
+  private final BlockingQueue<Object> queue;
+  private final IMessageQueue.OverflowPolicy policy;
+  private final AtomicLong dropped = new AtomicLong(0);
+  private final AtomicLong expired = new AtomicLong(0);
+  /** Number of milliseconds messages are kept after they have been received or -1. */
+  private volatile long ttl = -1;
+  /** The buffer which replaced this one or null. */
+  private volatile MessageBuffer replacement = null;
+
+  /**
+   * Constructs an unbounded MessageBuffer.
+   */
+  MessageBuffer() {
+    this(Integer.MAX_VALUE, IMessageQueue.OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * Constructs a new MessageBuffer.
+   *
+   * @param capacity The maximum number of queued messages.
+   * @param policy Decides what happens to added messages if the buffer is full.
+   */
+  MessageBuffer(int capacity, IMessageQueue.OverflowPolicy policy) {
+    this(capacity, policy, new LinkedBlockingQueue<Object>(capacity));
+  }
+
+  /**
+   * Constructs a MessageBuffer for subclasses which store the messages themselves.
+   *
+   * @param queue The queue to store the messages in or null if the subclass overrides all
+   *        methods accessing it.
+   */
+  MessageBuffer(int capacity, IMessageQueue.OverflowPolicy policy, BlockingQueue<Object> queue) {
+    if (capacity <= 0 || policy == null) {
+      throw new IllegalArgumentException();
+    }
+
+    this.queue = queue;
+    this.policy = policy;
+  }
+
+  /**
+   * Adds a message according to the overflow policy. Blocks if the policy says so.
+   */
+  void add(Object message) {
+    if (queue.remainingCapacity() == 0) {
+      // Make space before blocking or dropping messages
+      evictExpired(System.currentTimeMillis());
+    }
+
+    switch (policy) {
+      case BLOCK:
+        try {
+          queue.put(message);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          drop();
+        }
+        break;
+      case DROP_OLDEST:
+        while (!queue.offer(message)) {
+          if (queue.poll() != null) {
+            drop();
+          }
+        }
+        break;
+      case DROP_NEWEST:
+        if (!queue.offer(message)) {
+          drop();
+        }
+        break;
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  Object poll() {
+    Object message;
+
+    while ((message = queue.poll()) != null && isExpired(message, System.currentTimeMillis())) {
+      expire();
+    }
+
+    return message;
+  }
+
+  Object poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    Object message;
+
+    while ((message = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null
+        && isExpired(message, System.currentTimeMillis())) {
+      expire();
+    }
+
+    return message;
+  }
+
+  Object take() throws InterruptedException {
+    Object message;
+
+    while (isExpired(message = queue.take(), System.currentTimeMillis())) {
+      expire();
+    }
+
+    return message;
+  }
+
+  int drainTo(Collection<Object> target, int maxItems) {
+    int count = 0;
+    Object message;
+
+    while (count < maxItems && (message = poll()) != null) {
+      target.add(message);
+      count++;
+    }
+
+    return count;
+  }
+
+  boolean isEmpty() {
+    Object message;
+
+    while ((message = queue.peek()) != null && isExpired(message, System.currentTimeMillis())) {
+      if (queue.remove(message)) {
+        expire();
+      }
+    }
+
+    return message == null;
+  }
+
+  /**
+   * Removes the expired messages.
+   *
+   * @param now The current time in milliseconds.
+   * @return The number of removed messages.
+   */
+  int evictExpired(long now) {
+    int count = 0;
+
+    for (Iterator<Object> it = queue.iterator(); it.hasNext();) {
+      if (isExpired(it.next(), now)) {
+        it.remove();
+        expire();
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Replaces this buffer and moves the queued messages to the replacement.
+   */
+  void replaceBy(MessageBuffer replacement) {
+    if (replacement == null) {
+      throw new IllegalArgumentException();
+    }
+
+    this.replacement = replacement;
+    forward();
+  }
+
+  /**
+   * Moves the queued messages to the replacement if this buffer has been replaced. Has to be
+   * called after adding a message as the producer might have added it after the replacement
+   * already moved the messages.
+   */
+  void forward() {
+    MessageBuffer target = replacement;
+
+    if (target == null) {
+      return;
+    }
+
+    Object message;
+
+    while ((message = poll()) != null) {
+      target.add(message);
+    }
+
+    // The replacement might have been replaced as well
+    target.forward();
+  }
+
+  /**
+   * Sets the number of milliseconds messages are kept after they have been received.
+   *
+   * @param ttl The TTL or -1 to keep messages until they are polled.
+   */
+  void setTtl(long ttl) {
+    if (ttl < -1) {
+      throw new IllegalArgumentException();
+    }
+
+    this.ttl = ttl;
+  }
+
+  long getTtl() {
+    return ttl;
+  }
+
+  long getExpired() {
+    return expired.get();
+  }
+
+  long getDropped() {
+    return dropped.get();
+  }
+
+  IMessageQueue.OverflowPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Returns true if the queued message has expired.
+   */
+  boolean isExpired(Object message, long now) {
+    return ((QueuedMessage<?>) message).isExpired(now, ttl);
+  }
+
+  /**
+   * Counts an expired message.
+   */
+  void expire() {
+    expired.incrementAndGet();
+  }
+
+  /**
+   * Counts a dropped message.
+   */
+  void drop() {
+    if (dropped.getAndIncrement() == 0) {
+      logger.log(Level.WARNING, "Message queue is full. Dropping messages.");
+    }
+  }
+}
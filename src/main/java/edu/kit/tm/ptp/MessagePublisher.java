@@ -0,0 +1,245 @@
+package edu.kit.tm.ptp;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes received messages of a type to subscribers according to their demand. Messages are
+ * buffered per subscriber. If a buffer fills up, reading messages of the source is paused until
+ * the subscribers have caught up, which slows the sender down instead of growing the buffers.
+ * Messages received while there are no subscribers are dropped. Thread-safe.
+ *
+ * <p>
+ * {@link Flow.Subscriber#onNext(Object)} is called by the thread handling received messages or by
+ * the thread requesting more messages.
+ * </p>
+ *
+ * @param <T> The type of the messages.
+ */
+class MessagePublisher<T> implements Flow.Publisher<QueuedMessage<T>> {
+  /** Number of buffered messages of a subscriber at which reading is paused. */
+  static final int HIGH_WATERMARK = 256;
+  /** Number of buffered messages of every subscriber at which reading is resumed. */
+  static final int LOW_WATERMARK = 64;
+
+  private static final Logger logger = Logger.getLogger(MessagePublisher.class.getName());
+
+  private final ReadThrottle throttle;
+  private final List<MessageSubscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final Set<Identifier> paused = new HashSet<>();
+
+  /**
+   * Pauses and resumes reading messages of a peer.
+   */
+  interface ReadThrottle {
+    void pause(Identifier source);
+
+    void resume(Identifier source);
+  }
+
+  private class MessageSubscription implements Flow.Subscription {
+    private final Flow.Subscriber<? super QueuedMessage<T>> subscriber;
+    private final Queue<QueuedMessage<T>> buffer = new ArrayDeque<>();
+    private long demand = 0;
+    private boolean cancelled = false;
+    private boolean draining = false;
+
+    private MessageSubscription(Flow.Subscriber<? super QueuedMessage<T>> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        if (terminate()) {
+          subscriber.onError(new IllegalArgumentException("Requested items must be positive"));
+        }
+        return;
+      }
+
+      synchronized (this) {
+        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      }
+
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      terminate();
+    }
+
+    /**
+     * Buffers the message.
+     *
+     * @return True if the buffer is full.
+     */
+    private boolean offer(QueuedMessage<T> message) {
+      synchronized (this) {
+        if (cancelled) {
+          return false;
+        }
+
+        buffer.add(message);
+      }
+
+      drain();
+
+      synchronized (this) {
+        return buffer.size() >= HIGH_WATERMARK;
+      }
+    }
+
+    private synchronized int buffered() {
+      return buffer.size();
+    }
+
+    /**
+     * Cancels the subscription.
+     *
+     * @return False if the subscription has been cancelled already.
+     */
+    private boolean terminate() {
+      synchronized (this) {
+        if (cancelled) {
+          return false;
+        }
+
+        cancelled = true;
+        buffer.clear();
+      }
+
+      subscriptions.remove(this);
+      resumeIfDrained();
+      return true;
+    }
+
+    /**
+     * Passes buffered messages as long as there is demand. Only one thread passes messages at a
+     * time, other threads leave their messages to it.
+     */
+    private void drain() {
+      synchronized (this) {
+        if (draining) {
+          return;
+        }
+        draining = true;
+      }
+
+      while (true) {
+        QueuedMessage<T> message;
+
+        synchronized (this) {
+          if (cancelled || demand == 0 || buffer.isEmpty()) {
+            draining = false;
+            break;
+          }
+
+          message = buffer.poll();
+          demand--;
+        }
+
+        try {
+          subscriber.onNext(message);
+        } catch (RuntimeException e) {
+          logger.log(Level.WARNING, "Subscriber threw Exception: " + e.getMessage());
+          synchronized (this) {
+            draining = false;
+          }
+          terminate();
+          return;
+        }
+      }
+
+      resumeIfDrained();
+    }
+  }
+
+  /**
+   * Constructs a new MessagePublisher.
+   *
+   * @param throttle Pauses and resumes reading messages of peers.
+   */
+  MessagePublisher(ReadThrottle throttle) {
+    if (throttle == null) {
+      throw new IllegalArgumentException();
+    }
+
+    this.throttle = throttle;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super QueuedMessage<T>> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException();
+    }
+
+    MessageSubscription subscription = new MessageSubscription(subscriber);
+    subscriptions.add(subscription);
+    subscriber.onSubscribe(subscription);
+  }
+
+  /**
+   * Passes a received message to the subscribers. Pauses reading messages of the source if a
+   * subscriber can't keep up.
+   */
+  void offer(QueuedMessage<T> message) {
+    boolean full = false;
+
+    for (MessageSubscription subscription : subscriptions) {
+      full |= subscription.offer(message);
+    }
+
+    if (full) {
+      // Throttle calls are made holding the lock to keep pause and resume of a source in order
+      synchronized (this) {
+        if (paused.add(message.getSource())) {
+          throttle.pause(message.getSource());
+        }
+      }
+
+      // Subscribers might have caught up in the meantime
+      resumeIfDrained();
+    }
+  }
+
+  /**
+   * Returns true if the publisher has subscribers.
+   */
+  boolean hasSubscribers() {
+    return !subscriptions.isEmpty();
+  }
+
+  /**
+   * Informs the subscribers that no more messages will be published.
+   */
+  void complete() {
+    for (MessageSubscription subscription : subscriptions) {
+      if (subscription.terminate()) {
+        subscription.subscriber.onComplete();
+      }
+    }
+  }
+
+  private void resumeIfDrained() {
+    for (MessageSubscription subscription : subscriptions) {
+      if (subscription.buffered() > LOW_WATERMARK) {
+        return;
+      }
+    }
+
+    synchronized (this) {
+      for (Identifier source : paused) {
+        throttle.resume(source);
+      }
+
+      paused.clear();
+    }
+  }
+}
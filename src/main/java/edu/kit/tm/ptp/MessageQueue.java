@@ -1,5 +1,8 @@
 package edu.kit.tm.ptp;
 
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Generic queue which can only be polled.
  * 
@@ -10,6 +13,7 @@ package edu.kit.tm.ptp;
 public class MessageQueue<T> implements IMessageQueue<T> {
   private Class<T> type;
   private MessageQueueContainer container;
+  private Identifier source = null;
   
   /**
    * Constructs a new MessageQueue object.
@@ -22,14 +26,90 @@ public class MessageQueue<T> implements IMessageQueue<T> {
     this.container = container;
   }
 
+  /**
+   * Constructs a new MessageQueue object which only returns items of a source. Requires the items
+   * of the type to be queued per source.
+   *
+   * @param type The type of items to poll.
+   * @param container The container to poll items from.
+   * @param source The source of the items to poll.
+   */
+  public MessageQueue(Class<T> type, MessageQueueContainer container, Identifier source) {
+    this(type, container);
+
+    if (source == null) {
+      throw new IllegalArgumentException();
+    }
+
+    this.source = source;
+  }
+
   @Override
   public boolean hasMessage() {
+    if (source != null) {
+      return !container.getSourceQueue(type).isEmpty(source);
+    }
+
     return container.hasMessage(type);
   }
 
   @Override
   public QueuedMessage<T> pollMessage() {
+    if (source != null) {
+      return cast(container.getSourceQueue(type).poll(source));
+    }
+
     return container.pollMessage(type);
   }
 
+  @Override
+  public QueuedMessage<T> take() throws InterruptedException {
+    if (source != null) {
+      return cast(container.getSourceQueue(type).take(source));
+    }
+
+    return cast(container.getQueue(type).take());
+  }
+
+  @Override
+  public QueuedMessage<T> poll(long timeout, TimeUnit unit) throws InterruptedException {
+    if (source != null) {
+      return cast(container.getSourceQueue(type).poll(source, timeout, unit));
+    }
+
+    return cast(container.getQueue(type).poll(timeout, unit));
+  }
+
+  @Override
+  public int drainTo(Collection<? super QueuedMessage<T>> target, int maxItems) {
+    @SuppressWarnings("unchecked")
+    Collection<Object> objects = (Collection<Object>) target;
+
+    if (source != null) {
+      return container.getSourceQueue(type).drainTo(source, objects, maxItems);
+    }
+
+    return container.getQueue(type).drainTo(objects, maxItems);
+  }
+
+  /**
+   * {@inheritDoc} Counts the dropped items of all sources.
+   */
+  @Override
+  public long getDropped() {
+    return container.getQueue(type).getDropped();
+  }
+
+  /**
+   * {@inheritDoc} Counts the expired items of all sources.
+   */
+  @Override
+  public long getExpired() {
+    return container.getQueue(type).getExpired();
+  }
+
+  @SuppressWarnings("unchecked")
+  private QueuedMessage<T> cast(Object message) {
+    return (QueuedMessage<T>) message;
+  }
 }
@@ -1,43 +1,98 @@
 package edu.kit.tm.ptp;
 
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Extends ListenerContainer to allow to save queued messages of
  * previously registered types.
+ * Polling and adding messages doesn't lock the container.
+ * Expired messages of all queues are removed regularly while messages are added, so the queues
+ * of a stalled consumer only hold messages which are still valid.
  * 
  * @author Timon Hackenjos
  */
 
 public class MessageQueueContainer extends ListenerContainer {
-  private Map<Class<?>, Queue<Object>> queues = new Hashtable<Class<?>, Queue<Object>>();
+  private Map<Class<?>, MessageBuffer> queues = new ConcurrentHashMap<Class<?>, MessageBuffer>();
+  private Map<Class<?>, MessagePublisher<Object>> publishers =
+      new ConcurrentHashMap<Class<?>, MessagePublisher<Object>>();
+  /** Minimum number of milliseconds between two removals of expired messages. */
+  static final long SWEEP_INTERVAL = 1000;
+  private final AtomicLong nextSweep = new AtomicLong(0);
   
   /**
    * Adds a queue for messages of Type type.
    */
   protected synchronized <T> void addMessageQueue(Class<T> type) {
-    if (queues.get(type) != null) {
-      throw new IllegalArgumentException();
+    addMessageQueue(type, new MessageBuffer());
+  }
+
+  /**
+   * Adds a bounded queue for messages of Type type.
+   *
+   * @param capacity The maximum number of queued messages.
+   * @param policy Decides what happens to received messages if the queue is full.
+   */
+  protected synchronized <T> void addMessageQueue(Class<T> type, int capacity,
+      IMessageQueue.OverflowPolicy policy) {
+    addMessageQueue(type, capacity, policy, false);
+  }
+
+  /**
+   * Adds a bounded queue for messages of Type type.
+   *
+   * @param capacity The maximum number of queued messages, per source if perSource is true.
+   * @param policy Decides what happens to received messages if the queue is full.
+   * @param perSource True to queue the messages of every source separately.
+   */
+  protected synchronized <T> void addMessageQueue(Class<T> type, int capacity,
+      IMessageQueue.OverflowPolicy policy, boolean perSource) {
+    addMessageQueue(type, newQueue(capacity, policy, perSource));
+  }
+
+  /**
+   * Replaces the queue for messages of Type type by a bounded queue.
+   *
+   * @throws IllegalStateException If the current queue isn't empty.
+   */
+  protected synchronized <T> void replaceMessageQueue(Class<T> type, int capacity,
+      IMessageQueue.OverflowPolicy policy) {
+    replaceMessageQueue(type, capacity, policy, false);
+  }
+
+  /**
+   * Replaces the queue for messages of Type type by a bounded queue.
+   *
+   * @param perSource True to queue the messages of every source separately.
+   * @throws IllegalStateException If the current queue isn't empty.
+   */
+  protected synchronized <T> void replaceMessageQueue(Class<T> type, int capacity,
+      IMessageQueue.OverflowPolicy policy, boolean perSource) {
+    MessageBuffer queue = queues.get(type);
+
+    if (queue != null && !queue.isEmpty()) {
+      throw new IllegalStateException("Queue isn't empty");
+    }
+
+    MessageBuffer replacement = newQueue(capacity, policy, perSource);
+    queues.put(type, replacement);
+    register(type);
+
+    if (queue != null) {
+      // Messages might still be added to the old queue through routes resolved before
+      queue.replaceBy(replacement);
     }
-     
-    queues.put(type, new ConcurrentLinkedQueue<Object>());
-    registerClasses.add(type);
   }
   
   /**
    * Returns a message of the supplied type or null if the queue is empty.
    */
-  protected synchronized <T> QueuedMessage<T> pollMessage(Class<T> type) {
-    Queue<Object> queue = queues.get(type);
-    
-    if (queue == null) {
-      throw new IllegalArgumentException("Type hasn't been registered before.");
-    }
-    
-    Object obj = queue.poll();
+  protected <T> QueuedMessage<T> pollMessage(Class<T> type) {
+    Object obj = getQueue(type).poll();
     
     if (obj == null) {
       return null;
@@ -52,14 +107,8 @@ public class MessageQueueContainer extends ListenerContainer {
   /**
    * Returns true if the queue of the specified type contains a message.
    */
-  protected synchronized <T> boolean hasMessage(Class<T> type) {
-    Queue<Object> queue = queues.get(type);
-    
-    if (queue == null) {
-      throw new IllegalArgumentException("Type hasn't been registered before.");
-    }
-    
-    return queue.size() > 0;
+  protected <T> boolean hasMessage(Class<T> type) {
+    return !getQueue(type).isEmpty();
   }
 
   /**
@@ -69,37 +118,187 @@ public class MessageQueueContainer extends ListenerContainer {
    * @param message The message to add.
    * @param source The source of the message.
    */
-  protected synchronized void addMessageToQueue(Object message, Identifier source,
-                                                long receiveTime) {
-    addMessage(getType(message).cast(message), source, receiveTime);
+  protected void addMessageToQueue(Object message, Identifier source, long receiveTime) {
+    addMessageToQueue(message, source, receiveTime, -1);
+  }
+
+  /**
+   * Adds a message with an expiry time set by the sender.
+   *
+   * @param expiryTime The time after which the message is discarded or -1.
+   * @see #addMessageToQueue(Object, Identifier, long)
+   */
+  protected void addMessageToQueue(Object message, Identifier source, long receiveTime,
+                                   long expiryTime) {
+    sweepIfDue(receiveTime);
+    add(queueOf(route(message.getClass())),
+        new QueuedMessage<Object>(source, message, receiveTime, expiryTime));
   }
   
   /**
-   * Returns true if it exists a queue for the supplied message.
+   * Adds a message which will be decoded when it's polled to the queue of the route.
+   *
+   * @param expiryTime The time after which the message is discarded or -1.
+   * @see #route(Class)
+   */
+  protected void addMessageToQueue(Route route, LazyMessage message, Identifier source,
+                                   long receiveTime, long expiryTime) {
+    sweepIfDue(receiveTime);
+    add(queueOf(route), new QueuedMessage<Object>(source, message, receiveTime, expiryTime));
+  }
+
+  private static void add(MessageBuffer queue, QueuedMessage<Object> message) {
+    queue.add(message);
+    // Moves the message if the queue has been replaced meanwhile
+    queue.forward();
+  }
+
+  /**
+   * Sets the number of milliseconds messages of the type are kept after they have been received.
+   *
+   * @param ttl The TTL or -1 to keep messages until they are polled.
+   * @throws IllegalArgumentException If queuing hasn't been enabled for the type.
    */
-  protected synchronized boolean hasQueue(Object message) {
-    Class<?> type = getTypeOrNull(message);
-    if (type == null) {
-      return false;
+  protected <T> void setTtl(Class<T> type, long ttl) {
+    getQueue(type).setTtl(ttl);
+  }
+
+  /**
+   * Removes the expired messages of all queues.
+   *
+   * @param now The current time in milliseconds.
+   * @return The number of removed messages.
+   */
+  protected int evictExpired(long now) {
+    int count = 0;
+
+    for (MessageBuffer queue : queues.values()) {
+      count += queue.evictExpired(now);
     }
-    
-    return queues.get(type) != null;
+
+    return count;
+  }
+
+  /**
+   * Returns true if the messages of the type are queued separately for every source.
+   */
+  protected <T> boolean sourceQueueEnabled(Class<T> type) {
+    return queues.get(type) instanceof SourceMessageBuffer;
   }
 
   /**
    * Returns true if queuing has been enabled for the type.
    */
-  protected synchronized <T> boolean queueEnabled(Class<T> type) {
+  protected <T> boolean queueEnabled(Class<T> type) {
     return queues.get(type) != null;
   }
-  
-  private <T> void addMessage(T message, Identifier source, long receiveTime) {
-    Queue<Object> queue = queues.get(message.getClass());
-    
-    if (queue == null) {
+
+  /**
+   * Adds a publisher for messages of Type type.
+   */
+  protected synchronized <T> void addPublisher(Class<T> type, MessagePublisher<T> publisher) {
+    if (publishers.get(type) != null) {
+      throw new IllegalArgumentException();
+    }
+
+    // Messages are published without knowing their type at compile time
+    @SuppressWarnings("unchecked")
+    MessagePublisher<Object> publisherObj =
+        (MessagePublisher<Object>) (MessagePublisher<?>) publisher;
+    publishers.put(type, publisherObj);
+    register(type);
+  }
+
+  /**
+   * Returns the publisher of the type or null if there is none.
+   */
+  protected <T> MessagePublisher<T> getPublisher(Class<T> type) {
+    @SuppressWarnings("unchecked")
+    MessagePublisher<T> publisher =
+        (MessagePublisher<T>) (MessagePublisher<?>) publishers.get(type);
+
+    return publisher;
+  }
+
+  /**
+   * Returns the publishers of all types.
+   */
+  protected Collection<MessagePublisher<Object>> getPublishers() {
+    return new ArrayList<>(publishers.values());
+  }
+
+  @Override
+  protected MessageBuffer queueOf(Class<?> registeredType) {
+    return queues.get(registeredType);
+  }
+
+  @Override
+  protected MessagePublisher<Object> publisherOf(Class<?> registeredType) {
+    return publishers.get(registeredType);
+  }
+
+  private MessageBuffer queueOf(Route route) {
+    if (route.queue == null) {
       throw new IllegalArgumentException("Type of object hasn't been registered before");
     }
-    
-    queue.add(new QueuedMessage<T>(source, message, receiveTime));
+
+    return route.queue;
+  }
+
+  /**
+   * Returns the queue of the type.
+   *
+   * @throws IllegalArgumentException If queuing hasn't been enabled for the type.
+   */
+  MessageBuffer getQueue(Class<?> type) {
+    MessageBuffer queue = queues.get(type);
+
+    if (queue == null) {
+      throw new IllegalArgumentException("Type hasn't been registered before.");
+    }
+
+    return queue;
+  }
+
+  /**
+   * Returns the queue of the type which keeps the messages of every source separately.
+   *
+   * @throws IllegalArgumentException If the messages of the type aren't queued per source.
+   */
+  SourceMessageBuffer getSourceQueue(Class<?> type) {
+    MessageBuffer queue = getQueue(type);
+
+    if (!(queue instanceof SourceMessageBuffer)) {
+      throw new IllegalArgumentException("Messages of the type aren't queued per source.");
+    }
+
+    return (SourceMessageBuffer) queue;
+  }
+
+  /**
+   * Removes expired messages if the last removal is longer ago than {@link #SWEEP_INTERVAL}.
+   * Only one of several concurrent callers removes them.
+   */
+  private void sweepIfDue(long now) {
+    long next = nextSweep.get();
+
+    if (now >= next && nextSweep.compareAndSet(next, now + SWEEP_INTERVAL)) {
+      evictExpired(now);
+    }
+  }
+
+  private MessageBuffer newQueue(int capacity, IMessageQueue.OverflowPolicy policy,
+      boolean perSource) {
+    return perSource ? new SourceMessageBuffer(capacity, policy)
+        : new MessageBuffer(capacity, policy);
+  }
+
+  private void addMessageQueue(Class<?> type, MessageBuffer queue) {
+    if (queues.get(type) != null) {
+      throw new IllegalArgumentException();
+    }
+     
+    queues.put(type, queue);
+    register(type);
   }
 }
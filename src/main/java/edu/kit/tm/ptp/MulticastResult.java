@@ -0,0 +1,85 @@
+package edu.kit.tm.ptp;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Combined result of sending a message to several destinations. Completes after the result for
+ * every destination is known. The send listener is informed about every destination as well.
+ */
+public final class MulticastResult implements Future<Map<Identifier, SendListener.State>> {
+  private final Map<Identifier, SendListener.State> results = new ConcurrentHashMap<>();
+  private final CountDownLatch pending;
+  private volatile long[] ids = new long[0];
+
+  MulticastResult(int destinations) {
+    pending = new CountDownLatch(destinations);
+  }
+
+  /**
+   * Returns the ids of the messages in the order of the destinations.
+   */
+  public long[] getMessageIds() {
+    return ids.clone();
+  }
+
+  void setMessageIds(long[] ids) {
+    this.ids = ids.clone();
+  }
+
+  void messageSent(Identifier destination, SendListener.State state) {
+    results.put(destination, state);
+    pending.countDown();
+  }
+
+  /**
+   * Sending can't be cancelled.
+   *
+   * @return Always false.
+   */
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return false;
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return false;
+  }
+
+  @Override
+  public boolean isDone() {
+    return pending.getCount() == 0;
+  }
+
+  /**
+   * Waits until the result for every destination is known.
+   *
+   * @return The result for every destination.
+   */
+  @Override
+  public Map<Identifier, SendListener.State> get() throws InterruptedException {
+    pending.await();
+    return copyResults();
+  }
+
+  @Override
+  public Map<Identifier, SendListener.State> get(long timeout, TimeUnit unit)
+      throws InterruptedException, TimeoutException {
+    if (!pending.await(timeout, unit)) {
+      throw new TimeoutException();
+    }
+
+    return copyResults();
+  }
+
+  private Map<Identifier, SendListener.State> copyResults() {
+    return Collections.unmodifiableMap(new HashMap<>(results));
+  }
+}
@@ -1,16 +1,35 @@
 package edu.kit.tm.ptp;
 
+import edu.kit.tm.ptp.auth.AuthenticationStatistics;
 import edu.kit.tm.ptp.auth.AuthenticatorFactory;
 import edu.kit.tm.ptp.auth.PublicKeyAuthenticatorFactory;
+import edu.kit.tm.ptp.connection.ConnectionListener;
 import edu.kit.tm.ptp.connection.ConnectionManager;
+import edu.kit.tm.ptp.connection.PooledReceiveListener;
+import edu.kit.tm.ptp.connection.RawReceiveListener;
 import edu.kit.tm.ptp.hiddenservice.HiddenServiceManager;
 import edu.kit.tm.ptp.serialization.ByteArrayMessage;
+import edu.kit.tm.ptp.serialization.CodecRegistry;
+import edu.kit.tm.ptp.serialization.MessageCodec;
 import edu.kit.tm.ptp.serialization.Serializer;
+import edu.kit.tm.ptp.thread.OrderedExecutor;
+import edu.kit.tm.ptp.thread.PartitionStatistics;
+import edu.kit.tm.ptp.thread.PartitionedExecutor;
 import edu.kit.tm.ptp.utility.Constants;
+import edu.kit.tm.ptp.utility.PooledBuffer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,16 +42,24 @@ import java.util.logging.Logger;
  * {@link #setReceiveListener(Class, MessageReceivedListener) setReceiveListener(Class,
  * MessageReceivedListener)}, {@link #registerClass(Class) registerClass(Class)},
  * {@link #enableMessageQueue() enableMessageQueue()}, {@link #enableMessageQueue(Class)
- * enableMessageQueue(Class)}.
+ * enableMessageQueue(Class)}, {@link #setListenerExecutor(Executor)
+ * setListenerExecutor(Executor)}, {@link #messages(Class) messages(Class)}.
  *
  * @author Timon Hackenjos
  * @author Simeon Andreev
  *
  */
 public class PTP {
+  /**
+   * Number of received messages waiting for a decoding thread at which reading of the peers which
+   * filled the queue is paused.
+   */
+  private static final int DECODE_QUEUE_CAPACITY = 1024;
+
   private final MessageQueueContainer messageTypes = new MessageQueueContainer();
   private final ConfigurationFileReader configReader;
   private final Serializer serializer;
+  private final CodecRegistry codecs;
   private final String hiddenServiceDirectoryName;
   private final boolean usePTPTor;
   private final Thread clientThread;
@@ -45,12 +72,21 @@ public class PTP {
   private Configuration config = null;
   /** The Tor process manager. */
   private TorManager tor;
-  private ReceiveListener receiveListener = null;
-  private SendListener sendListener = new SendListenerAdapter();
+  private volatile ReceiveListener receiveListener = null;
+  private volatile ByteBufferReceiveListener bufferReceiveListener = null;
+  private volatile SendListener sendListener = new SendListenerAdapter();
   private HiddenServiceManager hiddenServiceManager;
   private String workingDirectory;
   private int controlPort;
   private IsAliveManager isAliveManager = null;
+  /** Decodes received messages if enabled. */
+  private volatile PartitionedExecutor decodeExecutor = null;
+  /** Executor supplied by the application to call listeners. */
+  private Executor listenerThreads = null;
+  /** Executor created by PTP to call listeners. */
+  private ExecutorService ownListenerThreads = null;
+  /** Calls the listeners if enabled. */
+  private volatile OrderedExecutor listenerExecutor = null;
 
   private volatile boolean initialized = false;
   private volatile boolean closed = false;
@@ -149,6 +185,7 @@ public class PTP {
     this.sharedTorProcess = sharedTorProcess;
 
     this.serializer = new Serializer();
+    this.codecs = new CodecRegistry(serializer);
     this.config = config;
     serializer.registerClass(byte[].class);
     serializer.registerClass(ByteArrayMessage.class);
@@ -206,6 +243,46 @@ public class PTP {
       tor = new TorManager(controlPort, config);
     }
 
+    if (config.getDecodeThreads() > 0) {
+      final PTPReadThrottle throttle = new PTPReadThrottle();
+      // Keeps TCP backpressure if messages arrive faster than they can be decoded
+      decodeExecutor = new PartitionedExecutor(config.getDecodeThreads(), DECODE_QUEUE_CAPACITY,
+          new PartitionedExecutor.Backpressure() {
+            @Override
+            public void pause(Object key) {
+              throttle.pause((Identifier) key);
+            }
+
+            @Override
+            public void resume(Object key) {
+              throttle.resume((Identifier) key);
+            }
+          }, ptpGroup, "PTP decoder");
+      decodeExecutor.start();
+    }
+
+    Executor executor = listenerThreads;
+
+    if (executor == null && config.getListenerThreads() > 0) {
+      ownListenerThreads = Executors.newFixedThreadPool(config.getListenerThreads(),
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread =
+                  new Thread(ptpGroup, runnable, "PTP listener-" + count.getAndIncrement());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor = ownListenerThreads;
+    }
+
+    if (executor != null) {
+      listenerExecutor = new OrderedExecutor(executor);
+    }
+
     connectionManager = new ConnectionManager(config.getHiddenServicePort(),
         new PTPReceiveListener(), new PTPSendListener(), config, ptpGroup, authFactory);
 
@@ -224,8 +301,23 @@ public class PTP {
     hiddenServiceManager =
         new HiddenServiceManager(config, hiddenServiceDirectoryName, hiddenServicePort, tor);
 
-    isAliveManager = new IsAliveManager(this, config);
-    isAliveManager.start();
+    // Expired timers take the lock of this instance, they are handled by the thread handling the
+    // connections instead of the scheduler threads shared with other instances
+    isAliveManager = new IsAliveManager(this, config, connectionManager);
+
+    if (connectionManager.usesEventLoop()) {
+      // Update the timers in the thread handling the connections
+      final ConnectionManager manager = connectionManager;
+      isAliveManager.getTimerManager().setWaker(new Runnable() {
+        @Override
+        public void run() {
+          manager.wakeup();
+        }
+      });
+      connectionManager.addLoopTask(isAliveManager.getTimerManager());
+    } else {
+      isAliveManager.start();
+    }
 
     initialized = true;
   }
@@ -237,6 +329,42 @@ public class PTP {
     return initialized;
   }
 
+  /**
+   * Returns the statistics of the threads decoding received messages. Every thread decodes the
+   * messages of a part of the peers. The times don't include calling the listeners. Returns an
+   * empty array if decoding in parallel is disabled.
+   *
+   * @see Configuration#getDecodeThreads()
+   */
+  public PartitionStatistics[] getDecodeStatistics() {
+    PartitionedExecutor executor = decodeExecutor;
+
+    if (executor == null) {
+      return new PartitionStatistics[0];
+    }
+
+    return executor.getStatistics();
+  }
+
+  /**
+   * Returns the statistics of the handshakes authenticating connections, like the wall-clock time
+   * spent on signing and checking authentication messages and the number of cached public keys of
+   * peers. Returns null if connections aren't authenticated by public keys.
+   */
+  public synchronized AuthenticationStatistics getAuthenticationStatistics() {
+    if (!initialized || closed) {
+      throw new IllegalStateException();
+    }
+
+    AuthenticatorFactory factory = authFactory;
+
+    if (!(factory instanceof PublicKeyAuthenticatorFactory)) {
+      return null;
+    }
+
+    return ((PublicKeyAuthenticatorFactory) factory).getStatistics();
+  }
+
   /**
    * Returns the currently used API configuration.
    */
@@ -259,6 +387,20 @@ public class PTP {
     return hiddenServiceManager.getHiddenServiceIdentifier();
   }
 
+  /**
+   * Returns the smoothed round-trip time to the peer in milliseconds. The round-trip time is
+   * measured by keepalives once messages have been exchanged with the peer.
+   *
+   * @return The round-trip time or -1 if it hasn't been measured yet.
+   */
+  public synchronized long getRtt(Identifier identifier) {
+    if (!initialized || closed) {
+      throw new IllegalStateException();
+    }
+
+    return isAliveManager.getRtt(identifier);
+  }
+
   /**
    * Returns the directory of the currently used hidden service.
    */
@@ -305,13 +447,60 @@ public class PTP {
    * @param timeout How long to wait for a successful transmission.
    * @return Identifier of the message.
    */
-  public synchronized long sendMessage(byte[] data, Identifier destination, long timeout) {
+  public long sendMessage(byte[] data, Identifier destination, long timeout) {
     if (data == null || destination == null) {
       throw new IllegalArgumentException();
     }
 
-    ByteArrayMessage msg = new ByteArrayMessage(data);
-    return sendMessage(msg, destination, timeout);
+    // Sent as raw frame without any encoding unless raw frames are disabled
+    return sendMessage(ByteBuffer.wrap(data), destination, timeout);
+  }
+
+  /**
+   * Sends the remaining bytes of a buffer to the supplied destination without copying them.
+   * Direct buffers are written to the socket as they are. The bytes are sent as raw frame and the
+   * receiver gets them as byte[] message without decoding them. If raw frames are disabled in the
+   * configuration the bytes are encoded like a byte[] message to support older peers.
+   *
+   * <p>
+   * PTP reads the bytes between the position and the limit at the time of the call. Position and
+   * limit of the buffer aren't changed and may be changed by the caller after the call returns.
+   * The content of these bytes is owned by PTP until the send listener has been informed about
+   * the returned id and must not be modified until then. Afterwards PTP doesn't hold a reference
+   * to the buffer anymore.
+   * </p>
+   *
+   * @param data The buffer containing the data to send.
+   * @param destination The hidden service identifier of the destination.
+   * @param timeout How long to wait for a successful transmission.
+   * @return Identifier of the message.
+   */
+  public long sendMessage(ByteBuffer data, Identifier destination, long timeout) {
+    if (!initialized || closed) {
+      throw new IllegalStateException();
+    }
+
+    if (data == null || destination == null) {
+      throw new IllegalArgumentException();
+    }
+
+    if (!config.getRawFrames()) {
+      return connectionManager.send(codecs.encodeBytes(data.slice()), destination, timeout);
+    }
+
+    return connectionManager.send(new ByteBuffer[] {data.slice()}, destination, timeout, true);
+  }
+
+  /**
+   * Sends the remaining bytes of a buffer to the supplied destination without copying them.
+   *
+   * @param data The buffer containing the data to send.
+   * @param destination The hidden service identifier of the destination.
+   * @return Identifier of the message.
+   * @see #sendMessage(ByteBuffer, Identifier, long)
+   */
+  public long sendMessage(ByteBuffer data, Identifier destination) {
+    return sendMessage(data, destination, -1);
   }
 
   /**
@@ -320,7 +509,7 @@ public class PTP {
    * @param data The data to send.
    * @param destination The hidden service identifier of the destination.
    */
-  public synchronized long sendMessage(byte[] data, Identifier destination) {
+  public long sendMessage(byte[] data, Identifier destination) {
     if (data == null || destination == null) {
       throw new IllegalArgumentException();
     }
@@ -336,7 +525,7 @@ public class PTP {
    * @return Identifier of the message.
    * @see #enableMessageQueue(Class)
    */
-  public synchronized long sendMessage(Object message, Identifier destination) {
+  public long sendMessage(Object message, Identifier destination) {
     if (message == null || destination == null) {
       throw new IllegalArgumentException();
     }
@@ -353,7 +542,36 @@ public class PTP {
    * @return Identifier of the message.
    * @see #enableMessageQueue(Class)
    */
-  public synchronized long sendMessage(Object message, Identifier destination, long timeout) {
+  public long sendMessage(Object message, Identifier destination, long timeout) {
+    if (!initialized || closed) {
+      throw new IllegalStateException();
+    }
+
+    if (message == null || destination == null) {
+      throw new IllegalArgumentException();
+    }
+
+    if (message instanceof byte[]) {
+      return sendMessage((byte[]) message, destination, timeout);
+    }
+
+    // Codecs and ConnectionManager are thread-safe, no need to hold the lock
+    return connectionManager.send(codecs.encode(message), destination, timeout);
+  }
+
+  /**
+   * Send an object of a previously registered class or a byte[] to the supplied destination. The
+   * receiver discards the object if it hasn't been polled from a message queue within the TTL.
+   * Peers using an older version of PTP can't decode messages with a TTL.
+   *
+   * @param message The object to send.
+   * @param destination The hidden service identifier of the destination.
+   * @param timeout How long to wait for a successful transmission.
+   * @param ttl The number of milliseconds the object stays valid after it has been received.
+   * @return Identifier of the message.
+   * @see #setMessageTtl(Class, long)
+   */
+  public long sendMessage(Object message, Identifier destination, long timeout, long ttl) {
     if (!initialized || closed) {
       throw new IllegalStateException();
     }
@@ -362,8 +580,66 @@ public class PTP {
       throw new IllegalArgumentException();
     }
 
-    byte[] data = serializer.serialize(message);
-    return connectionManager.send(data, destination, timeout);
+    return connectionManager.send(codecs.encode(message, ttl), destination, timeout);
+  }
+
+  /**
+   * Send an object to several destinations. The object is encoded once and all destinations share
+   * the encoded bytes. The send listener is informed about every destination.
+   *
+   * @param message The object to send.
+   * @param destinations The hidden service identifiers of the destinations.
+   * @return The combined result of the sending.
+   * @see #sendToAll(Object, Collection, long)
+   */
+  public MulticastResult sendToAll(Object message, Collection<Identifier> destinations) {
+    return sendToAll(message, destinations, -1);
+  }
+
+  /**
+   * Send an object to several destinations. The object is encoded once and all destinations share
+   * the encoded bytes. The send listener is informed about every destination.
+   *
+   * @param message The object to send.
+   * @param destinations The hidden service identifiers of the destinations. Duplicates are
+   *        ignored.
+   * @param timeout How long to wait for a successful transmission.
+   * @return The combined result of the sending.
+   */
+  public MulticastResult sendToAll(Object message, Collection<Identifier> destinations,
+      long timeout) {
+    if (!initialized || closed) {
+      throw new IllegalStateException();
+    }
+
+    if (message == null || destinations == null) {
+      throw new IllegalArgumentException();
+    }
+
+    Set<Identifier> uniqueDestinations = new LinkedHashSet<>();
+
+    for (Identifier destination : destinations) {
+      if (destination == null) {
+        throw new IllegalArgumentException();
+      }
+
+      uniqueDestinations.add(destination);
+    }
+    final MulticastResult result = new MulticastResult(uniqueDestinations.size());
+    boolean raw = message instanceof byte[] && config.getRawFrames();
+    ByteBuffer[] segments =
+        raw ? new ByteBuffer[] {ByteBuffer.wrap((byte[]) message)} : codecs.encode(message);
+
+    long[] ids = connectionManager.send(segments, uniqueDestinations, timeout,
+        new SendListener() {
+          @Override
+          public void messageSent(long id, Identifier destination, State state) {
+            result.messageSent(destination, state);
+          }
+        }, raw);
+    result.setMessageIds(ids);
+
+    return result;
   }
 
   /**
@@ -377,6 +653,19 @@ public class PTP {
     serializer.registerClass(type);
   }
 
+  /**
+   * Register class to be able to send and receive instances of the class using the supplied codec
+   * instead of Kryo. Codecs have to be registered in the same order on all peers.
+   *
+   * @throws IllegalArgumentException If the class has a codec already.
+   */
+  public synchronized <T> void registerClass(Class<T> type, MessageCodec<T> codec) {
+    if (closed) {
+      throw new IllegalStateException();
+    }
+    codecs.registerCodec(type, codec);
+  }
+
   /**
    * Sets a listener for a previously registered class.
    * 
@@ -390,7 +679,7 @@ public class PTP {
       throw new IllegalStateException();
     }
 
-    if (!serializer.isRegistered(type)) {
+    if (!isRegistered(type)) {
       throw new IllegalArgumentException("Class type hasn't been registered before");
     }
 
@@ -410,6 +699,21 @@ public class PTP {
     this.receiveListener = listener;
   }
 
+  /**
+   * Sets the listener for received byte[] messages which parses the bytes in place. Is informed
+   * in addition to the listener set by {@link #setReceiveListener(ReceiveListener)}.
+   *
+   * @param listener The listener to inform.
+   * @see Configuration#getPooledReceiveBuffers()
+   */
+  public synchronized void setReceiveListener(ByteBufferReceiveListener listener) {
+    if (closed) {
+      throw new IllegalStateException();
+    }
+
+    this.bufferReceiveListener = listener;
+  }
+
   /**
    * Enables queueing of objects of a previously registered type. Objects can be received using
    * {@link #getMessageQueue(Class) getMessageQueue(Class)}.
@@ -422,12 +726,49 @@ public class PTP {
       throw new IllegalStateException();
     }
 
-    if (!serializer.isRegistered(type)) {
+    if (!isRegistered(type)) {
       throw new IllegalArgumentException("Class type hasn't been registered before");
     }
     messageTypes.addMessageQueue(type);
   }
 
+  /**
+   * Enables queueing of objects of a previously registered type with a bounded queue.
+   *
+   * @param type The type of objects to queue.
+   * @param capacity The maximum number of queued objects.
+   * @param policy Decides what happens to received objects if the queue is full.
+   * @see #enableMessageQueue(Class)
+   */
+  public synchronized <T> void enableMessageQueue(Class<T> type, int capacity,
+      IMessageQueue.OverflowPolicy policy) {
+    enableMessageQueue(type, capacity, policy, false);
+  }
+
+  /**
+   * Enables queueing of objects of a previously registered type with a bounded queue. If perSource
+   * is true the objects of every source are queued separately. Polling then takes the objects of
+   * the sources in turns and {@link #getMessageQueue(Class, Identifier) getMessageQueue(Class,
+   * Identifier)} returns the objects of a single source.
+   *
+   * @param type The type of objects to queue.
+   * @param capacity The maximum number of queued objects, per source if perSource is true.
+   * @param policy Decides what happens to received objects if the queue is full.
+   * @param perSource True to queue the objects of every source separately.
+   * @see #enableMessageQueue(Class)
+   */
+  public synchronized <T> void enableMessageQueue(Class<T> type, int capacity,
+      IMessageQueue.OverflowPolicy policy, boolean perSource) {
+    if (closed) {
+      throw new IllegalStateException();
+    }
+
+    if (!isRegistered(type)) {
+      throw new IllegalArgumentException("Class type hasn't been registered before");
+    }
+    messageTypes.addMessageQueue(type, capacity, policy, perSource);
+  }
+
   /**
    * Enables queueing of byte[] messages. Objects can be received using {@link #getMessageQueue()
    * getMessageQueue()}
@@ -440,6 +781,69 @@ public class PTP {
     this.queueMessages = true;
   }
 
+  /**
+   * Enables queueing of byte[] messages with a bounded queue. Needs to be called before messages
+   * have been queued.
+   *
+   * @param capacity The maximum number of queued messages.
+   * @param policy Decides what happens to received messages if the queue is full.
+   * @see #enableMessageQueue()
+   */
+  public synchronized void enableMessageQueue(int capacity, IMessageQueue.OverflowPolicy policy) {
+    enableMessageQueue(capacity, policy, false);
+  }
+
+  /**
+   * Enables queueing of byte[] messages with a bounded queue. Needs to be called before messages
+   * have been queued.
+   *
+   * @param capacity The maximum number of queued messages, per source if perSource is true.
+   * @param policy Decides what happens to received messages if the queue is full.
+   * @param perSource True to queue the messages of every source separately.
+   * @see #enableMessageQueue(Class, int, IMessageQueue.OverflowPolicy, boolean)
+   */
+  public synchronized void enableMessageQueue(int capacity, IMessageQueue.OverflowPolicy policy,
+      boolean perSource) {
+    if (closed) {
+      throw new IllegalStateException();
+    }
+
+    messageTypes.replaceMessageQueue(byte[].class, capacity, policy, perSource);
+    this.queueMessages = true;
+  }
+
+  /**
+   * Sets the number of milliseconds queued objects of the type are kept after they have been
+   * received. Expired objects are skipped when polling and removed regularly while messages are
+   * received. A TTL set by the sender applies in addition.
+   *
+   * @param type A type for which queuing has been enabled.
+   * @param ttl The TTL or -1 to keep objects until they are polled.
+   * @see #enableMessageQueue(Class)
+   * @see #sendMessage(Object, Identifier, long, long)
+   */
+  public synchronized <T> void setMessageTtl(Class<T> type, long ttl) {
+    if (closed) {
+      throw new IllegalStateException();
+    }
+
+    if (!messageTypes.queueEnabled(type)) {
+      throw new IllegalArgumentException("Queuing hasn't been enabled for the type");
+    }
+
+    messageTypes.setTtl(type, ttl);
+  }
+
+  /**
+   * Sets the number of milliseconds queued byte[] messages are kept after they have been received.
+   *
+   * @param ttl The TTL or -1 to keep messages until they are polled.
+   * @see #setMessageTtl(Class, long)
+   */
+  public synchronized void setMessageTtl(long ttl) {
+    setMessageTtl(byte[].class, ttl);
+  }
+
   /**
    * Returns a IMessageQueue to poll received messages of the supplied type from.
    *
@@ -450,7 +854,7 @@ public class PTP {
       throw new IllegalStateException();
     }
 
-    if (!serializer.isRegistered(type)) {
+    if (!isRegistered(type)) {
       throw new IllegalArgumentException("Class type hasn't been registered before");
     }
 
@@ -468,6 +872,82 @@ public class PTP {
     return getMessageQueue(byte[].class);
   }
 
+  /**
+   * Returns a IMessageQueue to poll received messages of the supplied type and source from.
+   *
+   * @see #enableMessageQueue(Class, int, IMessageQueue.OverflowPolicy, boolean)
+   */
+  public synchronized <T> IMessageQueue<T> getMessageQueue(Class<T> type, Identifier source) {
+    if (closed) {
+      throw new IllegalStateException();
+    }
+
+    if (!isRegistered(type)) {
+      throw new IllegalArgumentException("Class type hasn't been registered before");
+    }
+
+    if (!messageTypes.sourceQueueEnabled(type)) {
+      throw new IllegalArgumentException("Queuing per source hasn't been enabled for the type");
+    }
+
+    return new MessageQueue<T>(type, messageTypes, source);
+  }
+
+  /**
+   * Returns a IMessageQueue to poll received byte[] messages of the supplied source from.
+   *
+   * @see #enableMessageQueue(int, IMessageQueue.OverflowPolicy, boolean)
+   */
+  public synchronized IMessageQueue<byte[]> getMessageQueue(Identifier source) {
+    return getMessageQueue(byte[].class, source);
+  }
+
+  /**
+   * Returns a publisher of received messages of the supplied type. Subscribers receive the
+   * messages according to their demand. If a subscriber doesn't request messages fast enough PTP
+   * stops reading messages of the source, which makes the sender wait until the subscriber has
+   * caught up. Messages received while there are no subscribers are dropped. Subscribers are
+   * completed by {@link #exit()}.
+   *
+   * @param type A previously registered type or byte[].class.
+   * @see #registerClass(Class)
+   */
+  public synchronized <T> Flow.Publisher<QueuedMessage<T>> messages(Class<T> type) {
+    if (closed) {
+      throw new IllegalStateException();
+    }
+
+    if (!byte[].class.equals(type) && !isRegistered(type)) {
+      throw new IllegalArgumentException("Class type hasn't been registered before");
+    }
+
+    MessagePublisher<T> publisher = messageTypes.getPublisher(type);
+
+    if (publisher == null) {
+      publisher = new MessagePublisher<T>(new PTPReadThrottle());
+      messageTypes.addPublisher(type, publisher);
+    }
+
+    return publisher;
+  }
+
+  /**
+   * Sets the executor which calls the listeners of the application. Listeners are called in order
+   * for every identifier and listeners of different identifiers may be called in parallel. PTP
+   * doesn't hold a lock while calling them. The executor isn't shut down by PTP. Replaces the
+   * threads created according to {@link Configuration#getListenerThreads()}. Needs to be called
+   * before {@link #init()}.
+   *
+   * @param executor The executor to use or null to use the configured threads.
+   */
+  public synchronized void setListenerExecutor(Executor executor) {
+    if (initialized || closed) {
+      throw new IllegalStateException();
+    }
+
+    this.listenerThreads = executor;
+  }
+
   /**
    * Sets the listener to be informed about sent messages.
    * 
@@ -526,6 +1006,22 @@ public class PTP {
       isAliveManager.stop();
     }
 
+    if (decodeExecutor != null) {
+      decodeExecutor.stop();
+    }
+
+    if (listenerExecutor != null) {
+      listenerExecutor.stop();
+    }
+
+    for (MessagePublisher<Object> publisher : messageTypes.getPublishers()) {
+      publisher.complete();
+    }
+
+    if (ownListenerThreads != null) {
+      ownListenerThreads.shutdownNow();
+    }
+
     // Close the Tor process manager.
     if (tor != null) {
       tor.stopTor();
@@ -550,6 +1046,13 @@ public class PTP {
     }
 
     tor.changeNetwork(enable);
+    // Don't wake up for timers and retries while there is no network
+    isAliveManager.changeNetwork(enable);
+    connectionManager.changeNetwork(enable);
+  }
+
+  private boolean isRegistered(Class<?> type) {
+    return serializer.isRegistered(type) || codecs.hasCodec(type);
   }
 
   protected synchronized void closeConnections(Identifier destination) {
@@ -564,59 +1067,314 @@ public class PTP {
     connectionManager.send(new byte[0], destination, timeout, false);
   }
 
-  private class PTPReceiveListener implements ReceiveListener {
+  protected synchronized void sendProbe(Identifier destination, byte[] probe, long timeout) {
+    connectionManager.send(probe, destination, timeout, false);
+  }
+
+  /**
+   * Stops reading messages of peers whose messages aren't consumed or decoded fast enough.
+   */
+  private class PTPReadThrottle implements MessagePublisher.ReadThrottle {
+    @Override
+    public void pause(Identifier source) {
+      setReadingPaused(source, true);
+    }
+
+    @Override
+    public void resume(Identifier source) {
+      setReadingPaused(source, false);
+    }
+
+    private void setReadingPaused(Identifier source, boolean paused) {
+      // Called by the receiving thread, mustn't acquire the lock of PTP
+      ConnectionManager manager = connectionManager;
+      IsAliveManager aliveManager = isAliveManager;
+
+      if (aliveManager != null) {
+        // The peer can't prove it's alive while its messages aren't read
+        aliveManager.setReadingPaused(source, paused);
+      }
+
+      if (manager != null) {
+        manager.pauseReading(source, paused);
+      }
+    }
+  }
+
+  private class PTPReceiveListener
+      implements PooledReceiveListener, RawReceiveListener, ConnectionListener {
+    @Override
+    public void connectionClosed(Identifier identifier) {
+      IsAliveManager manager = isAliveManager;
+
+      if (manager != null) {
+        manager.connectionClosed(identifier);
+      }
+    }
+
+    @Override
+    public void messageReceived(final byte[] data, final Identifier source) {
+      PartitionedExecutor executor = decodeExecutor;
+
+      if (executor == null) {
+        handleMessage(data, source);
+        return;
+      }
+
+      // Keeps the messages of a source in order
+      executor.execute(source, new Runnable() {
+        @Override
+        public void run() {
+          handleMessage(data, source);
+        }
+      });
+    }
+
+    @Override
+    public void rawMessageReceived(final byte[] data, final Identifier source) {
+      PartitionedExecutor executor = decodeExecutor;
+
+      if (executor == null) {
+        handleRawMessage(data, source);
+        return;
+      }
+
+      executor.execute(source, new Runnable() {
+        @Override
+        public void run() {
+          handleRawMessage(data, source);
+        }
+      });
+    }
+
     @Override
-    public void messageReceived(byte[] data, Identifier source) {
+    public void messageReceived(final PooledBuffer data, final boolean raw,
+        final Identifier source) {
+      PartitionedExecutor executor = decodeExecutor;
+
+      if (executor == null) {
+        handleMessage(data, raw, source);
+        return;
+      }
+
+      executor.execute(source, new Runnable() {
+        @Override
+        public void run() {
+          handleMessage(data, raw, source);
+        }
+      });
+    }
+
+    private void handleMessage(final PooledBuffer data, boolean raw, final Identifier source) {
+      try {
+        final ByteBufferReceiveListener bufferListener = bufferReceiveListener;
+
+        // Pass the pooled buffer if nobody else needs the bytes
+        if (raw && bufferListener != null && receiveListener == null && !queueMessages
+            && !hasSubscribers(byte[].class)) {
+          synchronized (PTP.this) {
+            isAliveManager.messageReceived(source, false);
+          }
+
+          // Keep the buffer until the listener has been called
+          data.retain();
+          notifyListener(source, new Runnable() {
+            @Override
+            public void run() {
+              try {
+                bufferListener.messageReceived(data.asReadOnlyBuffer(), source);
+              } finally {
+                data.release();
+              }
+            }
+          });
+          return;
+        }
+
+        if (raw) {
+          handleRawMessage(data.toArray(), source);
+        } else {
+          handleMessage(data.toArray(), source);
+        }
+      } finally {
+        data.release();
+      }
+    }
+
+    private void handleRawMessage(byte[] data, Identifier source) {
       synchronized (PTP.this) {
-        Object obj;
-        boolean isAliveMsg = data.length == 0;
+        isAliveManager.messageReceived(source, false);
+      }
+
+      // Raw frames carry the bytes of the application as they are
+      deliverBytes(data, source, System.currentTimeMillis(), -1);
+    }
+
+    private void handleMessage(byte[] data, final Identifier source) {
+      int probe = CodecRegistry.peekProbe(data);
+
+      if (probe != -1) {
+        synchronized (PTP.this) {
+          isAliveManager.probeReceived(source, probe == CodecRegistry.PING_TAG,
+              CodecRegistry.probeStamp(data));
+        }
+        return;
+      }
+
+      boolean isAliveMsg = data.length == 0;
+      LazyMessage message = null;
+      Class<?> type = null;
+      long receiveTime = System.currentTimeMillis();
+      long expiryTime = -1;
+
+      // Read the type without holding the lock to not block senders
+      if (!isAliveMsg) {
+        message = new LazyMessage(data, codecs);
+
         try {
-          isAliveManager.messageReceived(source, isAliveMsg);
+          type = codecs.peekType(data);
+
+          if (type == null) {
+            // Class has been written by name, decode to determine it
+            type = message.get().getClass();
+          } else if (ByteArrayMessage.class.equals(type)) {
+            // Sent as object by the application
+            type = byte[].class;
+          }
 
-          if (isAliveMsg) {
-            return;
+          if (hasListener(type)) {
+            // Decode before passing the message to the listeners
+            message.get();
           }
 
-          obj = serializer.deserialize(data);
+          long ttl = CodecRegistry.peekTtl(data);
 
-          if (obj instanceof ByteArrayMessage) {
-            ByteArrayMessage message = (ByteArrayMessage) obj;
+          if (ttl >= 0) {
+            // The clocks of the peers may differ, the TTL starts on receipt
+            expiryTime = receiveTime + ttl;
+          }
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Error occurred while deserializing data: " + e.getMessage());
+          message = null;
+        }
+      }
 
-            if (receiveListener != null) {
-              receiveListener.messageReceived(message.getData(), source);
-            }
+      synchronized (PTP.this) {
+        isAliveManager.messageReceived(source, isAliveMsg);
+      }
 
-            if (queueMessages) {
-              messageTypes.addMessageToQueue(message.getData(), source, System.currentTimeMillis());
-            }
+      if (message == null) {
+        return;
+      }
 
-            if (receiveListener == null && !queueMessages) {
-              logger.log(Level.WARNING,
-                  "Dropping received message because no receive listener ist set.");
-            }
-          } else {
-            if (messageTypes.hasListener(obj)) {
-              messageTypes.callReceiveListener(obj, source);
+      if (byte[].class.equals(type)) {
+        byte[] bytes = (byte[]) decode(message);
+
+        if (bytes != null) {
+          deliverBytes(bytes, source, receiveTime, expiryTime);
+        }
+        return;
+      }
+
+      final ListenerContainer.Route route = messageTypes.route(type);
+
+      if (route.listener != null) {
+        final Object obj = decode(message);
+
+        if (obj != null) {
+          notifyListener(source, new Runnable() {
+            @Override
+            public void run() {
+              route.listener.messageReceived(obj, source);
             }
-            if (messageTypes.hasQueue(obj)) {
-              messageTypes.addMessageToQueue(obj, source, System.currentTimeMillis());
+          });
+        }
+      }
+
+      if (route.queue != null) {
+        // Decoded by the thread polling the message
+        messageTypes.addMessageToQueue(route, message, source, receiveTime, expiryTime);
+      }
+
+      if (route.publisher != null) {
+        // Decoded by the subscriber
+        route.publisher.offer(new QueuedMessage<Object>(source, message, receiveTime, expiryTime));
+      }
+
+      if (route.listener == null && route.queue == null && route.publisher == null) {
+        logger.log(Level.WARNING,
+            "Received message of unregistered type with length " + data.length);
+      }
+    }
+
+    /**
+     * Passes bytes to the receive listeners and the queue.
+     *
+     * @param expiryTime The time after which the queued message is discarded or -1.
+     */
+    private void deliverBytes(final byte[] bytes, final Identifier source, long receiveTime,
+        long expiryTime) {
+      final ReceiveListener listener = receiveListener;
+      final ByteBufferReceiveListener bufferListener = bufferReceiveListener;
+
+      if (listener != null || bufferListener != null) {
+        notifyListener(source, new Runnable() {
+          @Override
+          public void run() {
+            if (listener != null) {
+              listener.messageReceived(bytes, source);
             }
 
-            if (!messageTypes.hasListener(obj) && !messageTypes.hasQueue(obj)) {
-              logger.log(Level.WARNING,
-                  "Received message of unregistered type with length " + data.length);
+            if (bufferListener != null) {
+              bufferListener.messageReceived(ByteBuffer.wrap(bytes).asReadOnlyBuffer(), source);
             }
           }
-        } catch (IOException e) {
-          logger.log(Level.WARNING, "Error occurred while deserializing data: " + e.getMessage());
-        }
+        });
+      }
+
+      if (queueMessages) {
+        messageTypes.addMessageToQueue(bytes, source, receiveTime, expiryTime);
+      }
+
+      MessagePublisher<Object> publisher = messageTypes.route(byte[].class).publisher;
+
+      if (publisher != null) {
+        publisher.offer(new QueuedMessage<Object>(source, bytes, receiveTime, expiryTime));
+      }
+
+      if (listener == null && bufferListener == null && !queueMessages && publisher == null) {
+        logger.log(Level.WARNING,
+            "Dropping received message because no receive listener ist set.");
+      }
+    }
+
+    private boolean hasSubscribers(Class<?> type) {
+      MessagePublisher<Object> publisher = messageTypes.route(type).publisher;
+      return publisher != null && publisher.hasSubscribers();
+    }
+
+    private boolean hasListener(Class<?> type) {
+      if (byte[].class.equals(type)) {
+        return receiveListener != null || bufferReceiveListener != null;
+      }
+
+      return messageTypes.route(type).listener != null;
+    }
+
+    private Object decode(LazyMessage message) {
+      try {
+        return message.get();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Error occurred while deserializing data: " + e.getMessage());
+        return null;
       }
     }
   }
 
+
   private class PTPSendListener implements SendListener {
     @Override
-    public void messageSent(long id, Identifier destination, State state) {
+    public void messageSent(final long id, final Identifier destination, final State state) {
       synchronized (PTP.this) {
         // PTP doesn't allow to send messages before initialization is finished
         if (!initialized) {
@@ -626,9 +1384,31 @@ public class PTP {
         if (state == State.SUCCESS) {
           isAliveManager.messageSent(destination);
         }
-
-        sendListener.messageSent(id, destination, state);
       }
+
+      final SendListener listener = sendListener;
+
+      notifyListener(destination, new Runnable() {
+        @Override
+        public void run() {
+          listener.messageSent(id, destination, state);
+        }
+      });
+    }
+  }
+
+  /**
+   * Calls a listener of the application without holding the lock. Uses the listener executor if
+   * there is one, keeping the order of the calls for every identifier.
+   */
+  private void notifyListener(Identifier identifier, Runnable call) {
+    OrderedExecutor executor = listenerExecutor;
+
+    if (executor == null) {
+      // Don't count the listener towards the time spent on decoding
+      PartitionedExecutor.runUntimed(call);
+    } else {
+      executor.execute(identifier, call);
     }
   }
 
@@ -1,8 +1,13 @@
 package edu.kit.tm.ptp;
 
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * Container class for a message, it's source
  * and the time the message was received.
+ * Received messages are decoded on the first call to {@link #getData()}.
  * 
  * @author Timon Hackenjos
  *
@@ -12,6 +17,8 @@ public final class QueuedMessage<T> {
   private Identifier source = null;
   private T data = null;
   private long receiveTime = -1;
+  private long expiryTime = -1;
+  private LazyMessage lazyData = null;
 
   protected QueuedMessage(Identifier source, T data) {
     this.source = source;
@@ -23,6 +30,22 @@ public final class QueuedMessage<T> {
     this.receiveTime = receiveTime;
   }
   
+  QueuedMessage(Identifier source, LazyMessage lazyData, long receiveTime) {
+    this.source = source;
+    this.lazyData = lazyData;
+    this.receiveTime = receiveTime;
+  }
+
+  QueuedMessage(Identifier source, T data, long receiveTime, long expiryTime) {
+    this(source, data, receiveTime);
+    this.expiryTime = expiryTime;
+  }
+
+  QueuedMessage(Identifier source, LazyMessage lazyData, long receiveTime, long expiryTime) {
+    this(source, lazyData, receiveTime);
+    this.expiryTime = expiryTime;
+  }
+
   public QueuedMessage() {    
   }
   
@@ -30,11 +53,48 @@ public final class QueuedMessage<T> {
     return source;
   }
 
-  public T getData() {
+  /**
+   * Returns the message. Decodes the message on the first call.
+   *
+   * @return The message or null if it couldn't be decoded.
+   */
+  public synchronized T getData() {
+    if (lazyData != null) {
+      try {
+        @SuppressWarnings("unchecked")
+        T decoded = (T) lazyData.get();
+        data = decoded;
+      } catch (IOException e) {
+        Logger.getLogger(QueuedMessage.class.getName()).log(Level.WARNING,
+            "Error occurred while deserializing data: " + e.getMessage());
+      }
+
+      lazyData = null;
+    }
+
     return data;
   }
 
   public long getReceiveTime() {
     return receiveTime;
   }
+
+  /**
+   * Returns the time after which the message is discarded according to the TTL set by the sender
+   * or -1 if the sender didn't set one.
+   */
+  public long getExpiryTime() {
+    return expiryTime;
+  }
+
+  /**
+   * Returns true if the message has expired.
+   *
+   * @param now The current time in milliseconds.
+   * @param ttl The number of milliseconds the message is kept after it has been received or -1.
+   */
+  boolean isExpired(long now, long ttl) {
+    return (expiryTime >= 0 && now > expiryTime)
+        || (ttl >= 0 && receiveTime >= 0 && now - receiveTime > ttl);
+  }
 }
@@ -0,0 +1,122 @@
+package edu.kit.tm.ptp;
+
+/**
+ * Estimates the round-trip time to a peer like TCP does (RFC 6298). Keeps a smoothed round-trip
+ * time and its variation and derives a retransmission timeout from them. The samples are taken
+ * by pings which the peer answers at once. Thread-safe.
+ */
+class RttEstimator {
+  /** Lower bound of the timeout in milliseconds. */
+  static final long MIN_RTO = 1000;
+  /** Upper bound of the timeout in milliseconds. */
+  static final long MAX_RTO = 60 * 1000;
+  /** Interval in milliseconds after which the estimate is refreshed by another ping. */
+  static final long PROBE_INTERVAL = 30 * 1000;
+  /** Number of lost pings after which a peer without any sample isn't probed anymore. */
+  static final int MAX_LOST_PROBES = 2;
+
+  private double srtt = -1;
+  private double rttvar = 0;
+  /** Time of the last sample in milliseconds. */
+  private long lastSample = -1;
+  /** Stamp of the unanswered ping in nanoseconds. */
+  private long probeStamp = 0;
+  private boolean probing = false;
+  private int lostProbes = 0;
+
+  /**
+   * Adds a measured round-trip time.
+   *
+   * @param rtt The round-trip time in milliseconds.
+   * @param now The current time in milliseconds.
+   */
+  synchronized void sample(long rtt, long now) {
+    if (rtt < 0) {
+      throw new IllegalArgumentException();
+    }
+
+    if (srtt < 0) {
+      srtt = rtt;
+      rttvar = rtt / 2.0;
+    } else {
+      rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+      srtt = 0.875 * srtt + 0.125 * rtt;
+    }
+
+    lastSample = now;
+  }
+
+  /**
+   * Returns the smoothed round-trip time in milliseconds or -1 if there is no sample yet.
+   */
+  synchronized long getSrtt() {
+    return srtt < 0 ? -1 : Math.round(srtt);
+  }
+
+  /**
+   * Returns the time in milliseconds to wait for an answer of the peer or -1 if there is no
+   * sample yet.
+   */
+  synchronized long getRto() {
+    if (srtt < 0) {
+      return -1;
+    }
+
+    long rto = Math.round(srtt + 4 * rttvar);
+    return Math.max(MIN_RTO, Math.min(rto, MAX_RTO));
+  }
+
+  /**
+   * Starts a ping if the estimate needs to be refreshed and no ping is unanswered.
+   * A ping which hasn't been answered within {@link #MAX_RTO} is considered lost. Peers running a
+   * version without pings never answer them, so they aren't probed anymore after
+   * {@link #MAX_LOST_PROBES} lost pings without any sample.
+   *
+   * @param now The current time in milliseconds.
+   * @param nanos The current value of {@link System#nanoTime()}.
+   * @return True if a ping with the stamp {@code nanos} should be sent.
+   */
+  synchronized boolean startProbe(long now, long nanos) {
+    if (lastSample >= 0 && now - lastSample < PROBE_INTERVAL) {
+      return false;
+    }
+
+    if (srtt < 0 && lostProbes >= MAX_LOST_PROBES) {
+      // The peer doesn't support pings
+      return false;
+    }
+
+    if (probing) {
+      if (nanos - probeStamp < MAX_RTO * 1000000L) {
+        return false;
+      }
+
+      if (srtt < 0 && ++lostProbes >= MAX_LOST_PROBES) {
+        probing = false;
+        return false;
+      }
+    }
+
+    probeStamp = nanos;
+    probing = true;
+    return true;
+  }
+
+  /**
+   * Takes a sample if the stamp belongs to the unanswered ping.
+   *
+   * @param stamp The stamp returned by the peer.
+   * @param now The current time in milliseconds.
+   * @param nanos The current value of {@link System#nanoTime()}.
+   * @return True if a sample has been taken.
+   */
+  synchronized boolean probeAnswered(long stamp, long now, long nanos) {
+    if (!probing || stamp != probeStamp) {
+      return false;
+    }
+
+    probing = false;
+    sample((nanos - stamp) / 1000000L, now);
+    return true;
+  }
+}
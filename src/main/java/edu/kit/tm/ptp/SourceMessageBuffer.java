@@ -0,0 +1,352 @@
+package edu.kit.tm.ptp;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queue of received messages with a separate queue for every source. Polling takes messages of
+ * the sources in turns, so a peer sending lots of messages doesn't delay the messages of the
+ * other peers. The capacity and the overflow policy apply to every source on its own.
+ * Thread-safe.
+ */
+class SourceMessageBuffer extends MessageBuffer {
+  private final int capacity;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  /** Queued messages of sources with at least one message. */
+  private final Map<Identifier, Queue<Object>> sources = new HashMap<>();
+  /** Sources with queued messages in the order they are polled. */
+  private final Queue<Identifier> turns = new ArrayDeque<>();
+
+  /**
+   * Constructs a new SourceMessageBuffer.
+   *
+   * @param capacity The maximum number of queued messages per source.
+   * @param policy Decides what happens to added messages if the queue of the source is full.
+   */
+  SourceMessageBuffer(int capacity, IMessageQueue.OverflowPolicy policy) {
+    super(capacity, policy, null);
+
+    this.capacity = capacity;
+  }
+
+  @Override
+  void add(Object message) {
+    Identifier source = ((QueuedMessage<?>) message).getSource();
+
+    lock.lock();
+    try {
+      Queue<Object> messages = sources.get(source);
+
+      if (messages != null && messages.size() >= capacity) {
+        // Make space before blocking or dropping messages
+        evictExpired(System.currentTimeMillis());
+        messages = sources.get(source);
+      }
+
+      while (messages != null && messages.size() >= capacity) {
+        switch (getPolicy()) {
+          case BLOCK:
+            try {
+              notFull.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              drop();
+              return;
+            }
+            // The queue of the source may have been removed in the meantime
+            messages = sources.get(source);
+            break;
+          case DROP_OLDEST:
+            messages.poll();
+            drop();
+            break;
+          case DROP_NEWEST:
+            drop();
+            return;
+          default:
+            throw new IllegalStateException();
+        }
+      }
+
+      if (messages == null) {
+        messages = new ArrayDeque<>();
+        sources.put(source, messages);
+        turns.add(source);
+      }
+
+      messages.add(message);
+      // Waiting threads may be interested in different sources
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  Object poll() {
+    return poll(null);
+  }
+
+  /**
+   * Returns the next message of the source or null if there is none.
+   *
+   * @param source The source or null to take the next source in turn.
+   */
+  Object poll(Identifier source) {
+    lock.lock();
+    try {
+      return next(source);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  Object poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return poll(null, timeout, unit);
+  }
+
+  /**
+   * Returns the next message of the source. Waits up to the supplied time.
+   *
+   * @param source The source or null to take the next source in turn.
+   * @return The message or null if the time elapsed.
+   */
+  Object poll(Identifier source, long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+
+    lock.lockInterruptibly();
+    try {
+      Object message;
+
+      while ((message = next(source)) == null) {
+        if (nanos <= 0) {
+          return null;
+        }
+
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+
+      return message;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  Object take() throws InterruptedException {
+    return take(null);
+  }
+
+  /**
+   * Returns the next message of the source. Waits until a message is available.
+   *
+   * @param source The source or null to take the next source in turn.
+   */
+  Object take(Identifier source) throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      Object message;
+
+      while ((message = next(source)) == null) {
+        notEmpty.await();
+      }
+
+      return message;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  int drainTo(Collection<Object> target, int maxItems) {
+    return drainTo(null, target, maxItems);
+  }
+
+  /**
+   * Removes up to the supplied number of messages of the source and adds them to the collection.
+   *
+   * @param source The source or null to take the sources in turns.
+   * @return The number of messages added.
+   */
+  int drainTo(Identifier source, Collection<Object> target, int maxItems) {
+    lock.lock();
+    try {
+      int count = 0;
+      Object message;
+
+      while (count < maxItems && (message = next(source)) != null) {
+        target.add(message);
+        count++;
+      }
+
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  boolean isEmpty() {
+    lock.lock();
+    try {
+      long now = System.currentTimeMillis();
+
+      for (Iterator<Map.Entry<Identifier, Queue<Object>>> it = sources.entrySet().iterator();
+          it.hasNext();) {
+        Map.Entry<Identifier, Queue<Object>> entry = it.next();
+
+        if (evictHead(entry.getValue(), now)) {
+          return false;
+        }
+
+        it.remove();
+        turns.remove(entry.getKey());
+      }
+
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns true if there is no message of the source.
+   */
+  boolean isEmpty(Identifier source) {
+    lock.lock();
+    try {
+      Queue<Object> messages = sources.get(source);
+
+      if (messages == null) {
+        return true;
+      }
+
+      if (evictHead(messages, System.currentTimeMillis())) {
+        return false;
+      }
+
+      sources.remove(source);
+      turns.remove(source);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  int evictExpired(long now) {
+    lock.lock();
+    try {
+      int count = 0;
+
+      for (Iterator<Queue<Object>> queues = sources.values().iterator(); queues.hasNext();) {
+        Queue<Object> messages = queues.next();
+
+        for (Iterator<Object> it = messages.iterator(); it.hasNext();) {
+          if (isExpired(it.next(), now)) {
+            it.remove();
+            expire();
+            count++;
+          }
+        }
+
+        if (messages.isEmpty()) {
+          queues.remove();
+        }
+      }
+
+      if (count > 0) {
+        turns.retainAll(sources.keySet());
+        notFull.signalAll();
+      }
+
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the expired messages at the head of the queue. Other expired messages are left to
+   * polling and {@link #evictExpired(long)}. Needs to be called holding the lock.
+   *
+   * @return True if a message is left in the queue.
+   */
+  private boolean evictHead(Queue<Object> messages, long now) {
+    Object message;
+    boolean evicted = false;
+
+    while ((message = messages.peek()) != null && isExpired(message, now)) {
+      messages.poll();
+      expire();
+      evicted = true;
+    }
+
+    if (evicted) {
+      notFull.signalAll();
+    }
+
+    return !messages.isEmpty();
+  }
+
+  /**
+   * Removes the next message of the source. Needs to be called holding the lock.
+   *
+   * @param source The source or null to take the next source in turn.
+   */
+  private Object next(Identifier source) {
+    boolean inTurn = source == null;
+
+    if (inTurn) {
+      source = turns.poll();
+
+      if (source == null) {
+        return null;
+      }
+    }
+
+    Queue<Object> messages = sources.get(source);
+
+    if (messages == null) {
+      return null;
+    }
+
+    long now = System.currentTimeMillis();
+    Object message;
+
+    while ((message = messages.poll()) != null && isExpired(message, now)) {
+      expire();
+    }
+
+    if (messages.isEmpty()) {
+      // Don't keep queues of peers which stopped sending
+      sources.remove(source);
+
+      if (!inTurn) {
+        turns.remove(source);
+      }
+    } else if (inTurn) {
+      // Other sources go first
+      turns.add(source);
+    }
+
+    notFull.signalAll();
+
+    if (message == null && inTurn) {
+      // Only expired messages were left, try the next source
+      return next(null);
+    }
+
+    return message;
+  }
+}
@@ -0,0 +1,241 @@
+package edu.kit.tm.ptp.auth;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.auth.PublicKeyAuthenticator.AuthenticationMessage;
+import edu.kit.tm.ptp.crypt.CryptHelper;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Signs authentication messages in the background and keeps them for reuse. An authentication
+ * message stays valid for {@link PublicKeyAuthenticator#TIMESTAMP_INTERVALL}, so connecting to the
+ * same destination again within {@link #REUSE_INTERVAL} doesn't need a new signature. Messages
+ * which need to be signed are collected and signed in a batch by a single task of the executor,
+ * so reconnecting to lots of peers doesn't occupy the thread handling the connections.
+ * Holds a limited number of messages and drops the least recently used ones. Thread-safe.
+ */
+public class AuthenticationSigner {
+  /**
+   * Maximum age in milliseconds of a message to reuse. Leaves half of the validity for the
+   * delivery of the message and differing clocks.
+   */
+  public static final long REUSE_INTERVAL = PublicKeyAuthenticator.TIMESTAMP_INTERVALL / 2;
+  /** Default maximum number of kept messages. */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private static final Logger logger = Logger.getLogger(AuthenticationSigner.class.getName());
+
+  private final CryptHelper cryptHelper;
+  private final Executor executor;
+  /** Counts the signatures or null. */
+  private final PublicKeyCache statistics;
+  private final Map<Identifier, AuthenticationMessage> messages;
+  private List<Request> pending = new ArrayList<>();
+  /** True while a task signs the pending messages. */
+  private boolean signing = false;
+
+  private final Runnable signTask = new Runnable() {
+    @Override
+    public void run() {
+      signPending();
+    }
+  };
+
+  /**
+   * Informed about a signed message by the thread of the executor.
+   */
+  public interface Callback {
+    void signed(AuthenticationMessage message);
+
+    void failed();
+  }
+
+  private static class Request {
+    private final Identifier own;
+    private final Identifier other;
+    private final Callback callback;
+
+    Request(Identifier own, Identifier other, Callback callback) {
+      this.own = own;
+      this.other = other;
+      this.callback = callback;
+    }
+  }
+
+  /**
+   * Constructs a new AuthenticationSigner.
+   *
+   * @param cryptHelper Signs the messages.
+   * @param executor Runs the tasks signing messages.
+   * @param statistics Counts the signatures as handshakes or null.
+   */
+  public AuthenticationSigner(CryptHelper cryptHelper, Executor executor,
+      PublicKeyCache statistics) {
+    if (cryptHelper == null || executor == null) {
+      throw new IllegalArgumentException();
+    }
+
+    this.cryptHelper = cryptHelper;
+    this.executor = executor;
+    this.statistics = statistics;
+    this.messages = new LinkedHashMap<Identifier, AuthenticationMessage>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Identifier, AuthenticationMessage> eldest) {
+        return size() > DEFAULT_CAPACITY;
+      }
+    };
+  }
+
+  /**
+   * Returns the CryptHelper signing the messages.
+   */
+  public CryptHelper getCryptHelper() {
+    return cryptHelper;
+  }
+
+  /**
+   * Returns a previously signed message which can still be used.
+   *
+   * @param own The identifier of the sender.
+   * @param other The identifier of the destination.
+   * @return The message or null if a new one needs to be signed.
+   */
+  public synchronized AuthenticationMessage get(Identifier own, Identifier other) {
+    AuthenticationMessage message = messages.get(other);
+
+    if (message == null) {
+      return null;
+    }
+
+    if (!own.equals(message.source)
+        || System.currentTimeMillis() - message.timestamp >= REUSE_INTERVAL
+        || !cryptHelper.isPublicKey(message.pubKey)) {
+      // Outdated or signed by another identity
+      messages.remove(other);
+      return null;
+    }
+
+    return message;
+  }
+
+  /**
+   * Signs a message in the background. Requests made before the message has been signed are
+   * signed together.
+   *
+   * @param own The identifier of the sender.
+   * @param other The identifier of the destination.
+   * @param callback Informed by the thread of the executor.
+   */
+  public void sign(Identifier own, Identifier other, Callback callback) {
+    if (own == null || other == null || callback == null) {
+      throw new IllegalArgumentException();
+    }
+
+    synchronized (this) {
+      pending.add(new Request(own, other, callback));
+
+      if (signing) {
+        // Picked up by the running task
+        return;
+      }
+
+      signing = true;
+    }
+
+    executor.execute(signTask);
+  }
+
+  /**
+   * Signs the pending messages until no more are requested.
+   */
+  private void signPending() {
+    List<Request> batch = null;
+    // Index of the first request of the batch whose callback hasn't been informed
+    int next = 0;
+    boolean finished = false;
+
+    try {
+      while (true) {
+        synchronized (this) {
+          if (pending.isEmpty()) {
+            signing = false;
+            finished = true;
+            return;
+          }
+
+          batch = pending;
+          pending = new ArrayList<>();
+        }
+
+        for (next = 0; next < batch.size();) {
+          Request request = batch.get(next);
+          // Several connections to a destination share the message
+          AuthenticationMessage message = get(request.own, request.other);
+
+          if (message == null) {
+            long start = System.nanoTime();
+
+            try {
+              message = PublicKeyAuthenticator.createAuthenticationMessage(cryptHelper,
+                  request.own, request.other, System.currentTimeMillis());
+            } catch (GeneralSecurityException | UnsupportedEncodingException e) {
+              logger.log(Level.WARNING, "Failed to sign authentication message");
+              next++;
+              request.callback.failed();
+              continue;
+            } finally {
+              if (statistics != null) {
+                statistics.handshakeFinished(System.nanoTime() - start);
+              }
+            }
+
+            synchronized (this) {
+              messages.put(request.other, message);
+            }
+          }
+
+          next++;
+          request.callback.signed(message);
+        }
+      }
+    } finally {
+      if (!finished) {
+        abort(batch, next);
+      }
+    }
+  }
+
+  /**
+   * Informs the remaining requests of a batch interrupted by an error about the failure and
+   * restarts signing if more messages have been requested in the meantime.
+   */
+  private void abort(List<Request> batch, int next) {
+    logger.log(Level.WARNING, "Error while signing authentication messages");
+
+    if (batch != null) {
+      for (int i = next; i < batch.size(); i++) {
+        batch.get(i).callback.failed();
+      }
+    }
+
+    synchronized (this) {
+      signing = !pending.isEmpty();
+
+      if (!signing) {
+        return;
+      }
+    }
+
+    executor.execute(signTask);
+  }
+}
@@ -0,0 +1,72 @@
+package edu.kit.tm.ptp.auth;
+
+/**
+ * Snapshot of the statistics of the handshakes authenticating connections. Times are wall-clock
+ * times which include waiting for locks and threads, not the CPU time of the handshakes.
+ */
+public final class AuthenticationStatistics {
+  private final long handshakes;
+  private final long cacheHits;
+  private final long totalWallClockNanos;
+  private final long maxWallClockNanos;
+  private final int cachedKeys;
+
+  AuthenticationStatistics(long handshakes, long cacheHits, long totalWallClockNanos,
+      long maxWallClockNanos, int cachedKeys) {
+    this.handshakes = handshakes;
+    this.cacheHits = cacheHits;
+    this.totalWallClockNanos = totalWallClockNanos;
+    this.maxWallClockNanos = maxWallClockNanos;
+    this.cachedKeys = cachedKeys;
+  }
+
+  /**
+   * Returns the number of authentication messages which have been signed or checked.
+   */
+  public long getHandshakes() {
+    return handshakes;
+  }
+
+  /**
+   * Returns the number of checked authentication messages whose public key was cached.
+   */
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  /**
+   * Returns the total wall-clock time in nanoseconds spent on signing and checking
+   * authentication messages.
+   */
+  public long getTotalWallClockNanos() {
+    return totalWallClockNanos;
+  }
+
+  /**
+   * Returns the average wall-clock time in nanoseconds of a handshake or 0 if there was none.
+   */
+  public long getAverageWallClockNanos() {
+    return handshakes == 0 ? 0 : totalWallClockNanos / handshakes;
+  }
+
+  /**
+   * Returns the maximum wall-clock time in nanoseconds of a handshake.
+   */
+  public long getMaxWallClockNanos() {
+    return maxWallClockNanos;
+  }
+
+  /**
+   * Returns the number of cached public keys.
+   */
+  public int getCachedKeys() {
+    return cachedKeys;
+  }
+
+  @Override
+  public String toString() {
+    return "handshakes " + handshakes + ", cache hits " + cacheHits + ", wall-clock average "
+        + getAverageWallClockNanos() + " ns, wall-clock max " + maxWallClockNanos
+        + " ns, cached keys " + cachedKeys;
+  }
+}
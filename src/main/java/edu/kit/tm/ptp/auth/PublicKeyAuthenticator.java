@@ -15,6 +15,7 @@ import java.security.InvalidKeyException;
 import java.security.PublicKey;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,6 +24,10 @@ import java.util.logging.Logger;
  * AuthenticationMessage to the target. The target checks the validity of the AuthenticationMessage
  * and responds with a AUTHENTICATION_SUCCESS_MESSAGE in that case. Otherwise the channel will be
  * closed.
+ * Public keys which have been verified before are taken from a {@link PublicKeyCache}, if
+ * supplied, so only the signature needs to be checked. Own authentication messages are taken
+ * from an {@link AuthenticationSigner}, if supplied, which reuses them for a while and signs new
+ * ones in the background. Received messages are verified by worker threads, if supplied.
  * 
  * @author Timon Hackenjos
  *
@@ -33,9 +38,17 @@ public class PublicKeyAuthenticator extends Authenticator {
 
   private static final Logger logger = Logger.getLogger(PublicKeyAuthenticator.class.getName());
   private static final byte AUTHENTICATION_SUCCESS_MESSAGE = 0x0;
-  private static final long TIMESTAMP_INTERVALL = 180 * 1000; // in ms
+  static final long TIMESTAMP_INTERVALL = 180 * 1000; // in ms
 
   private final CryptHelper cryptHelper;
+  /** Verified keys of other peers or null. */
+  private final PublicKeyCache keyCache;
+  /** Signs and reuses own authentication messages or null to sign synchronously. */
+  private final AuthenticationSigner signer;
+  /** Verifies received authentication messages or null to verify them synchronously. */
+  private final Executor workers;
+  /** Runs the results of the signer and the workers in the thread handling the channel. */
+  private final Executor executor;
   private static Serializer serializer = null;
   private boolean initiator;
   private boolean messageSent = false;
@@ -43,8 +56,45 @@ public class PublicKeyAuthenticator extends Authenticator {
 
   public PublicKeyAuthenticator(AuthenticationListener listener, MessageChannel channel,
       CryptHelper cryptHelper) {
+    this(listener, channel, cryptHelper, null);
+  }
+
+  /**
+   * Constructs a new PublicKeyAuthenticator.
+   *
+   * @param keyCache The cache of verified public keys or null to verify every key.
+   */
+  public PublicKeyAuthenticator(AuthenticationListener listener, MessageChannel channel,
+      CryptHelper cryptHelper, PublicKeyCache keyCache) {
+    this(listener, channel, cryptHelper, keyCache, null, null, null);
+  }
+
+  /**
+   * Constructs a new PublicKeyAuthenticator which keeps the cryptographic operations out of the
+   * thread handling the channel.
+   *
+   * @param keyCache The cache of verified public keys or null to verify every key.
+   * @param signer Signs own authentication messages in the background or null to sign them
+   *        synchronously.
+   * @param workers Verifies received authentication messages or null to verify them
+   *        synchronously.
+   * @param executor Runs the results of the signer and the workers in the thread handling the
+   *        channel. Required if a signer or workers are supplied.
+   */
+  public PublicKeyAuthenticator(AuthenticationListener listener, MessageChannel channel,
+      CryptHelper cryptHelper, PublicKeyCache keyCache, AuthenticationSigner signer,
+      Executor workers, Executor executor) {
     super(listener, channel);
+
+    if ((signer != null || workers != null) && executor == null) {
+      throw new IllegalArgumentException();
+    }
+
     this.cryptHelper = cryptHelper;
+    this.keyCache = keyCache;
+    this.signer = signer;
+    this.workers = workers;
+    this.executor = executor;
 
     initSerializer();
   }
@@ -145,20 +195,71 @@ public class PublicKeyAuthenticator extends Authenticator {
         return;
       }
 
-      // check if the authentication message is valid
-      if (authMessage == null || !authenticationMessageValid(authMessage)) {
+      if (authMessage == null) {
         authFailed();
         return;
       }
 
-      // now we know the identifier of the initiator
-      other = authMessage.source;
+      if (workers != null) {
+        verifyInBackground(authMessage);
+        return;
+      }
 
-      // respond with message to signal successfull authentication
-      channel.addMessage(new byte[] {AUTHENTICATION_SUCCESS_MESSAGE}, 0);
+      // check if the authentication message is valid
+      long start = System.nanoTime();
+      boolean valid = authenticationMessageValid(authMessage);
+      handshakeFinished(start);
+
+      verified(authMessage, valid);
     }
   }
 
+  /**
+   * Checks the authentication message in a worker thread and continues in the thread handling the
+   * channel.
+   */
+  private void verifyInBackground(final AuthenticationMessage authMessage) {
+    workers.execute(new Runnable() {
+      @Override
+      public void run() {
+        long start = System.nanoTime();
+        boolean result = false;
+
+        try {
+          result = authenticationMessageValid(authMessage);
+        } catch (Throwable t) {
+          logger.log(Level.WARNING, "Error while checking authentication message: " + t);
+        } finally {
+          handshakeFinished(start);
+        }
+
+        final boolean valid = result;
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            // The connection might have been closed while verifying the message
+            if (channel.getChannel().isOpen()) {
+              verified(authMessage, valid);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  private void verified(AuthenticationMessage authMessage, boolean valid) {
+    if (!valid) {
+      authFailed();
+      return;
+    }
+
+    // now we know the identifier of the initiator
+    other = authMessage.source;
+
+    // respond with message to signal successfull authentication
+    channel.addMessage(new byte[] {AUTHENTICATION_SUCCESS_MESSAGE}, 0);
+  }
+
   @Override
   public void authenticate(Identifier own) {
     if (own == null) {
@@ -181,11 +282,65 @@ public class PublicKeyAuthenticator extends Authenticator {
     this.initiator = true;
 
     // We initiated the authentication process and therefore send an authentication message
+    if (signer != null) {
+      AuthenticationMessage message = signer.get(own, other);
+
+      if (message != null) {
+        sendAuthMessage(message);
+      } else {
+        signer.sign(own, other, new SignerCallback());
+      }
+
+      return;
+    }
+
+    long start = System.nanoTime();
+    AuthenticationMessage message;
+
     try {
-      sendAuthMessage(createAuthenticationMessage());
+      message = createAuthenticationMessage();
     } catch (GeneralSecurityException | UnsupportedEncodingException e) {
       logger.log(Level.WARNING, "Failed to sign authentication message");
       authFailed();
+      return;
+    } finally {
+      handshakeFinished(start);
+    }
+
+    sendAuthMessage(message);
+  }
+
+  /**
+   * Hands the message signed in the background back to the thread handling the channel.
+   */
+  private class SignerCallback implements AuthenticationSigner.Callback {
+    @Override
+    public void signed(final AuthenticationMessage message) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          // The connection might have been closed while waiting for the signature
+          if (channel.getChannel().isOpen()) {
+            sendAuthMessage(message);
+          }
+        }
+      });
+    }
+
+    @Override
+    public void failed() {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          authFailed();
+        }
+      });
+    }
+  }
+
+  private void handshakeFinished(long start) {
+    if (keyCache != null) {
+      keyCache.handshakeFinished(System.nanoTime() - start);
     }
   }
 
@@ -257,16 +412,27 @@ public class PublicKeyAuthenticator extends Authenticator {
     }
 
     try {
-      PublicKey pubKey = cryptHelper.decodePublicKey(message.pubKey);
-      Identifier pubKeyIdentifier = cryptHelper.calculateHiddenServiceIdentifier(pubKey);
+      PublicKey pubKey = keyCache != null ? keyCache.get(message.source, message.pubKey) : null;
+      boolean cached = pubKey != null;
 
-      if (pubKeyIdentifier == null || !message.source.equals(pubKeyIdentifier)) {
-        logger.log(Level.WARNING,
-            "Identifier and public key of authentication message do not match");
-        return false;
+      if (!cached) {
+        pubKey = cryptHelper.decodePublicKey(message.pubKey);
+        Identifier pubKeyIdentifier = cryptHelper.calculateHiddenServiceIdentifier(pubKey);
+
+        if (pubKeyIdentifier == null || !message.source.equals(pubKeyIdentifier)) {
+          logger.log(Level.WARNING,
+              "Identifier and public key of authentication message do not match");
+          return false;
+        }
       }
 
-      return cryptHelper.verifySignature(getBytes(message), message.signature, pubKey);
+      boolean valid = cryptHelper.verifySignature(getBytes(message), message.signature, pubKey);
+
+      if (valid && !cached && keyCache != null) {
+        keyCache.put(message.source, message.pubKey, pubKey);
+      }
+
+      return valid;
 
     } catch (InvalidKeySpecException e) {
       logger.log(Level.WARNING, "Failed to read public key in authentication message");
@@ -288,19 +454,39 @@ public class PublicKeyAuthenticator extends Authenticator {
 
   protected AuthenticationMessage createAuthenticationMessage(long timestamp)
       throws GeneralSecurityException, UnsupportedEncodingException {
-    byte[] pubKey = cryptHelper.getPublicKeyBytes();
-    ByteBuffer toSign = getBytes(own, other, pubKey, timestamp);
+    return createAuthenticationMessage(cryptHelper, own, other, timestamp);
+  }
 
-    byte[] signature = cryptHelper.sign(toSign);
+  /**
+   * Creates and signs an authentication message.
+   *
+   * @param cryptHelper Signs the message.
+   * @param own The identifier of the sender.
+   * @param other The identifier of the receiver.
+   * @param timestamp The time the message is generated.
+   */
+  static AuthenticationMessage createAuthenticationMessage(CryptHelper cryptHelper,
+      Identifier own, Identifier other, long timestamp)
+      throws GeneralSecurityException, UnsupportedEncodingException {
+    byte[] pubKey;
+    byte[] signature;
 
-    AuthenticationMessage auth =
-        new AuthenticationMessage(own, other, pubKey, timestamp, signature);
+    // The key pair mustn't change between reading the public key and signing
+    synchronized (cryptHelper) {
+      pubKey = cryptHelper.getPublicKeyBytes();
+      signature = cryptHelper.sign(toSign(own, other, pubKey, timestamp));
+    }
 
-    return auth;
+    return new AuthenticationMessage(own, other, pubKey, timestamp, signature);
   }
 
   protected ByteBuffer getBytes(Identifier source, Identifier destination, byte[] pubKey,
       long timestamp) throws UnsupportedEncodingException {
+    return toSign(source, destination, pubKey, timestamp);
+  }
+
+  private static ByteBuffer toSign(Identifier source, Identifier destination, byte[] pubKey,
+      long timestamp) throws UnsupportedEncodingException {
     byte[] sourceBytes = source.toString().getBytes(Constants.charset);
     byte[] destinationBytes = destination.toString().getBytes(Constants.charset);
 
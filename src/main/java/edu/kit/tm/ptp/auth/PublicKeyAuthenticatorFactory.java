@@ -2,18 +2,43 @@ package edu.kit.tm.ptp.auth;
 
 import edu.kit.tm.ptp.channels.MessageChannel;
 import edu.kit.tm.ptp.connection.ConnectionManager;
+import edu.kit.tm.ptp.crypt.CryptHelper;
+import edu.kit.tm.ptp.thread.SharedCryptoPool;
+
+import java.util.concurrent.Executor;
 
 /**
- * Factory class for the PublicKeyAuthenticator.
+ * Factory class for the PublicKeyAuthenticator. The authenticators share a cache of verified
+ * public keys, a signer of own authentication messages and the worker threads of the
+ * {@link SharedCryptoPool} which sign and verify the messages.
  * 
  * @author Timon Hackenjos
  *
  */
 public class PublicKeyAuthenticatorFactory extends AuthenticatorFactory {
+  private final PublicKeyCache keyCache = new PublicKeyCache();
+  private final Executor workers = SharedCryptoPool.get();
+  private AuthenticationSigner signer = null;
 
   @Override
   public Authenticator createInstance(ConnectionManager manager, AuthenticationListener listener,
       MessageChannel channel) {
-    return new PublicKeyAuthenticator(listener, channel, manager.getCryptHelper());
+    return new PublicKeyAuthenticator(listener, channel, manager.getCryptHelper(), keyCache,
+        getSigner(manager.getCryptHelper()), workers, manager);
+  }
+
+  /**
+   * Returns the statistics of the handshakes of the created authenticators.
+   */
+  public AuthenticationStatistics getStatistics() {
+    return keyCache.getStatistics();
+  }
+
+  private synchronized AuthenticationSigner getSigner(CryptHelper cryptHelper) {
+    if (signer == null || signer.getCryptHelper() != cryptHelper) {
+      signer = new AuthenticationSigner(cryptHelper, workers, keyCache);
+    }
+
+    return signer;
   }
 }
@@ -0,0 +1,119 @@
+package edu.kit.tm.ptp.auth;
+
+import edu.kit.tm.ptp.Identifier;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the public keys of peers which authenticated successfully. A peer which authenticates
+ * again with the same key doesn't need its key to be decoded and its identifier to be derived from
+ * the key, only the signature is checked. Holds a limited number of keys and drops the least
+ * recently used ones. Counts the handshakes and the wall-clock time spent on them. Thread-safe.
+ */
+public class PublicKeyCache {
+  /** Default maximum number of cached keys. */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final Map<Identifier, CachedKey> keys;
+  private long handshakes = 0;
+  private long hits = 0;
+  private long totalWallClockNanos = 0;
+  private long maxWallClockNanos = 0;
+
+  private static class CachedKey {
+    private final byte[] encoded;
+    private final PublicKey key;
+
+    CachedKey(byte[] encoded, PublicKey key) {
+      this.encoded = encoded.clone();
+      this.key = key;
+    }
+  }
+
+  /**
+   * Constructs a new PublicKeyCache holding up to {@link #DEFAULT_CAPACITY} keys.
+   */
+  public PublicKeyCache() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a new PublicKeyCache.
+   *
+   * @param capacity The maximum number of cached keys.
+   */
+  public PublicKeyCache(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException();
+    }
+
+    // Access order to drop the least recently used key
+    keys = new LinkedHashMap<Identifier, CachedKey>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Identifier, CachedKey> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns the key of the identifier if the encoded key has been verified for it before.
+   *
+   * @param identifier The identifier the peer claims.
+   * @param encoded The encoded public key sent by the peer.
+   * @return The decoded key or null if the key needs to be verified.
+   */
+  public synchronized PublicKey get(Identifier identifier, byte[] encoded) {
+    CachedKey cached = keys.get(identifier);
+
+    if (cached == null || !Arrays.equals(cached.encoded, encoded)) {
+      return null;
+    }
+
+    hits++;
+    return cached.key;
+  }
+
+  /**
+   * Adds a key which belongs to the identifier.
+   *
+   * @param identifier The identifier derived from the key.
+   * @param encoded The encoded public key.
+   * @param key The decoded public key.
+   */
+  public synchronized void put(Identifier identifier, byte[] encoded, PublicKey key) {
+    keys.put(identifier, new CachedKey(encoded, key));
+  }
+
+  /**
+   * Returns the number of cached keys.
+   */
+  public synchronized int size() {
+    return keys.size();
+  }
+
+  /**
+   * Counts a handshake.
+   *
+   * @param wallClockNanos The wall-clock time in nanoseconds spent on signing or checking the
+   *        authentication message.
+   */
+  synchronized void handshakeFinished(long wallClockNanos) {
+    handshakes++;
+    totalWallClockNanos += wallClockNanos;
+    maxWallClockNanos = Math.max(maxWallClockNanos, wallClockNanos);
+  }
+
+  /**
+   * Returns a snapshot of the statistics of the handshakes.
+   */
+  public synchronized AuthenticationStatistics getStatistics() {
+    return new AuthenticationStatistics(handshakes, hits, totalWallClockNanos, maxWallClockNanos,
+        keys.size());
+  }
+}
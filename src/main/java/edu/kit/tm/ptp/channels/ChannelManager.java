@@ -1,5 +1,8 @@
 package edu.kit.tm.ptp.channels;
 
+import edu.kit.tm.ptp.thread.LoopTask;
+import edu.kit.tm.ptp.utility.BufferPool;
+
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
@@ -8,9 +11,12 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,8 +32,12 @@ public class ChannelManager implements Runnable {
   private final ChannelListener listener;
   private final Thread thread;
   private final Queue<ChannelEvent> eventQueue = new ConcurrentLinkedQueue<>();
+  private final List<LoopTask> loopTasks = new CopyOnWriteArrayList<>();
+  /** True while the thread waits for ready channels and hasn't been woken for new events. */
+  private final AtomicBoolean selecting = new AtomicBoolean(false);
 
-  private Selector selector = null;
+  private volatile Selector selector = null;
+  private volatile BufferPool bufferPool = null;
 
   /**
    * Initializes a new ChannelManager.
@@ -82,24 +92,71 @@ public class ChannelManager implements Runnable {
 
 
 
+  /**
+   * Runs the supplied task on every iteration of the selection loop. The time to wait for ready
+   * channels is limited by the time the tasks return.
+   */
+  public void addLoopTask(LoopTask task) {
+    if (task == null) {
+      throw new IllegalArgumentException();
+    }
+
+    loopTasks.add(task);
+    wakeup();
+  }
+
+  /**
+   * Wakes the thread if it is waiting for ready channels.
+   */
+  public void wakeup() {
+    Selector current = selector;
+
+    if (current != null) {
+      current.wakeup();
+    }
+  }
+
+  /**
+   * Returns true if the calling thread is the thread of the ChannelManager.
+   */
+  public boolean isLoopThread() {
+    return Thread.currentThread() == thread;
+  }
+
   @Override
   public void run() {
     int readyChannels = 0;
-    long timeout = 100;
+    long timeout;
     ChannelEvent event;
 
     while (!thread.isInterrupted()) {
+      timeout = runLoopTasks();
 
       while ((event = eventQueue.poll()) != null) {
         event.process(selector);
       }
 
+      selecting.set(true);
+
+      if (!eventQueue.isEmpty()) {
+        // Added before the flag has been set, the thread hasn't been woken
+        timeout = 0;
+      }
+
       try {
-        readyChannels = selector.select(timeout);
+        if (timeout < 0) {
+          readyChannels = selector.select();
+        } else if (timeout == 0) {
+          readyChannels = selector.selectNow();
+        } else {
+          readyChannels = selector.select(timeout);
+        }
       } catch (IOException e) {
         logger.log(Level.WARNING, "Error occurred during selection operation: " + e.getMessage());
         thread.interrupt();
         continue;
+      } finally {
+        selecting.set(false);
       }
 
       if (readyChannels == 0) {
@@ -172,7 +229,7 @@ public class ChannelManager implements Runnable {
    */
   public void addServerSocket(ServerSocketChannel server) throws IOException {
     server.configureBlocking(false);
-    eventQueue.add(new ChannelEventRegister(SelectionKey.OP_ACCEPT, server, server));
+    addEvent(new ChannelEventRegister(SelectionKey.OP_ACCEPT, server, server));
   }
 
   /**
@@ -187,7 +244,7 @@ public class ChannelManager implements Runnable {
   public MessageChannel connect(SocketChannel socket) throws IOException {
     socket.configureBlocking(false);
     MessageChannel channel = new MessageChannel(socket, this);
-    eventQueue.add(new ChannelEventRegister(SelectionKey.OP_CONNECT, socket, channel));
+    addEvent(new ChannelEventRegister(SelectionKey.OP_CONNECT, socket, channel));
     return channel;
   }
 
@@ -198,14 +255,31 @@ public class ChannelManager implements Runnable {
    * @throws ClosedChannelException If the channel is closed.
    */
   public void addChannel(MessageChannel channel) throws ClosedChannelException {
-    eventQueue.add(new ChannelEventRegister(0, channel.getChannel(), channel));
+    addEvent(new ChannelEventRegister(0, channel.getChannel(), channel));
   }
 
   /**
    * Stops to read from and write messages to the supplied MessageChannel.
    */
   public void removeChannel(MessageChannel channel) {
-    eventQueue.add(new ChannelEventRemove(channel));
+    addEvent(new ChannelEventRemove(channel));
+  }
+
+  /**
+   * Lets the MessageChannels read messages into buffers of the pool if the ChannelListener is a
+   * {@link PooledMessageListener}.
+   *
+   * @param bufferPool The pool to use or null to allocate a new buffer for every message.
+   */
+  public void setBufferPool(BufferPool bufferPool) {
+    this.bufferPool = bufferPool;
+  }
+
+  /**
+   * Returns the pool to read messages into or null if pooling is disabled.
+   */
+  public BufferPool getBufferPool() {
+    return bufferPool;
   }
 
   /**
@@ -230,7 +304,35 @@ public class ChannelManager implements Runnable {
   }
 
   private void setInterestOps(MessageChannel channel, boolean enable, int operation) {
-    eventQueue.add(new ChannelEventSetInterestOps(channel, enable, operation));
+    addEvent(new ChannelEventSetInterestOps(channel, enable, operation));
+  }
+
+  private void addEvent(ChannelEvent event) {
+    eventQueue.add(event);
+
+    // Wake the thread only once for several events
+    if (!isLoopThread() && selecting.compareAndSet(true, false)) {
+      wakeup();
+    }
+  }
+
+  /**
+   * Runs the loop tasks.
+   *
+   * @return The time in milliseconds to wait for ready channels or -1 to wait until woken.
+   */
+  private long runLoopTasks() {
+    long timeout = -1;
+
+    for (int i = 0; i < loopTasks.size(); i++) {
+      long next = loopTasks.get(i).runTask();
+
+      if (next >= 0 && (timeout < 0 || next < timeout)) {
+        timeout = next;
+      }
+    }
+
+    return timeout;
   }
 
   private void closeChannels() throws IOException {
@@ -1,5 +1,8 @@
 package edu.kit.tm.ptp.channels;
 
+import edu.kit.tm.ptp.utility.BufferPool;
+import edu.kit.tm.ptp.utility.PooledBuffer;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
@@ -10,7 +13,11 @@ import java.util.logging.Logger;
 
 /**
  * Reads and writes messages to a SocketChannel.
- * A message is always prepended by it's length.
+ * A message is always prepended by it's length. The highest bit of the length marks raw frames
+ * which carry application bytes without any encoding. Versions without raw frames read the flag
+ * as the sign of a negative length, fail to allocate a buffer for it in their channel thread and
+ * terminate their process. Raw frames are therefore only sent if enabled, see {@link
+ * edu.kit.tm.ptp.Configuration#setRawFrames(boolean)}.
  *
  * @author Timon Hackenjos
  */
@@ -24,16 +31,25 @@ public class MessageChannel {
   private static final Logger logger = Logger.getLogger(MessageChannel.class.getName());
   private static final int bufferLength = 1024;
   private static final int maxBufferLength = 1024 * 1024 * 100; // 100MB
+  private static final byte[] emptyMessage = new byte[0];
+  /** Flag in the length of a frame which marks raw frames. */
+  private static final int rawFrame = 0x80000000;
 
   private final ByteBuffer sendLengthBuffer;
   private final ByteBuffer receiveLengthBuffer;
   private final int lenLength = 4;
 
-  private ByteBuffer sendBuffer;
+  /** Length and data segments of the current message to write with a single call. */
+  private ByteBuffer[] sendBuffers = new ByteBuffer[2];
+  private int sendBufferCount;
+  private long sendRemaining;
   private ByteBuffer receiveBuffer;
+  /** Pooled buffer backing receiveBuffer or null if it isn't pooled. */
+  private PooledBuffer receivePooled = null;
   private State readState = State.LENGTH;
   private State writeState = State.IDLE;
   private int readLength;
+  private boolean readRaw;
   private long currentId;
 
   protected final SocketChannel channel;
@@ -60,7 +76,8 @@ public class MessageChannel {
     
     // Initialize buffers
     receiveBuffer = ByteBuffer.allocate(bufferLength);
-    sendLengthBuffer = ByteBuffer.allocate(lenLength);
+    // Direct buffer to not copy it for every gathering write
+    sendLengthBuffer = ByteBuffer.allocateDirect(lenLength);
     receiveLengthBuffer = ByteBuffer.allocate(lenLength);
   }
 
@@ -87,7 +104,9 @@ public class MessageChannel {
             receiveLengthBuffer.flip();
             readLength = receiveLengthBuffer.getInt();
             receiveLengthBuffer.clear();
-            
+            readRaw = (readLength & rawFrame) != 0;
+            readLength &= ~rawFrame;
+
             if (readLength > maxBufferLength) {
               logger.log(Level.WARNING, "Read length exceeded maximum buffer size");
               closeChannel();
@@ -95,11 +114,18 @@ public class MessageChannel {
             }
             
             if (readLength == 0) {
-              messageListener.messageReceived(new byte[0], this);
+              deliver(emptyMessage);
               return;
             }
-            
-            receiveBuffer = ByteBuffer.allocate(readLength);
+
+            BufferPool pool = manager.getBufferPool();
+
+            if (pool != null && messageListener instanceof PooledMessageListener) {
+              receivePooled = pool.acquire(readLength);
+              receiveBuffer = receivePooled.getBuffer();
+            } else {
+              receiveBuffer = ByteBuffer.allocate(readLength);
+            }
             readState = State.DATA;
           }
 
@@ -114,12 +140,21 @@ public class MessageChannel {
           }
 
           if (!receiveBuffer.hasRemaining()) {
-            byte[] data = receiveBuffer.array();
-
-            messageListener.messageReceived(data, this);
             readState = State.LENGTH;
 
-            receiveBuffer.clear();
+            if (receivePooled != null) {
+              // The listener owns the buffer now
+              PooledBuffer data = receivePooled;
+              receivePooled = null;
+              receiveBuffer = null;
+
+              ((PooledMessageListener) messageListener).messageReceived(data, readRaw, this);
+            } else {
+              byte[] data = receiveBuffer.array();
+
+              deliver(data);
+              receiveBuffer.clear();
+            }
           }
           break;
         default:
@@ -132,6 +167,14 @@ public class MessageChannel {
     }
   }
 
+  private void deliver(byte[] data) {
+    if (readRaw && messageListener instanceof RawMessageListener) {
+      ((RawMessageListener) messageListener).rawMessageReceived(data, this);
+    } else {
+      messageListener.messageReceived(data, this);
+    }
+  }
+
   /**
    * Closes the channel.
    */
@@ -139,6 +182,11 @@ public class MessageChannel {
     readState = State.CLOSED;
     writeState = State.CLOSED;
 
+    if (receivePooled != null) {
+      receivePooled.release();
+      receivePooled = null;
+    }
+
     try {
       channel.close();
     } catch (IOException e) {
@@ -156,21 +204,17 @@ public class MessageChannel {
   public synchronized void write() {
     try {
       switch (writeState) {
-        case LENGTH:
-
-          channel.write(sendLengthBuffer);
-
-          if (!sendLengthBuffer.hasRemaining()) {
-            sendLengthBuffer.clear();
-            writeState = State.DATA;
-          }
-          break;
         case DATA:
-          channel.write(sendBuffer);
+          // Gathering write of the length and the data
+          sendRemaining -= channel.write(sendBuffers, 0, sendBufferCount);
 
-          if (!sendBuffer.hasRemaining()) {
-            messageListener.messageSent(currentId, this);
+          if (sendRemaining == 0) {
+            sendLengthBuffer.clear();
+            for (int i = 1; i < sendBufferCount; i++) {
+              sendBuffers[i] = null;
+            }
             writeState = State.IDLE;
+            messageListener.messageSent(currentId, this);
           }
           break;
         case IDLE:
@@ -198,19 +242,85 @@ public class MessageChannel {
    * @return True if the channel was idle and the message has been added successfully.
    */
   public synchronized boolean addMessage(byte[] data, long id) {
+    if (!isIdle(id)) {
+      return false;
+    }
+
+    sendBuffers[1] = ByteBuffer.wrap(data);
+    startMessage(1, data.length, id, false);
+    return true;
+  }
+
+  /**
+   * Adds a message consisting of several segments to write to the MessageChannel.
+   * The remaining bytes of the segments are written one after another as a single message.
+   * The segments themselves aren't modified, but their content must not change until the
+   * message has been sent.
+   *
+   * @param segments The buffers containing the bytes to send.
+   * @param id The id to use when informing the ChannelListener about a sent message.
+   * @return True if the channel was idle and the message has been added successfully.
+   * @see #addMessage(byte[], long)
+   */
+  public synchronized boolean addMessage(ByteBuffer[] segments, long id) {
+    return addMessage(segments, id, false);
+  }
+
+  /**
+   * Adds a message consisting of several segments to write to the MessageChannel.
+   * Raw messages are marked in the length and passed to a {@link RawMessageListener} on
+   * the remote end.
+   *
+   * @param segments The buffers containing the bytes to send.
+   * @param id The id to use when informing the ChannelListener about a sent message.
+   * @param raw True if the message should be sent as a raw frame.
+   * @return True if the channel was idle and the message has been added successfully.
+   * @see #addMessage(ByteBuffer[], long)
+   */
+  public synchronized boolean addMessage(ByteBuffer[] segments, long id, boolean raw) {
+    if (!isIdle(id)) {
+      return false;
+    }
+
+    if (sendBuffers.length < segments.length + 1) {
+      sendBuffers = new ByteBuffer[segments.length + 1];
+    }
+
+    long length = 0;
+
+    for (int i = 0; i < segments.length; i++) {
+      // Keep position and limit of the supplied buffers
+      sendBuffers[i + 1] = segments[i].duplicate();
+      length += segments[i].remaining();
+    }
+
+    if (length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Message is too long");
+    }
+
+    startMessage(segments.length, (int) length, id, raw);
+    return true;
+  }
+
+  private boolean isIdle(long id) {
     if (writeState != State.IDLE) {
       logger.log(Level.INFO, "MessageChannel is busy. Can't add message " + id + ".");
       return false;
     }
 
-    sendLengthBuffer.putInt(data.length);
+    return true;
+  }
+
+  private void startMessage(int segments, int length, long id, boolean raw) {
+    sendLengthBuffer.putInt(raw ? length | rawFrame : length);
     sendLengthBuffer.flip();
-    sendBuffer = ByteBuffer.wrap(data);
+    sendBuffers[0] = sendLengthBuffer;
+    sendBufferCount = segments + 1;
+    sendRemaining = lenLength + length;
 
     currentId = id;
-    writeState = State.LENGTH;
+    writeState = State.DATA;
     manager.registerWrite(this, true);
-    return true;
   }
 
   public SocketChannel getChannel() {
@@ -0,0 +1,19 @@
+package edu.kit.tm.ptp.channels;
+
+import edu.kit.tm.ptp.utility.PooledBuffer;
+
+/**
+ * ChannelListener which accepts received messages in pooled buffers.
+ *
+ * @see ChannelManager#setBufferPool(edu.kit.tm.ptp.utility.BufferPool)
+ */
+public interface PooledMessageListener extends ChannelListener {
+  /**
+   * Gets called when a new message has been received into a pooled buffer.
+   *
+   * @param data The message. The listener owns the reference and needs to release it.
+   * @param raw True if the message has been sent as a raw frame.
+   * @param source The channel that received the message.
+   */
+  void messageReceived(PooledBuffer data, boolean raw, MessageChannel source);
+}
@@ -0,0 +1,17 @@
+package edu.kit.tm.ptp.channels;
+
+/**
+ * ChannelListener which distinguishes raw frames from other messages. Raw frames are passed to
+ * other listeners like any other message.
+ *
+ * @see MessageChannel#addMessage(java.nio.ByteBuffer[], long, boolean)
+ */
+public interface RawMessageListener extends ChannelListener {
+  /**
+   * Gets called when a raw frame has been received.
+   *
+   * @param data The message itself.
+   * @param source The channel that received the message.
+   */
+  void rawMessageReceived(byte[] data, MessageChannel source);
+}
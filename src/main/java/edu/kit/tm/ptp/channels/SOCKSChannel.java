@@ -140,4 +140,17 @@ public class SOCKSChannel extends MessageChannel {
 
     return super.addMessage(data, id);
   }
+
+  /**
+   * It's not allowed to call this method while it establishes a connection through the SOCKS proxy.
+   */
+  @Override
+  public synchronized boolean addMessage(ByteBuffer[] segments, long id, boolean raw) {
+    if (!connected) {
+      logger.log(Level.WARNING, "Tried to add message to an unconnected SOCKSChannel.");
+      return false;
+    }
+
+    return super.addMessage(segments, id, raw);
+  }
 }
@@ -2,6 +2,8 @@ package edu.kit.tm.ptp.connection;
 
 import edu.kit.tm.ptp.Identifier;
 import edu.kit.tm.ptp.channels.MessageChannel;
+import edu.kit.tm.ptp.utility.LongObjectMap;
+import edu.kit.tm.ptp.utility.PooledBuffer;
 
 import java.io.IOException;
 import java.util.logging.Level;
@@ -76,11 +78,14 @@ public abstract class AbstractState {
     Identifier identifier = manager.channelMap.get(channel);
 
     if (identifier != null) {
-      for (MessageAttempt attempt : manager.dispatchedMessages.values()) {
-        if (channel.equals(attempt.getDispatchedChannel())) {
+      LongObjectMap<MessageAttempt> dispatched = manager.dispatchedMessages;
+
+      for (int slot = 0; slot < dispatched.capacity(); slot++) {
+        MessageAttempt attempt = dispatched.valueAt(slot);
+
+        if (attempt != null && channel.equals(attempt.getDispatchedChannel())) {
           attempt.setDispatchedChannel(null);
-          manager.eventQueue.add(new EventSendMessage(manager, attempt));
-          manager.semaphore.release();
+          manager.addEvent(manager.sendMessageEvents.acquire().init(attempt));
         }
       }
       
@@ -88,6 +93,10 @@ public abstract class AbstractState {
 
       if (registeredChannel != null && registeredChannel.equals(channel)) {
         manager.identifierMap.remove(identifier);
+
+        if (manager.receiveListener instanceof ConnectionListener) {
+          ((ConnectionListener) manager.receiveListener).connectionClosed(identifier);
+        }
       }
     }
 
@@ -110,6 +119,42 @@ public abstract class AbstractState {
     throw new IllegalStateException();
   }
 
+  /**
+   * Gets called when a raw frame was received. Raw frames are only expected on authenticated
+   * channels and dropped by default.
+   *
+   * @param data The message.
+   * @param source The channel that received the message.
+   */
+  public void rawMessageReceived(byte[] data, MessageChannel source) {
+    context.getConnectionManager().logger.log(Level.WARNING,
+        "Dropped raw message received on an unauthenticated channel");
+  }
+
+  /**
+   * Gets called when a message in a pooled buffer was received. Copies the message and releases
+   * the buffer by default.
+   *
+   * @param data The message. Needs to be released.
+   * @param raw True if the message has been received as a raw frame.
+   * @param source The channel that received the message.
+   */
+  public void messageReceived(PooledBuffer data, boolean raw, MessageChannel source) {
+    byte[] bytes;
+
+    try {
+      bytes = data.toArray();
+    } finally {
+      data.release();
+    }
+
+    if (raw) {
+      rawMessageReceived(bytes, source);
+    } else {
+      messageReceived(bytes, source);
+    }
+  }
+
   /**
    * Gets called when a message has been sent.
    *
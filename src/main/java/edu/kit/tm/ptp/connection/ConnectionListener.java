@@ -0,0 +1,16 @@
+package edu.kit.tm.ptp.connection;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.ReceiveListener;
+
+/**
+ * ReceiveListener which is informed about closed connections as well.
+ */
+public interface ConnectionListener extends ReceiveListener {
+  /**
+   * Gets called when the connection to an identifier has been closed.
+   *
+   * @param identifier The identifier of the peer.
+   */
+  void connectionClosed(Identifier identifier);
+}
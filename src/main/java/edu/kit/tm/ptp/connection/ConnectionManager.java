@@ -7,40 +7,74 @@ import edu.kit.tm.ptp.auth.PublicKeyAuthenticatorFactory;
 import edu.kit.tm.ptp.channels.ChannelListener;
 import edu.kit.tm.ptp.channels.ChannelManager;
 import edu.kit.tm.ptp.channels.MessageChannel;
+import edu.kit.tm.ptp.channels.PooledMessageListener;
+import edu.kit.tm.ptp.channels.RawMessageListener;
 import edu.kit.tm.ptp.crypt.CryptHelper;
-import edu.kit.tm.ptp.thread.Waker;
+import edu.kit.tm.ptp.thread.LoopTask;
+import edu.kit.tm.ptp.thread.RingBuffer;
+import edu.kit.tm.ptp.thread.Signal;
+import edu.kit.tm.ptp.thread.WaitStrategy;
+import edu.kit.tm.ptp.utility.BufferPool;
 import edu.kit.tm.ptp.utility.Constants;
+import edu.kit.tm.ptp.utility.KeyCounter;
+import edu.kit.tm.ptp.utility.LongObjectMap;
+import edu.kit.tm.ptp.utility.ObjectLongMap;
+import edu.kit.tm.ptp.utility.ObjectPool;
+import edu.kit.tm.ptp.utility.PooledBuffer;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Manages sending and receiving messages from several hidden services.
+ * Processes events in an own thread or, if the event loop is enabled, in the thread of the
+ * ChannelManager.
  *
  * @author Timon Hackenjos
  */
-public class ConnectionManager implements Runnable, ChannelListener, AuthenticationListener,
-    TorManager.SOCKSProxyListener {
+public class ConnectionManager implements Runnable, LoopTask, PooledMessageListener,
+    RawMessageListener, AuthenticationListener, TorManager.SOCKSProxyListener, Executor {
+  /** Maximum number of idle events of each pooled type. */
+  private static final int EVENT_POOL_SIZE = 256;
+  /** Interval in nanoseconds in which producers waiting for a full queue check for a stop. */
+  private static final long STOP_CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
   private final Thread thread;
   private final AtomicLong messageId = new AtomicLong(0);
-  private final int sendMessageRetryInterval;
-
-  protected final Semaphore semaphore = new Semaphore(0);
-  private final Waker waker;
+  private final boolean eventLoop;
+  private volatile boolean stopped = false;
+
+  /** Events of other threads. */
+  protected final RingBuffer<Event> events;
+  /** Events which couldn't be processed yet. Only accessed by the own thread. */
+  private final ArrayDeque<Event> pendingEvents = new ArrayDeque<>();
+  /** Events added by the own thread. */
+  private final ArrayDeque<Event> localEvents = new ArrayDeque<>();
+  /**
+   * Earliest time at which an unprocessed event can make progress without a new event or
+   * Long.MAX_VALUE. Only accessed by the own thread.
+   */
+  private long nextRetry = Long.MAX_VALUE;
+  /**
+   * False while the network is disabled. No connections are opened and unsent messages wait for
+   * the network. Only accessed by the own thread.
+   */
+  boolean networkEnabled = true;
 
   protected final int hsPort;
   protected final SendListener sendListener;
@@ -55,10 +89,33 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
   protected final Map<Identifier, MessageChannel> identifierMap = new HashMap<>();
   protected final Map<MessageChannel, Identifier> channelMap = new HashMap<>();
   protected final Map<MessageChannel, Context> channelContexts = new HashMap<>();
-  protected final Map<Identifier, Long> lastTry = new HashMap<>();
+  protected final ObjectLongMap<Identifier> lastTry = new ObjectLongMap<>();
+  /** Identifiers whose messages aren't read at the moment. Changed by any thread. */
+  protected final KeyCounter<Identifier> pausedReading = new KeyCounter<>();
   /** Messages which have already been dispatched to a channel. */
-  protected final Map<Long, MessageAttempt> dispatchedMessages = new HashMap<>();
-  protected final Queue<Event> eventQueue = new ConcurrentLinkedQueue<>();
+  protected final LongObjectMap<MessageAttempt> dispatchedMessages = new LongObjectMap<>();
+
+  protected final ObjectPool<EventSendMessage> sendMessageEvents =
+      new ObjectPool<EventSendMessage>(EVENT_POOL_SIZE) {
+        @Override
+        protected EventSendMessage create() {
+          return new EventSendMessage(ConnectionManager.this);
+        }
+      };
+  protected final ObjectPool<EventMessageSent> messageSentEvents =
+      new ObjectPool<EventMessageSent>(EVENT_POOL_SIZE) {
+        @Override
+        protected EventMessageSent create() {
+          return new EventMessageSent(ConnectionManager.this);
+        }
+      };
+  protected final ObjectPool<EventMessageReceived> messageReceivedEvents =
+      new ObjectPool<EventMessageReceived>(EVENT_POOL_SIZE) {
+        @Override
+        protected EventMessageReceived create() {
+          return new EventMessageReceived(ConnectionManager.this);
+        }
+      };
 
   protected String socksHost = null;
   protected int socksPort = -1;
@@ -116,15 +173,37 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
     this.sendListener = sendListener;
     this.authFactory = authFactory;
     this.channelManager = new ChannelManager(this, group);
-    this.waker = new Waker(semaphore, group);
     this.thread = new Thread(group, this);
 
+    int eventQueueCapacity;
+    WaitStrategy.Type waitStrategy;
+
     if (config == null) {
       this.connectRetryInterval = Configuration.DEFAULT_CONNECTRETRYINTERVAL;
-      this.sendMessageRetryInterval = Configuration.DEFAULT_MESSAGESENDRETRYINTERVAL;
+      this.eventLoop = false;
+      eventQueueCapacity = Configuration.DEFAULT_EVENTQUEUECAPACITY;
+      waitStrategy = Configuration.DEFAULT_EVENTWAITSTRATEGY;
     } else {
       this.connectRetryInterval = config.getConnectRetryInterval();
-      this.sendMessageRetryInterval = config.getMessageSendRetryInterval();
+      this.eventLoop = config.getUseEventLoop();
+      eventQueueCapacity = config.getEventQueueCapacity();
+      waitStrategy = config.getEventWaitStrategy();
+
+      if (config.getPooledReceiveBuffers()) {
+        channelManager.setBufferPool(new BufferPool());
+      }
+    }
+
+    if (eventLoop) {
+      // Wakes the selection loop of the ChannelManager when events are added
+      this.events = new RingBuffer<>(eventQueueCapacity, new Signal() {
+        @Override
+        public void signal() {
+          channelManager.wakeup();
+        }
+      });
+    } else {
+      this.events = new RingBuffer<>(eventQueueCapacity, WaitStrategy.create(waitStrategy));
     }
   }
   
@@ -134,12 +213,22 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
       throw new IllegalArgumentException();
     }
 
-    eventQueue.add(new EventUpdateSOCKS(this, socksHost, socksProxyPort));
-    semaphore.release();
+    addEvent(new EventUpdateSOCKS(this, socksHost, socksProxyPort));
+  }
+
+  /**
+   * Tells the manager if the network is available. While the network is disabled no connections
+   * are opened and unsent messages wait, including their timeouts, until it is enabled again.
+   *
+   * @param enabled False if the network has been disabled.
+   */
+  public void changeNetwork(boolean enabled) {
+    addEvent(new EventChangeNetwork(this, enabled));
   }
 
   /**
-   * Starts an own thread for the ConnectionManager.
+   * Starts an own thread for the ConnectionManager or registers it with the event loop of the
+   * ChannelManager.
    */
   public void start() throws IOException {
     try {
@@ -149,9 +238,14 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
     }
 
     logger.log(Level.INFO, "Starting ConnectionManager");
-    thread.start();
+
+    if (eventLoop) {
+      channelManager.addLoopTask(this);
+    } else {
+      thread.start();
+    }
+
     channelManager.start();
-    waker.start();
     logger.log(Level.INFO, "ConnectionManager started");
   }
 
@@ -161,8 +255,8 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
   public void stop() {
     logger.log(Level.INFO, "Stopping ConnectionManager");
 
+    stopped = true;
     thread.interrupt();
-    semaphore.release();
 
     logger.log(Level.INFO, "Waiting for Thread to stop");
 
@@ -180,11 +274,50 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
 
     channelManager.stop();
 
-    logger.log(Level.INFO, "Stopping waker");
+    logger.log(Level.INFO, "ConnectionManager stopped");
+  }
+
+  /**
+   * Runs the supplied task in the thread processing the events. Only supported if the event loop
+   * is enabled.
+   */
+  public void addLoopTask(LoopTask task) {
+    if (!eventLoop) {
+      throw new IllegalStateException("Event loop is disabled");
+    }
+
+    channelManager.addLoopTask(task);
+  }
 
-    waker.stop();
+  /**
+   * Runs the task in the thread processing the events. Allows other threads to hand work on
+   * connections back to that thread.
+   */
+  @Override
+  public void execute(Runnable task) {
+    if (task == null) {
+      throw new IllegalArgumentException();
+    }
 
-    logger.log(Level.INFO, "ConnectionManager stopped");
+    addEvent(new EventRunTask(this, task));
+  }
+
+  /**
+   * Wakes the event loop to run the loop tasks. Only supported if the event loop is enabled.
+   */
+  public void wakeup() {
+    if (!eventLoop) {
+      throw new IllegalStateException("Event loop is disabled");
+    }
+
+    channelManager.wakeup();
+  }
+
+  /**
+   * Returns true if the events are processed by the event loop of the ChannelManager.
+   */
+  public boolean usesEventLoop() {
+    return eventLoop;
   }
 
   /**
@@ -220,20 +353,118 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
 
   public long send(byte[] data, Identifier destination, long timeout, boolean informSendListener) {
     long id = messageId.getAndIncrement();
-    MessageAttempt attempt = new MessageAttempt(id, System.currentTimeMillis(), data, timeout,
-        destination, informSendListener);
 
-    eventQueue.add(new EventSendMessage(this, attempt));
+    return send(new MessageAttempt(id, System.currentTimeMillis(), data, timeout, destination,
+        informSendListener));
+  }
+
+  /**
+   * Sends a message consisting of several segments to the specified destination. The remaining
+   * bytes of the segments are sent as a single message. The content of the buffers must not
+   * change until the message has been sent.
+   *
+   * @param segments The buffers containing the bytes to send.
+   * @param destination The destination to send to.
+   * @param timeout How long to wait for a successful sending.
+   * @return Identifier for the message.
+   */
+  public long send(ByteBuffer[] segments, Identifier destination, long timeout) {
+    return send(segments, destination, timeout, false);
+  }
+
+  /**
+   * Sends a message consisting of several segments to the specified destination. Raw messages
+   * are passed to a {@link RawReceiveListener} on the remote end.
+   *
+   * @param segments The buffers containing the bytes to send.
+   * @param destination The destination to send to.
+   * @param timeout How long to wait for a successful sending.
+   * @param raw True if the message should be sent as a raw frame.
+   * @return Identifier for the message.
+   * @see #send(ByteBuffer[], Identifier, long)
+   */
+  public long send(ByteBuffer[] segments, Identifier destination, long timeout, boolean raw) {
+    long id = messageId.getAndIncrement();
+    MessageAttempt attempt = new MessageAttempt(id, System.currentTimeMillis(), segments, timeout,
+        destination, true);
+    attempt.setRaw(raw);
+
+    return send(attempt);
+  }
+
+  /**
+   * Sends a message to several destinations. The attempts share the segments instead of copying
+   * them. The content of the buffers must not change until the message has been sent to all
+   * destinations.
+   *
+   * @param segments The buffers containing the bytes to send.
+   * @param destinations The destinations to send to.
+   * @param timeout How long to wait for a successful sending.
+   * @param listener Informed about the result for every destination in addition to the send
+   *        listener. May be null.
+   * @param raw True if the message should be sent as a raw frame.
+   * @return Identifiers for the messages in the order of the destinations.
+   */
+  public long[] send(ByteBuffer[] segments, Collection<Identifier> destinations, long timeout,
+      SendListener listener, boolean raw) {
+    if (destinations.isEmpty()) {
+      return new long[0];
+    }
+
+    SharedPayload payload = new SharedPayload(segments, destinations.size(), listener);
+    long[] ids = new long[destinations.size()];
+    long timestamp = System.currentTimeMillis();
+    int index = 0;
+
+    for (Identifier destination : destinations) {
+      long id = messageId.getAndIncrement();
+      ids[index++] = id;
+      MessageAttempt attempt = new MessageAttempt(id, timestamp, payload, timeout, destination);
+      attempt.setRaw(raw);
+      send(attempt);
+    }
+
+    return ids;
+  }
 
-    logger.log(Level.INFO, "Assigned id " + id + " to message attempt for identifier " + destination
-        + " with size " + data.length + " bytes");
+  private long send(MessageAttempt attempt) {
+    // Log before adding the event, the attempt might have finished afterwards
+    if (logger.isLoggable(Level.INFO)) {
+      logger.log(Level.INFO, "Assigned id " + attempt.getId()
+          + " to message attempt for identifier " + attempt.getDestination() + " with size "
+          + attempt.getLength() + " bytes");
+    }
 
-    semaphore.release();
+    addEvent(sendMessageEvents.acquire().init(attempt));
 
-    return id;
+    return attempt.getId();
   }
 
 
+  /**
+   * Stops or resumes reading messages of the supplied identifier. Applies to the current and
+   * future connections to the identifier. Messages which have already been read are still
+   * delivered. Calls are counted, so independent callers can pause reading of the same identifier:
+   * reading resumes after every pause has been matched by a resume, in any order.
+   *
+   * @param identifier The identifier of the peer.
+   * @param paused True to stop reading, false to resume.
+   */
+  public void pauseReading(Identifier identifier, boolean paused) {
+    if (identifier == null) {
+      throw new IllegalArgumentException();
+    }
+
+    if (paused) {
+      pausedReading.increment(identifier);
+    } else {
+      pausedReading.decrement(identifier);
+    }
+
+    // The event applies the latest state, events of different threads may be processed in any order
+    addEvent(new EventPauseReading(this, identifier));
+  }
+
   /**
    * Closes an open connection to the supplied identifier.
    */
@@ -245,9 +476,7 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
       return;
     }
 
-    eventQueue.add(new EventConnectionClosed(this, channel));
-
-    semaphore.release();
+    addEvent(new EventConnectionClosed(this, channel));
   }
 
   /**
@@ -258,8 +487,7 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
       throw new IllegalArgumentException();
     }
 
-    eventQueue.add(new EventSetIdentity(this, privateKey, identifier));
-    semaphore.release();
+    addEvent(new EventSetIdentity(this, privateKey, identifier));
   }
 
   /**
@@ -270,36 +498,43 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
       throw new IllegalArgumentException("Identifier is invalid.");
     }
 
-    eventQueue.add(new EventSetIdentifier(this, localIdentifier));
-    semaphore.release();
+    addEvent(new EventSetIdentifier(this, localIdentifier));
   }
 
   @Override
   public void messageSent(long id, MessageChannel destination) {
-    logger.log(Level.INFO, "Message with id " + id + " sent successfully");
+    if (logger.isLoggable(Level.INFO)) {
+      logger.log(Level.INFO, "Message with id " + id + " sent successfully");
+    }
 
-    eventQueue.add(new EventMessageSent(this, id, destination));
-    semaphore.release();
+    addEvent(messageSentEvents.acquire().init(id, destination));
   }
 
   @Override
   public void messageReceived(byte[] data, MessageChannel source) {
     // data doesn't need to be copied because MessageChannels
     // use a new buffer for each message
-    eventQueue.add(new EventMessageReceived(this, data, source));
-    semaphore.release();
+    addEvent(messageReceivedEvents.acquire().init(data, source));
+  }
+
+  @Override
+  public void rawMessageReceived(byte[] data, MessageChannel source) {
+    addEvent(messageReceivedEvents.acquire().init(data, source).setRaw(true));
+  }
+
+  @Override
+  public void messageReceived(PooledBuffer data, boolean raw, MessageChannel source) {
+    addEvent(messageReceivedEvents.acquire().init(data, source).setRaw(raw));
   }
 
   @Override
   public void channelOpened(MessageChannel channel) {
-    eventQueue.add(new EventConnectionOpened(this, channel));
-    semaphore.release();
+    addEvent(new EventConnectionOpened(this, channel));
   }
 
   @Override
   public void channelClosed(MessageChannel channel) {
-    eventQueue.add(new EventConnectionClosed(this, channel));
-    semaphore.release();
+    addEvent(new EventConnectionClosed(this, channel));
   }
 
   @Override
@@ -333,39 +568,154 @@ public class ConnectionManager implements Runnable, ChannelListener, Authenticat
     return channel;
   }
 
+  /**
+   * Queues an event to be processed by the thread of the ConnectionManager.
+   * Waits if the queue is full. Doesn't drop the event if the thread is interrupted while waiting
+   * but restores the interrupt status afterwards.
+   */
+  protected void addEvent(Event event) {
+    if (isEventThread()) {
+      // Never wait for the own thread
+      localEvents.add(event);
+
+      if (eventLoop) {
+        // Another loop task might have added the event
+        events.signal();
+      }
+      return;
+    }
+
+    boolean interrupted = false;
+
+    try {
+      while (true) {
+        try {
+          if (events.offer(event, STOP_CHECK_INTERVAL)) {
+            return;
+          }
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+
+        if (stopped) {
+          logger.log(Level.WARNING, "Dropping event because ConnectionManager has been stopped");
+          return;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Processes all queued events once. Must only be called by the thread consuming the events.
+   *
+   * @return The number of events which couldn't be processed yet.
+   */
+  int processEvents() {
+    Event event;
+    int unprocessed = 0;
+
+    // Set again by the events which can't be processed yet
+    nextRetry = Long.MAX_VALUE;
+
+    // Keep the order in which the events have been added
+    while ((event = localEvents.poll()) != null) {
+      pendingEvents.add(event);
+    }
+
+    while ((event = events.poll()) != null) {
+      pendingEvents.add(event);
+    }
+
+    for (int count = pendingEvents.size(); count > 0; count--) {
+      event = pendingEvents.poll();
+
+      if (event.process()) {
+        event.recycle();
+      } else {
+        pendingEvents.add(event);
+        unprocessed++;
+      }
+    }
+
+    return unprocessed;
+  }
+
+  /**
+   * Informs the manager about the time at which an unprocessed event can make progress. Must only
+   * be called while processing events.
+   *
+   * @param time The time in milliseconds.
+   */
+  void retryAt(long time) {
+    if (time < nextRetry) {
+      nextRetry = time;
+    }
+  }
+
+  /**
+   * Returns the time in milliseconds until unprocessed events should be processed again or -1 if
+   * they wait for a new event. Events which didn't tell when they can make progress wait for a
+   * new event, like an opened connection or a sent message.
+   */
+  private long retryDelay() {
+    if (nextRetry == Long.MAX_VALUE || !networkEnabled) {
+      return -1;
+    }
+
+    return Math.max(0, nextRetry - System.currentTimeMillis());
+  }
+
+  private boolean isEventThread() {
+    return eventLoop ? channelManager.isLoopThread() : Thread.currentThread() == thread;
+  }
+
+  @Override
+  public long runTask() {
+    int unprocessed = processEvents();
+
+    if (!localEvents.isEmpty()) {
+      // Events added while processing
+      return 0;
+    }
+
+    if (unprocessed > 0) {
+      logger.log(Level.INFO, unprocessed + " unsent message(s) in queue");
+      // Retry when the events can make progress
+      return retryDelay();
+    }
+
+    return -1;
+  }
+
   @Override
   public void run() {
     logger.log(Level.INFO, "ConnectionManager thread is running");
 
-    Iterator<Event> it;
-    Event event;
-    long unprocessed;
+    int unprocessed;
 
     while (!thread.isInterrupted()) {
 
       try {
-        semaphore.acquire();
-        semaphore.drainPermits();
-
-        it = eventQueue.iterator();
-        unprocessed = 0;
+        unprocessed = processEvents();
 
-        while (it.hasNext()) {
-          event = it.next();
-
-          if (event.process()) {
-            it.remove();
-          } else {
-            unprocessed++;
-          }
+        if (!localEvents.isEmpty()) {
+          // Events added while processing
+          continue;
         }
 
         // Only EventSendMessage returns false
         // unprocessed = messages in queue
         if (unprocessed > 0) {
           logger.log(Level.INFO, unprocessed + " unsent message(s) in queue");
-          // Wake thread after some time
-          waker.wake(sendMessageRetryInterval);
+          // Retry when the events can make progress
+          long delay = retryDelay();
+          events.await(delay < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(delay));
+        } else {
+          events.await(-1);
         }
 
       } catch (InterruptedException ie) {
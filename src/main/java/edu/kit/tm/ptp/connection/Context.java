@@ -2,6 +2,7 @@ package edu.kit.tm.ptp.connection;
 
 import edu.kit.tm.ptp.Identifier;
 import edu.kit.tm.ptp.channels.MessageChannel;
+import edu.kit.tm.ptp.utility.PooledBuffer;
 
 /**
  * Manages the current state of a MessageChannel.
@@ -67,6 +68,14 @@ public class Context {
     state.messageReceived(data, source);
   }
 
+  public void rawMessageReceived(byte[] data, MessageChannel source) {
+    state.rawMessageReceived(data, source);
+  }
+
+  public void messageReceived(PooledBuffer data, boolean raw, MessageChannel source) {
+    state.messageReceived(data, raw, source);
+  }
+
   public void messageSent(long id, MessageChannel destination) {
     state.messageSent(id, destination);
   }
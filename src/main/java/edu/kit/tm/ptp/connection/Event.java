@@ -16,4 +16,11 @@ public abstract class Event {
    * @return Returns false if the event should be handled again later.
    */
   public abstract boolean process();
+
+  /**
+   * Gets called after the event has been processed successfully. Pooled events return themselves
+   * to their pool. The event must not be used afterwards.
+   */
+  public void recycle() {
+  }
 }
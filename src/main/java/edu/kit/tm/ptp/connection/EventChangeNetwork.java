@@ -0,0 +1,27 @@
+package edu.kit.tm.ptp.connection;
+
+/**
+ * Class for the event of enabling or disabling the network.
+ */
+
+public class EventChangeNetwork extends Event {
+  private boolean enabled;
+
+  public EventChangeNetwork(ConnectionManager manager, boolean enabled) {
+    super(manager);
+
+    this.enabled = enabled;
+  }
+
+  @Override
+  public boolean process() {
+    manager.networkEnabled = enabled;
+
+    if (enabled) {
+      // Retry the messages which waited for the network at once
+      manager.retryAt(0);
+    }
+
+    return true;
+  }
+}
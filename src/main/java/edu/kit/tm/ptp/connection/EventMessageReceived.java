@@ -1,6 +1,7 @@
 package edu.kit.tm.ptp.connection;
 
 import edu.kit.tm.ptp.channels.MessageChannel;
+import edu.kit.tm.ptp.utility.PooledBuffer;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -9,20 +10,55 @@ import java.util.logging.Level;
 
 /**
  * Class for the event that a message was received.
+ * Instances are pooled by the ConnectionManager.
  */
 
 public class EventMessageReceived extends Event {
   private byte[] data;
+  private PooledBuffer pooledData;
+  private boolean raw;
   private MessageChannel source;
 
-  @SuppressFBWarnings(value = "EI_EXPOSE_REP2",
-      justification = "MessageChannel uses a new buffer for each message"
-          + "and doesn't alter them after reception.")
+  public EventMessageReceived(ConnectionManager manager) {
+    super(manager);
+  }
+
   public EventMessageReceived(ConnectionManager manager, byte[] data, MessageChannel source) {
     super(manager);
+    init(data, source);
+  }
 
+  /**
+   * Sets the values of a pooled event.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2",
+      justification = "MessageChannel uses a new buffer for each message"
+          + "and doesn't alter them after reception.")
+  public EventMessageReceived init(byte[] data, MessageChannel source) {
     this.data = data;
+    this.pooledData = null;
+    this.raw = false;
     this.source = source;
+    return this;
+  }
+
+  /**
+   * Sets the values of a pooled event for a message in a pooled buffer.
+   */
+  public EventMessageReceived init(PooledBuffer data, MessageChannel source) {
+    this.data = null;
+    this.pooledData = data;
+    this.raw = false;
+    this.source = source;
+    return this;
+  }
+
+  /**
+   * Marks the message as received in a raw frame.
+   */
+  public EventMessageReceived setRaw(boolean raw) {
+    this.raw = raw;
+    return this;
   }
 
   @Override
@@ -32,10 +68,26 @@ public class EventMessageReceived extends Event {
     if (context == null) {
       manager.logger.log(Level.INFO, "Message received but channel is already closed."
           + "Dropping message.");
+
+      if (pooledData != null) {
+        pooledData.release();
+      }
+    } else if (pooledData != null) {
+      context.messageReceived(pooledData, raw, source);
+    } else if (raw) {
+      context.rawMessageReceived(data, source);
     } else {
       context.messageReceived(data, source);
     }
 
     return true;
   }
+
+  @Override
+  public void recycle() {
+    data = null;
+    pooledData = null;
+    source = null;
+    manager.messageReceivedEvents.release(this);
+  }
 }
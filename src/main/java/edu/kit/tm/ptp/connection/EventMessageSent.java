@@ -6,16 +6,29 @@ import java.util.logging.Level;
 
 /**
  * Class for the event that a message was sent successfully.
+ * Instances are pooled by the ConnectionManager.
  */
 
 public class EventMessageSent extends Event {
   private long id;
   private MessageChannel destination;
 
+  public EventMessageSent(ConnectionManager manager) {
+    super(manager);
+  }
+
   public EventMessageSent(ConnectionManager manager, long id, MessageChannel destination) {
     super(manager);
+    init(id, destination);
+  }
+
+  /**
+   * Sets the values of a pooled event.
+   */
+  public EventMessageSent init(long id, MessageChannel destination) {
     this.id = id;
     this.destination = destination;
+    return this;
   }
 
   @Override
@@ -30,4 +43,10 @@ public class EventMessageSent extends Event {
 
     return true;
   }
+
+  @Override
+  public void recycle() {
+    destination = null;
+    manager.messageSentEvents.release(this);
+  }
 }
@@ -0,0 +1,37 @@
+package edu.kit.tm.ptp.connection;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.channels.MessageChannel;
+
+import java.util.logging.Level;
+
+
+/**
+ * Class for the event of stopping or resuming to read messages of an identifier.
+ * Applies the state stored by {@link ConnectionManager#pauseReading(Identifier, boolean)}.
+ */
+
+public class EventPauseReading extends Event {
+  private Identifier identifier;
+
+  public EventPauseReading(ConnectionManager manager, Identifier identifier) {
+    super(manager);
+
+    this.identifier = identifier;
+  }
+
+  @Override
+  public boolean process() {
+    boolean paused = manager.pausedReading.contains(identifier);
+    MessageChannel channel = manager.identifierMap.get(identifier);
+
+    if (channel != null) {
+      manager.channelManager.registerRead(channel, !paused);
+    }
+
+    manager.logger.log(Level.INFO,
+        (paused ? "Paused" : "Resumed") + " reading messages of " + identifier);
+
+    return true;
+  }
+}
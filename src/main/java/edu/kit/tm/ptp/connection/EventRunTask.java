@@ -0,0 +1,22 @@
+package edu.kit.tm.ptp.connection;
+
+/**
+ * Class for the event of running a task in the thread processing the events.
+ */
+
+public class EventRunTask extends Event {
+  private Runnable task;
+
+  public EventRunTask(ConnectionManager manager, Runnable task) {
+    super(manager);
+
+    this.task = task;
+  }
+
+  @Override
+  public boolean process() {
+    task.run();
+
+    return true;
+  }
+}
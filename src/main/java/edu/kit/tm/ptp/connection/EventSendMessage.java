@@ -6,15 +6,28 @@ import edu.kit.tm.ptp.channels.MessageChannel;
 
 /**
  * Class for the event that a message should be sent.
+ * Instances are pooled by the ConnectionManager.
  */
 
 public class EventSendMessage extends Event {
   private  MessageAttempt attempt;
 
+  public EventSendMessage(ConnectionManager manager) {
+    super(manager);
+  }
+
   public EventSendMessage(ConnectionManager manager, MessageAttempt attempt) {
     super(manager);
 
+    init(attempt);
+  }
+
+  /**
+   * Sets the attempt of a pooled event.
+   */
+  public EventSendMessage init(MessageAttempt attempt) {
     this.attempt = attempt;
+    return this;
   }
 
   @Override
@@ -23,6 +36,7 @@ public class EventSendMessage extends Event {
 
     // Check if identifier is valid
     if (!identifier.isValid()) {
+      attempt.finished(SendListener.State.INVALID_DESTINATION);
       manager.sendListener.messageSent(attempt.getId(), identifier,
           SendListener.State.INVALID_DESTINATION);
       return true;
@@ -31,6 +45,8 @@ public class EventSendMessage extends Event {
     // Check timeout of message
     if (attempt.getTimeout() != -1
         && System.currentTimeMillis() - attempt.getSendTimestamp() >= attempt.getTimeout()) {
+      attempt.finished(SendListener.State.TIMEOUT);
+
       if (attempt.isInformSendListener()) {
         manager.sendListener.messageSent(attempt.getId(), attempt.getDestination(),
             SendListener.State.TIMEOUT);
@@ -46,6 +62,21 @@ public class EventSendMessage extends Event {
       context = new Context(manager);
     }
 
-    return context.sendMessage(attempt);
+    if (!context.sendMessage(attempt)) {
+      if (attempt.getTimeout() != -1) {
+        // Inform the send listener about the timeout in time
+        manager.retryAt(attempt.getSendTimestamp() + attempt.getTimeout());
+      }
+
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public void recycle() {
+    attempt = null;
+    manager.sendMessageEvents.release(this);
   }
 }
@@ -27,6 +27,8 @@ public class EventSetIdentifier extends Event {
 
     manager.localIdentifier = identifier;
     manager.logger.log(Level.INFO, "Set local identifier to " + identifier);
+    // Messages waiting for the identifier can be sent now
+    manager.retryAt(System.currentTimeMillis());
 
     return true;
   }
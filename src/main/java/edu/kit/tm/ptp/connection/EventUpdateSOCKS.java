@@ -19,6 +19,8 @@ public class EventUpdateSOCKS extends Event {
   public boolean process() {
     manager.socksPort = socksPort;
     manager.socksHost = socksHost;
+    // Messages waiting for the proxy can be sent now
+    manager.retryAt(System.currentTimeMillis());
 
     return true;
   }
@@ -1,9 +1,12 @@
 package edu.kit.tm.ptp.connection;
 
 import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.SendListener;
 import edu.kit.tm.ptp.channels.MessageChannel;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.nio.ByteBuffer;
+
 /**
  * An attempt to send a message.
  * 
@@ -15,9 +18,12 @@ public class MessageAttempt {
   private long id;
   private long sendTimestamp;
   private byte[] data;
+  private ByteBuffer[] segments;
+  private SharedPayload payload = null;
   private long timeout;
   private Identifier destination;
   private boolean informSendListener;
+  private boolean raw = false;
   private MessageChannel dispatchedChannel = null;
 
   /**
@@ -39,6 +45,36 @@ public class MessageAttempt {
     setInformSendListener(informSendListener);
   }
 
+  /**
+   * Constructs a new MessageAttempt for a message consisting of several segments.
+   *
+   * @param id The identifier to use when reporting the result of the sending.
+   * @param sendTimestamp The timestamp of the attempt.
+   * @param segments The buffers containing the data to send.
+   * @param timeout How long to wait before the attempt times out.
+   * @param destination The destination of the message.
+   */
+  public MessageAttempt(long id, long sendTimestamp, ByteBuffer[] segments, long timeout,
+      Identifier destination, boolean informSendListener) {
+    this(id, sendTimestamp, (byte[]) null, timeout, destination, informSendListener);
+    setSegments(segments);
+  }
+
+  /**
+   * Constructs a new MessageAttempt for a message which is shared with other attempts.
+   *
+   * @param id The identifier to use when reporting the result of the sending.
+   * @param sendTimestamp The timestamp of the attempt.
+   * @param payload The shared message. The attempt holds one reference.
+   * @param timeout How long to wait before the attempt times out.
+   * @param destination The destination of the message.
+   */
+  public MessageAttempt(long id, long sendTimestamp, SharedPayload payload, long timeout,
+      Identifier destination) {
+    this(id, sendTimestamp, (byte[]) null, timeout, destination, true);
+    this.payload = payload;
+  }
+
   public long getId() {
     return id;
   }
@@ -70,6 +106,51 @@ public class MessageAttempt {
     this.data = data;
   }
 
+  /**
+   * Returns the segments of the message or null if the message is a single byte array.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP",
+      justification = "MessageAttempt is just a simple container."
+          + " Avoid to copy data several times.")
+  public ByteBuffer[] getSegments() {
+    return payload != null ? payload.getSegments() : segments;
+  }
+
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2",
+      justification = "MessageAttempt is just a simple container."
+          + " Avoid to copy data several times.")
+  public void setSegments(ByteBuffer[] segments) {
+    this.segments = segments;
+  }
+
+  /**
+   * Returns the number of bytes to send.
+   */
+  public long getLength() {
+    if (segments == null && payload == null) {
+      return data.length;
+    }
+
+    long length = 0;
+
+    for (ByteBuffer segment : getSegments()) {
+      length += segment.remaining();
+    }
+
+    return length;
+  }
+
+  /**
+   * Gets called when the attempt has finished. Releases the shared payload.
+   *
+   * @param state The result of the attempt.
+   */
+  public void finished(SendListener.State state) {
+    if (payload != null) {
+      payload.release(id, destination, state);
+    }
+  }
+
   public long getTimeout() {
     return timeout;
   }
@@ -94,6 +175,17 @@ public class MessageAttempt {
     this.informSendListener = informSendListener;
   }
   
+  /**
+   * Returns true if the message is sent as a raw frame.
+   */
+  public boolean isRaw() {
+    return raw;
+  }
+
+  public void setRaw(boolean raw) {
+    this.raw = raw;
+  }
+
   public MessageChannel getDispatchedChannel() {
     return dispatchedChannel;
   }
@@ -0,0 +1,20 @@
+package edu.kit.tm.ptp.connection;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.ReceiveListener;
+import edu.kit.tm.ptp.utility.PooledBuffer;
+
+/**
+ * ReceiveListener which accepts messages in pooled buffers. Messages are only passed in pooled
+ * buffers if pooling has been enabled in the configuration.
+ */
+public interface PooledReceiveListener extends ReceiveListener {
+  /**
+   * Gets called when a message has been received into a pooled buffer.
+   *
+   * @param data The message. The listener owns the reference and needs to release it.
+   * @param raw True if the message has been sent as a raw frame.
+   * @param source The identifier of the source.
+   */
+  void messageReceived(PooledBuffer data, boolean raw, Identifier source);
+}
@@ -0,0 +1,20 @@
+package edu.kit.tm.ptp.connection;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.ReceiveListener;
+
+/**
+ * ReceiveListener which distinguishes raw frames from other messages. Other listeners receive
+ * raw frames like any other message.
+ *
+ * @see ConnectionManager#send(java.nio.ByteBuffer[], Identifier, long, boolean)
+ */
+public interface RawReceiveListener extends ReceiveListener {
+  /**
+   * Gets called when a raw frame has been received.
+   *
+   * @param data The message itself.
+   * @param source The identifier of the source.
+   */
+  void rawMessageReceived(byte[] data, Identifier source);
+}
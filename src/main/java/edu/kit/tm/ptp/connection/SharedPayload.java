@@ -0,0 +1,83 @@
+package edu.kit.tm.ptp.connection;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.SendListener;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encoded message which is sent to several destinations. The attempts to all destinations share
+ * the buffers. Every attempt holds a reference which is released when the attempt has finished.
+ * The buffers are dropped after the last reference has been released. Thread-safe.
+ */
+public class SharedPayload {
+  private final AtomicInteger references;
+  private final SendListener listener;
+  private volatile ByteBuffer[] segments;
+
+  /**
+   * Constructs a new SharedPayload.
+   *
+   * @param segments The buffers containing the message. Must not be modified afterwards.
+   * @param references The number of attempts sharing the payload.
+   * @param listener Informed about the result of every attempt. May be null.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2",
+      justification = "The buffers are shared on purpose to avoid copying them.")
+  public SharedPayload(ByteBuffer[] segments, int references, SendListener listener) {
+    if (segments == null || references <= 0) {
+      throw new IllegalArgumentException();
+    }
+
+    this.segments = segments;
+    this.references = new AtomicInteger(references);
+    this.listener = listener;
+  }
+
+  /**
+   * Returns the buffers containing the message. Callers must use duplicates to read them.
+   *
+   * @throws IllegalStateException If all references have been released.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP",
+      justification = "The buffers are shared on purpose to avoid copying them.")
+  public ByteBuffer[] getSegments() {
+    ByteBuffer[] current = segments;
+
+    if (current == null) {
+      throw new IllegalStateException("Payload has been released");
+    }
+
+    return current;
+  }
+
+  /**
+   * Returns the number of attempts which haven't finished yet.
+   */
+  public int getReferences() {
+    return references.get();
+  }
+
+  /**
+   * Releases the reference of a finished attempt.
+   *
+   * @param id The id of the attempt.
+   * @param destination The destination of the attempt.
+   * @param state The result of the attempt.
+   */
+  void release(long id, Identifier destination, SendListener.State state) {
+    if (listener != null) {
+      listener.messageSent(id, destination, state);
+    }
+
+    int remaining = references.decrementAndGet();
+
+    if (remaining == 0) {
+      segments = null;
+    } else if (remaining < 0) {
+      throw new IllegalStateException("Payload released too often");
+    }
+  }
+}
@@ -4,6 +4,7 @@ import edu.kit.tm.ptp.Identifier;
 import edu.kit.tm.ptp.ReceiveListener;
 import edu.kit.tm.ptp.SendListener;
 import edu.kit.tm.ptp.channels.MessageChannel;
+import edu.kit.tm.ptp.utility.PooledBuffer;
 
 import java.util.logging.Level;
 
@@ -27,14 +28,24 @@ public class StateAuthenticated extends StateConnected {
     Identifier identifier = attempt.getDestination();
     MessageChannel channel = manager.identifierMap.get(identifier);
     
-    manager.logger.log(Level.INFO,
-        "Sending message with id " + attempt.getId() + " to " + attempt.getDestination());
+    if (manager.logger.isLoggable(Level.INFO)) {
+      manager.logger.log(Level.INFO,
+          "Sending message with id " + attempt.getId() + " to " + attempt.getDestination());
+    }
 
     if (channel == null) {
       throw new IllegalStateException();
     }
 
-    if (channel.addMessage(attempt.getData(), attempt.getId())) {
+    boolean added;
+
+    if (attempt.getSegments() != null) {
+      added = channel.addMessage(attempt.getSegments(), attempt.getId(), attempt.isRaw());
+    } else {
+      added = channel.addMessage(attempt.getData(), attempt.getId());
+    }
+
+    if (added) {
       attempt.setDispatchedChannel(channel);
       manager.dispatchedMessages.put(attempt.getId(), attempt);
       return true;
@@ -45,6 +56,15 @@ public class StateAuthenticated extends StateConnected {
 
   @Override
   public void messageReceived(byte[] data, MessageChannel source) {
+    deliver(data, false, source);
+  }
+
+  @Override
+  public void rawMessageReceived(byte[] data, MessageChannel source) {
+    deliver(data, true, source);
+  }
+
+  private void deliver(byte[] data, boolean raw, MessageChannel source) {
     ConnectionManager manager = context.getConnectionManager();
 
     Identifier identifier = manager.channelMap.get(source);
@@ -55,29 +75,61 @@ public class StateAuthenticated extends StateConnected {
       return;
     }
 
-    manager.logger.log(Level.INFO,
-        "Received message from " + identifier + " with size " + data.length);
+    if (manager.logger.isLoggable(Level.INFO)) {
+      manager.logger.log(Level.INFO,
+          "Received message from " + identifier + " with size " + data.length);
+    }
 
     ReceiveListener receiveListener = manager.receiveListener;
-    if (receiveListener != null) {
-      receiveListener.messageReceived(data, identifier);
-    } else {
+    if (receiveListener == null) {
       manager.logger.log(Level.WARNING, "Dropped message because no listener is set.");
+    } else if (raw && receiveListener instanceof RawReceiveListener) {
+      ((RawReceiveListener) receiveListener).rawMessageReceived(data, identifier);
+    } else {
+      receiveListener.messageReceived(data, identifier);
     }
   }
 
+  @Override
+  public void messageReceived(PooledBuffer data, boolean raw, MessageChannel source) {
+    ConnectionManager manager = context.getConnectionManager();
+    ReceiveListener receiveListener = manager.receiveListener;
+
+    if (!(receiveListener instanceof PooledReceiveListener)) {
+      // Copy for listeners which expect an array
+      super.messageReceived(data, raw, source);
+      return;
+    }
+
+    Identifier identifier = manager.channelMap.get(source);
+
+    if (identifier == null) {
+      manager.logger.log(Level.WARNING,
+          "Received message with size " + data.length() + " from unknown channel");
+      data.release();
+      return;
+    }
+
+    if (manager.logger.isLoggable(Level.INFO)) {
+      manager.logger.log(Level.INFO,
+          "Received message from " + identifier + " with size " + data.length());
+    }
+
+    ((PooledReceiveListener) receiveListener).messageReceived(data, raw, identifier);
+  }
+
   @Override
   public void messageSent(long id, MessageChannel destination) {
     ConnectionManager manager = context.getConnectionManager();
 
-    MessageAttempt attempt = manager.dispatchedMessages.get(id);
+    MessageAttempt attempt = manager.dispatchedMessages.remove(id);
 
     if (attempt == null) {
       manager.logger.log(Level.WARNING, "Unknown message id of sent message " + id);
       throw new IllegalStateException();
     }
 
-    manager.dispatchedMessages.remove(id);
+    attempt.finished(SendListener.State.SUCCESS);
 
     if (manager.sendListener != null && attempt.isInformSendListener()) {
       manager.sendListener.messageSent(id, attempt.getDestination(), SendListener.State.SUCCESS);
@@ -54,6 +54,13 @@ public class StateConnected extends AbstractState {
 
       manager.identifierMap.put(identifier, channel);
       manager.channelMap.put(channel, identifier);
+
+      if (manager.pausedReading.contains(identifier)) {
+        manager.channelManager.registerRead(channel, false);
+      }
+
+      // Messages waiting for the authentication can be sent now
+      manager.retryAt(System.currentTimeMillis());
     }
   }
 
@@ -64,9 +64,15 @@ public class StateInit extends AbstractState {
       return false;
     }
 
+    if (!manager.networkEnabled) {
+      manager.logger.log(Level.INFO, "Delaying message attempt because the network is disabled");
+      return false;
+    }
+
     manager.logger.log(Level.INFO, "Connection to destination " + identifier + " is closed");
-    if (manager.lastTry.get(identifier) == null || System.currentTimeMillis()
-        - manager.lastTry.get(identifier) >= manager.connectRetryInterval) {
+    long lastTry = manager.lastTry.get(identifier, -1);
+
+    if (lastTry == -1 || System.currentTimeMillis() - lastTry >= manager.connectRetryInterval) {
       manager.logger.log(Level.INFO, "Opening new connection to destination " + identifier);
       manager.lastTry.put(identifier, System.currentTimeMillis());
       try {
@@ -80,7 +86,10 @@ public class StateInit extends AbstractState {
       } catch (IOException ioe) {
         manager.logger.log(Level.WARNING,
             "Error while trying to open a new connection to " + identifier, ioe);
+        manager.retryAt(manager.lastTry.get(identifier, -1) + manager.connectRetryInterval);
       }
+    } else {
+      manager.retryAt(lastTry + manager.connectRetryInterval);
     }
 
     return false;
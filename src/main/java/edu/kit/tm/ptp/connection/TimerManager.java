@@ -1,88 +1,111 @@
 package edu.kit.tm.ptp.connection;
 
 import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.thread.LoopTask;
+import edu.kit.tm.ptp.utility.LongObjectMap;
+import edu.kit.tm.ptp.utility.ObjectLongMap;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
 /**
  * A class which allows to set/remove timers and be informed when they expire.
+ * Updates the timers in an own thread, as tasks of a scheduler or as a task of an event loop.
+ *
+ * <p>
+ * The timers are kept in a hashed timing wheel. Every slot of the wheel covers a tick of at most
+ * {@link #MAX_TICK} milliseconds and holds a linked list of the timers whose deadline falls into
+ * one of its ticks. Setting and removing a timer takes constant time and an update only visits the
+ * slots of the elapsed ticks, independent of the total number of timers. Timers expire at most a
+ * tick after their deadline. The timers are stored in arrays which are reused, so setting a timer
+ * doesn't allocate.
+ * </p>
  *
  * @author Timon Hackenjos
  * @author Simeon Andreev
  *
  */
-public class TimerManager implements Runnable  {
+public class TimerManager implements Runnable, LoopTask {
+  /** Maximum duration of a tick of the wheel in milliseconds. */
+  public static final int MAX_TICK = 10;
+  /** Number of slots of the wheel. Must be a power of two. */
+  private static final int WHEEL_SIZE = 512;
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int NONE = -1;
+  /** Origin of the monotonic clock of the wheel, keeps the time in milliseconds positive. */
+  private static final long ORIGIN = System.nanoTime();
 
   /** The logger for this class. */
   private final Logger logger = Logger.getLogger(TimerManager.class.getName());
   private final ExpireListener listener;
-  private final HashMap<TimerKey, Integer> map = new HashMap<TimerKey, Integer>();
-  /** The interval in milliseconds at which the values are updated. */
+  /** Index of the timer of an identifier, indexed by timer class. */
+  private final LongObjectMap<ObjectLongMap<Identifier>> timers = new LongObjectMap<>();
+  /** The maximum interval in milliseconds between two updates if run as loop task without waker. */
   private final int step;
+  /** Duration of a tick of the wheel in milliseconds. */
+  private final int tick;
   private final Thread thread;
-  private LinkedList<TimerKey> closed;
-  
-  private static final class TimerKey {
-    public Identifier identifier;
-    public int timeoutClass;
-    
-    public TimerKey(Identifier identifier, int timeoutClass) {
-      this.identifier = identifier;
-      this.timeoutClass = timeoutClass;
-    }
-
+  /** Runs the updates instead of the own thread or null. */
+  private final ScheduledExecutorService scheduler;
+  /** Informs the listener about expired timers or null to inform it in the updating thread. */
+  private final Executor executor;
+  /** Serializes updates run by the scheduler. */
+  private final Object updateLock = new Object();
+  /** Set by stop(), the listener isn't informed afterwards. */
+  private volatile boolean stopped = false;
+  private final Runnable updateTask = new Runnable() {
     @Override
-    public int hashCode() {
-      final int prime = 31;
-      int result = 1;
-      result = prime * result + ((identifier == null) ? 0 : identifier.hashCode());
-      result = prime * result + timeoutClass;
-      return result;
+    public void run() {
+      update();
+      scheduleUpdate();
     }
+  };
+  private ScheduledFuture<?> scheduledUpdate = null;
+  /** Wakes the event loop running the updates as loop task or null. */
+  private Runnable waker = null;
+  private boolean started = false;
+  /** Expired timers of the current update. Reused to avoid allocations. */
+  private final List<Identifier> expiredIdentifiers = new ArrayList<>();
+  private final List<Integer> expiredClasses = new ArrayList<>();
 
-    @Override
-    public boolean equals(Object obj) {
-      if (this == obj) {
-        return true;
-      }
-      if (obj == null) {
-        return false;
-      }
-      if (getClass() != obj.getClass()) {
-        return false;
-      }
-      
-      TimerKey other = (TimerKey) obj;
-      if (identifier == null) {
-        if (other.identifier != null) {
-          return false;
-        }
-      } else if (!identifier.equals(other.identifier)) {
-        return false;
-      }
-      
-      if (timeoutClass != other.timeoutClass) {
-        return false;
-      }
-      
-      return true;
-    }
-  }
+  /** First timer of every slot of the wheel. */
+  private final int[] wheel = new int[WHEEL_SIZE];
+  /** Timers, stored as arrays indexed by the timer. Unused timers form a list of free ones. */
+  private Identifier[] identifiers = new Identifier[INITIAL_CAPACITY];
+  private int[] classes = new int[INITIAL_CAPACITY];
+  private long[] deadlines = new long[INITIAL_CAPACITY];
+  private int[] slots = new int[INITIAL_CAPACITY];
+  private int[] next = new int[INITIAL_CAPACITY];
+  private int[] prev = new int[INITIAL_CAPACITY];
+  private int free = NONE;
+  private int used = 0;
+  private int size = 0;
+  /** The last tick whose slot has been updated. */
+  private long currentTick;
+  /**
+   * The tick the thread, the scheduled update or the event loop waits for or
+   * {@link Long#MIN_VALUE} if it doesn't wait.
+   */
+  private long wakeTick = Long.MIN_VALUE;
 
   /**
    * Constructor method.
    *
    * @param listener The listener that should be notified of expired connection timers.
-   * @param step The interval in milliseconds at which the timer values are updated.
+   * @param step The maximum interval in milliseconds between two updates if run as loop task
+   *        without a waker.
    */
   public TimerManager(ExpireListener listener, int step) {
-    this(listener, step, null);
+    this(listener, step, null, null, null);
   }
 
 
@@ -90,12 +113,50 @@ public class TimerManager implements Runnable  {
    * Constructor method.
    *
    * @param listener The listener that should be notified of expired connection timers.
-   * @param step The interval in milliseconds at which the timer values are updated.
+   * @param step The maximum interval in milliseconds between two updates if run as loop task
+   *        without a waker.
    */
   public TimerManager(ExpireListener listener, int step, ThreadGroup group) {
+    this(listener, step, group, null, null);
+  }
+
+  /**
+   * Constructs a TimerManager which runs the updates on a scheduler instead of an own thread.
+   *
+   * @param listener The listener that should be notified of expired connection timers.
+   * @param step The maximum interval in milliseconds between two updates if run as loop task
+   *        without a waker.
+   * @param scheduler The scheduler to run the updates.
+   */
+  public TimerManager(ExpireListener listener, int step, ScheduledExecutorService scheduler) {
+    this(listener, step, null, scheduler, null);
+  }
+
+  /**
+   * Constructs a TimerManager which runs the updates on a scheduler and informs the listener
+   * through an executor. Keeps the listener off the threads of a shared scheduler.
+   *
+   * @param listener The listener that should be notified of expired connection timers.
+   * @param step The maximum interval in milliseconds between two updates if run as loop task
+   *        without a waker.
+   * @param scheduler The scheduler to run the updates.
+   * @param executor The executor which informs the listener about expired timers.
+   */
+  public TimerManager(ExpireListener listener, int step, ScheduledExecutorService scheduler,
+      Executor executor) {
+    this(listener, step, null, scheduler, executor);
+  }
+
+  private TimerManager(ExpireListener listener, int step, ThreadGroup group,
+      ScheduledExecutorService scheduler, Executor executor) {
     this.listener = listener;
+    this.executor = executor;
     this.step = step;
+    this.tick = Math.max(1, Math.min(step, MAX_TICK));
     this.thread = new Thread(group, this);
+    this.scheduler = scheduler;
+    this.currentTick = now() / tick;
+    Arrays.fill(wheel, NONE);
     logger.log(Level.INFO, "TimerManager object created.");
   }
 
@@ -104,58 +165,94 @@ public class TimerManager implements Runnable  {
     logger.log(Level.INFO, "TimerManager entering execution loop.");
 
     while (!thread.isInterrupted()) {
-      closed = new LinkedList<TimerKey>();
-      long start = System.currentTimeMillis();
-      long elapsed = 0;
-
-      // Sleep until the next update.
-      do {
-        try {
-          Thread.sleep(step - elapsed);
-        } catch (InterruptedException e) {
-          // Thread should stop
-          return;
-        }
-        elapsed = System.currentTimeMillis() - start;
-      } while (elapsed < step);
-
       try {
-        // Update the timer values
-        substract();
-        for (TimerKey key : closed) {
-          listener.expired(key.identifier, key.timeoutClass);
-          map.remove(key);
-        }
-      } catch (IOException e) {
-        logger.log(Level.WARNING, "Received IOException while closing a socket: " + e.getMessage());
+        awaitNextTick();
+      } catch (InterruptedException e) {
+        // Thread should stop
+        return;
       }
+
+      update();
     }
     logger.log(Level.INFO, "TimerManager exiting execution loop.");
   }
-  
+
+  @Override
+  public long runTask() {
+    update();
+
+    synchronized (this) {
+      long now = now();
+      long timeout = timeUntilNextTick(now);
+
+      if (waker == null) {
+        // Timers set by other threads are noticed after a step at the latest
+        return timeout < 0 ? Math.max(step, 1) : Math.min(timeout, Math.max(step, 1));
+      }
+
+      // Earlier timers wake the loop
+      wakeTick = timeout < 0 ? Long.MAX_VALUE : (now + timeout) / tick;
+      return timeout;
+    }
+  }
+
+  /**
+   * Sets the callback to wake the event loop which runs the manager as loop task. With a waker
+   * the loop is only woken if a timer expires, independent of the step.
+   *
+   * @param waker Wakes the event loop. Must not block.
+   */
+  public synchronized void setWaker(Runnable waker) {
+    this.waker = waker;
+  }
+
   /**
    * Start the TimerManager.
    */
   public void start() {
     logger.log(Level.INFO, "Starting TimerManager");
-    thread.start();
+
+    if (scheduler != null) {
+      synchronized (this) {
+        started = true;
+      }
+      scheduleUpdate();
+    } else {
+      thread.start();
+    }
+
     logger.log(Level.INFO, "TimerManager started");
   }
 
   /**
-   * Stops the TimerManager and clears timeouts.
-   * Does nothing if the manager has been stopped before.
+   * Stops the TimerManager and clears timeouts. Waits for a running update, the listener isn't
+   * informed after the method returned. Does nothing if the manager has been stopped before.
    */
   public void stop() {
     logger.log(Level.INFO, "Stopping TimerManager.");
+    stopped = true;
     thread.interrupt();
 
+    synchronized (this) {
+      started = false;
+      wakeTick = Long.MIN_VALUE;
+
+      if (scheduledUpdate != null) {
+        scheduledUpdate.cancel(false);
+        scheduledUpdate = null;
+      }
+    }
+
     try {
       thread.join();
     } catch (InterruptedException e) {
       logger.log(Level.INFO, "TimerManager was interrupted while waiting for the thread");
     }
-    
+
+    synchronized (updateLock) {
+      // Waits for an update run by the scheduler which started before it was cancelled
+    }
+
     clear();
 
     logger.log(Level.INFO, "Stopped TimerManager.");
@@ -167,8 +264,23 @@ public class TimerManager implements Runnable  {
    * @param identifier The identifier that should be removed.
    */
   public synchronized void remove(Identifier identifier, int timerClass) {
-    logger.log(Level.INFO, "Removing identifier from map: " + identifier);
-    map.remove(new TimerKey(identifier, timerClass));
+    ObjectLongMap<Identifier> map = timers.get(timerClass);
+
+    if (map == null) {
+      return;
+    }
+
+    int timer = (int) map.get(identifier, NONE);
+
+    if (timer != NONE) {
+      map.remove(identifier);
+      unlink(timer);
+      release(timer);
+
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE, "Removed identifier from map: " + identifier);
+      }
+    }
   }
 
   /**
@@ -179,14 +291,11 @@ public class TimerManager implements Runnable  {
    * @param timerClass Identifies different timers of the same identifier.
    */
   public synchronized void setTimerIfNoneExists(Identifier identifier, int timer, int timerClass) {
-    TimerKey key = new TimerKey(identifier, timerClass);
-    if (!map.containsKey(key)) {
-      logger.log(Level.INFO, "Setting timeout (" + timer + "ms) for identifier: " + identifier
-          + " class: " + timerClass);
-      map.put(key, timer);
+    if (!getTimers(timerClass).containsKey(identifier)) {
+      setTimer(identifier, timer, timerClass);
     }
   }
-  
+
   /**
    * Schedules a new timer. Overwrites existing ones with the same timerClass and identifier.
    *
@@ -195,42 +304,327 @@ public class TimerManager implements Runnable  {
    * @param timerClass Identifies different timers of the same identifier.
    */
   public synchronized void setTimer(Identifier identifier, int timer, int timerClass) {
-    TimerKey key = new TimerKey(identifier, timerClass);
-    logger.log(Level.INFO, "Setting timeout (" + timer + "ms) for identifier: " + identifier
+    if (logger.isLoggable(Level.FINE)) {
+      logger.log(Level.FINE, "Setting timeout (" + timer + "ms) for identifier: " + identifier
           + " class: " + timerClass);
-    map.put(key, timer);
+    }
+
+    ObjectLongMap<Identifier> map = getTimers(timerClass);
+    int index = (int) map.get(identifier, NONE);
+
+    if (index == NONE) {
+      index = allocate();
+      identifiers[index] = identifier;
+      classes[index] = timerClass;
+      map.put(identifier, index);
+    } else {
+      unlink(index);
+    }
+
+    deadlines[index] = now() + timer;
+    long timerTick = link(index);
+
+    if (timerTick < wakeTick) {
+      // The thread, the scheduled update or the event loop waits for a later tick
+      if (scheduler != null) {
+        scheduleUpdate();
+      } else if (waker != null) {
+        // Woken once until the loop runs the task again
+        wakeTick = Long.MIN_VALUE;
+        waker.run();
+      } else {
+        notifyAll();
+      }
+    }
   }
 
+  /**
+   * Returns the number of set timers.
+   */
+  public synchronized int size() {
+    return size;
+  }
 
   /**
-   * Substracts the amount of milliseconds from the timers.
+   * Updates the slots of the elapsed ticks and informs the listener about expired timers.
+   */
+  private void update() {
+    // A rescheduled update may start before the previous one has finished
+    synchronized (updateLock) {
+      if (stopped) {
+        return;
+      }
+
+      try {
+        expire(now());
+        for (int i = 0; i < expiredIdentifiers.size(); i++) {
+          if (executor != null) {
+            executor.execute(new Expiry(expiredIdentifiers.get(i), expiredClasses.get(i)));
+          } else {
+            listener.expired(expiredIdentifiers.get(i), expiredClasses.get(i));
+          }
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING,
+            "Received IOException while closing a socket: " + e.getMessage());
+      } finally {
+        expiredIdentifiers.clear();
+        expiredClasses.clear();
+      }
+    }
+  }
+
+  /**
+   * Informs the listener about an expired timer in the thread of the executor.
+   */
+  private class Expiry implements Runnable {
+    private final Identifier identifier;
+    private final int timerClass;
+
+    private Expiry(Identifier identifier, int timerClass) {
+      this.identifier = identifier;
+      this.timerClass = timerClass;
+    }
+
+    @Override
+    public void run() {
+      if (stopped) {
+        return;
+      }
+
+      try {
+        listener.expired(identifier, timerClass);
+      } catch (IOException e) {
+        logger.log(Level.WARNING,
+            "Received IOException while closing a socket: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Schedules the update for the next tick with timers. Replaces a previously scheduled update.
+   */
+  private synchronized void scheduleUpdate() {
+    if (!started) {
+      return;
+    }
+
+    if (scheduledUpdate != null) {
+      scheduledUpdate.cancel(false);
+      scheduledUpdate = null;
+    }
+
+    long now = now();
+    long timeout = timeUntilNextTick(now);
+
+    if (timeout < 0) {
+      // Scheduled when a timer is set
+      wakeTick = Long.MAX_VALUE;
+      return;
+    }
+
+    wakeTick = (now + timeout) / tick;
+    scheduledUpdate = scheduler.schedule(updateTask, timeout, TimeUnit.MILLISECONDS);
+  }
+
+  private ObjectLongMap<Identifier> getTimers(int timerClass) {
+    ObjectLongMap<Identifier> map = timers.get(timerClass);
+
+    if (map == null) {
+      map = new ObjectLongMap<>();
+      timers.put(timerClass, map);
+    }
+
+    return map;
+  }
+
+  /**
+   * Removes the expired timers of the elapsed ticks and remembers them.
    *
+   * @param now The current time in milliseconds as returned by {@link #now()}.
    */
-  private synchronized void substract() throws IOException {
+  private synchronized void expire(long now) {
+    long nowTick = now / tick;
+
+    if (size == 0) {
+      currentTick = Math.max(currentTick, nowTick);
+      return;
+    }
+
+    // Every slot needs to be visited once at most, later rounds are checked by the deadline
+    long lastTick = Math.min(nowTick, currentTick + WHEEL_SIZE);
+
+    for (long t = currentTick + 1; t <= lastTick; t++) {
+      int timer = wheel[slot(t)];
+
+      while (timer != NONE) {
+        int following = next[timer];
+
+        if (deadlines[timer] <= now) {
+          expiredIdentifiers.add(identifiers[timer]);
+          expiredClasses.add(classes[timer]);
+          timers.get(classes[timer]).remove(identifiers[timer]);
+          unlink(timer);
+          release(timer);
+        }
+
+        timer = following;
+      }
+    }
+
+    currentTick = Math.max(currentTick, nowTick);
+  }
+
+  /**
+   * Waits until the next tick with timers has elapsed or a timer has been set.
+   */
+  private synchronized void awaitNextTick() throws InterruptedException {
+    try {
+      while (true) {
+        long now = now();
+        long timeout = timeUntilNextTick(now);
+
+        if (timeout == 0) {
+          return;
+        }
+
+        if (timeout < 0) {
+          wakeTick = Long.MAX_VALUE;
+          wait();
+        } else {
+          wakeTick = (now + timeout) / tick;
+          wait(timeout);
+        }
+      }
+    } finally {
+      wakeTick = Long.MIN_VALUE;
+    }
+  }
+
+  /**
+   * Returns the time in milliseconds until the next tick whose slot contains timers, 0 if it has
+   * elapsed already or -1 if there are no timers.
+   */
+  private synchronized long timeUntilNextTick(long now) {
+    if (size == 0) {
+      return -1;
+    }
+
+    for (long t = currentTick + 1; t <= currentTick + WHEEL_SIZE; t++) {
+      if (wheel[slot(t)] != NONE) {
+        return Math.max(0, t * tick - now);
+      }
+    }
+
+    throw new IllegalStateException("Timers are set but the wheel is empty");
+  }
+
+  /**
+   * Inserts the timer into the slot of its deadline.
+   *
+   * @return The tick of the slot.
+   */
+  private long link(int timer) {
+    // Round up to not expire before the deadline, ticks in the past are updated next
+    long timerTick = Math.max((deadlines[timer] + tick - 1) / tick, currentTick + 1);
+    int slot = slot(timerTick);
+
+    slots[timer] = slot;
+    prev[timer] = NONE;
+    next[timer] = wheel[slot];
+
+    if (wheel[slot] != NONE) {
+      prev[wheel[slot]] = timer;
+    }
+
+    wheel[slot] = timer;
+    return timerTick;
+  }
+
+  private void unlink(int timer) {
+    if (prev[timer] != NONE) {
+      next[prev[timer]] = next[timer];
+    } else {
+      wheel[slots[timer]] = next[timer];
+    }
+
+    if (next[timer] != NONE) {
+      prev[next[timer]] = prev[timer];
+    }
+  }
+
+  private int slot(long timerTick) {
+    return (int) (timerTick & (WHEEL_SIZE - 1));
+  }
+
+  /**
+   * Returns an unused timer.
+   */
+  private int allocate() {
     int timer;
 
-    // Iterate over the entries and substract the step
-    for (Entry<TimerKey, Integer> entry : map.entrySet()) {      
-      timer = entry.getValue() - step;
-      entry.setValue(timer);
-      
-      // Check if the timer expired after the substraction.
-      if (timer >= 0) {
-        continue;
+    if (free != NONE) {
+      timer = free;
+      free = next[timer];
+    } else {
+      if (used == identifiers.length) {
+        grow();
       }
-      closed.add(entry.getKey());
+
+      timer = used++;
     }
+
+    size++;
+    return timer;
+  }
+
+  private void release(int timer) {
+    identifiers[timer] = null;
+    next[timer] = free;
+    prev[timer] = NONE;
+    free = timer;
+    size--;
+  }
+
+  private void grow() {
+    int capacity = identifiers.length * 2;
+    identifiers = Arrays.copyOf(identifiers, capacity);
+    classes = Arrays.copyOf(classes, capacity);
+    deadlines = Arrays.copyOf(deadlines, capacity);
+    slots = Arrays.copyOf(slots, capacity);
+    next = Arrays.copyOf(next, capacity);
+    prev = Arrays.copyOf(prev, capacity);
   }
 
   /**
-   * Clears all timeouts.
+   * Removes all timers without informing the listener.
    */
-  private synchronized void clear() {
-    map.clear();
+  public synchronized void clear() {
+    timers.clear();
+    Arrays.fill(wheel, NONE);
+    Arrays.fill(identifiers, null);
+    free = NONE;
+    used = 0;
+    size = 0;
+
+    if (scheduledUpdate != null) {
+      // Nothing left to update
+      scheduledUpdate.cancel(false);
+      scheduledUpdate = null;
+      wakeTick = Long.MAX_VALUE;
+    }
   }
-  
-  public boolean isRunning() {
-    return thread.isAlive();
+
+  /**
+   * Returns the time in milliseconds used for the deadlines of the wheel. Unlike the wall-clock
+   * time it doesn't jump if the system clock is adjusted.
+   */
+  private static long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ORIGIN);
+  }
+
+  public synchronized boolean isRunning() {
+    return thread.isAlive() || started;
   }
 
 }
@@ -28,20 +28,29 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 
 /**
- * Helper class for cryptographic operations.
+ * Helper class for cryptographic operations. Thread-safe. Signing is serialized, the other
+ * operations use an own instance of the algorithms in each thread, so keys of several peers can
+ * be verified in parallel.
  * 
  * @author Timon Hackenjos
  */
 
 public class CryptHelper {
+  private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+  private static final String DIGEST_ALGORITHM = "SHA1";
+  private static final String KEY_ALGORITHM = "RSA";
+
   protected KeyPair keyPair = null;
+  /** Encoded public key of the current keypair, readable without waiting for signing. */
+  private volatile byte[] publicKeyBytes = null;
   private Signature sign = null;
-  private Signature verify = null;
-  private MessageDigest sha1 = null;
-  private KeyFactory rsaFactory = null;
-  private Base32 base32 = new Base32();
+  private volatile ThreadLocal<Signature> verify = null;
+  private volatile ThreadLocal<MessageDigest> sha1 = null;
+  private volatile ThreadLocal<KeyFactory> rsaFactory = null;
+  private final Base32 base32 = new Base32();
 
   public CryptHelper() {
     Security.addProvider(new BouncyCastleProvider());
@@ -53,11 +62,49 @@ public class CryptHelper {
    * @throws NoSuchAlgorithmException If a used algorithm isn't available.
    * @throws NoSuchProviderException If the used provider isn't available.
    */
-  public void init() throws NoSuchAlgorithmException, NoSuchProviderException {
-    sign = Signature.getInstance("SHA256withRSA");
-    verify = Signature.getInstance("SHA256withRSA");
-    sha1 = MessageDigest.getInstance("SHA1");
-    rsaFactory = KeyFactory.getInstance("RSA");
+  public synchronized void init() throws NoSuchAlgorithmException, NoSuchProviderException {
+    // Fails early if an algorithm isn't available
+    final Signature initialVerify = Signature.getInstance(SIGNATURE_ALGORITHM);
+    final MessageDigest initialSha1 = MessageDigest.getInstance(DIGEST_ALGORITHM);
+    final KeyFactory initialRsaFactory = KeyFactory.getInstance(KEY_ALGORITHM);
+
+    sign = Signature.getInstance(SIGNATURE_ALGORITHM);
+
+    verify = new ThreadLocal<Signature>() {
+      @Override
+      protected Signature initialValue() {
+        try {
+          return Signature.getInstance(SIGNATURE_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+    verify.set(initialVerify);
+
+    sha1 = new ThreadLocal<MessageDigest>() {
+      @Override
+      protected MessageDigest initialValue() {
+        try {
+          return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+    sha1.set(initialSha1);
+
+    rsaFactory = new ThreadLocal<KeyFactory>() {
+      @Override
+      protected KeyFactory initialValue() {
+        try {
+          return KeyFactory.getInstance(KEY_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+    rsaFactory.set(initialRsaFactory);
   }
 
   /**
@@ -65,22 +112,31 @@ public class CryptHelper {
    * 
    * @throws InvalidKeyException If the KeyPair can't be used.
    */
-  public void setKeyPair(KeyPair keyPair) throws InvalidKeyException {
+  public synchronized void setKeyPair(KeyPair keyPair) throws InvalidKeyException {
     if (sign == null) {
       throw new IllegalStateException("Call init first");
     }
 
     this.keyPair = keyPair;
     sign.initSign(keyPair.getPrivate());
+    publicKeyBytes = keyPair.getPublic().getEncoded();
   }
 
   /**
    * Returns the encoded public key of the currently used keypair.
    */
-  public byte[] getPublicKeyBytes() {
+  public synchronized byte[] getPublicKeyBytes() {
     return keyPair.getPublic().getEncoded();
   }
 
+  /**
+   * Checks if the supplied encoded public key is the one of the current keypair. Doesn't wait for
+   * a running signature.
+   */
+  public boolean isPublicKey(byte[] pubKeyBytes) {
+    return Arrays.equals(publicKeyBytes, pubKeyBytes);
+  }
+
   /**
    * Signs the supplied data with the private key of the current keypair.
    * 
@@ -88,7 +144,7 @@ public class CryptHelper {
    * @return The signature.
    * @throws SignatureException If an error occurs while signing.
    */
-  public byte[] sign(ByteBuffer data) throws SignatureException {
+  public synchronized byte[] sign(ByteBuffer data) throws SignatureException {
     if (keyPair == null) {
       throw new IllegalStateException("PrivateKey hasn't been set.");
     }
@@ -119,10 +175,11 @@ public class CryptHelper {
       throw new IllegalStateException("Call init first");
     }
 
-    verify.initVerify(pubKey);
-    verify.update(data);
+    Signature verifier = verify.get();
+    verifier.initVerify(pubKey);
+    verifier.update(data);
 
-    return verify.verify(signature);
+    return verifier.verify(signature);
   }
 
   /**
@@ -162,7 +219,7 @@ public class CryptHelper {
     }
 
     X509EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(pubKeyBytes);
-    return rsaFactory.generatePublic(pubKeySpec);
+    return rsaFactory.get().generatePublic(pubKeySpec);
   }
 
   /**
@@ -185,7 +242,7 @@ public class CryptHelper {
     byte[] bytes = spkInfo.parsePublicKey().getEncoded("DER");
 
     // H(PK)
-    byte[] hash = sha1.digest(bytes);
+    byte[] hash = sha1.get().digest(bytes);
 
     // first 80 bits of H(PK)
     byte[] firstBytes = new byte[10];
@@ -130,6 +130,8 @@ public class PTPFloodingExample {
 
           // forward to all friends
           synchronized (friends) {
+            List<Identifier> destinations = new ArrayList<Identifier>();
+
             for (Identifier friend : friends) {
 
               if (friend.equals(source)) {
@@ -137,9 +139,12 @@ public class PTPFloodingExample {
               }
 
               System.out.println("Forwarding to " + friend);
-              ptp.sendMessage(message, friend);
+              destinations.add(friend);
             }
 
+            // Serialize the message once for all friends
+            ptp.sendToAll(message, destinations);
+
             // add new friends
             if (!friends.contains(source)) {
               System.out.println("Added new friend: " + source);
@@ -0,0 +1,19 @@
+package edu.kit.tm.ptp.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Codec which sends the bytes of a byte array without encoding them.
+ */
+public class ByteArrayCodec implements MessageCodec<byte[]> {
+  @Override
+  public ByteBuffer encode(byte[] message) {
+    return ByteBuffer.wrap(message);
+  }
+
+  @Override
+  public byte[] decode(byte[] data, int offset, int length) {
+    return Arrays.copyOfRange(data, offset, offset + length);
+  }
+}
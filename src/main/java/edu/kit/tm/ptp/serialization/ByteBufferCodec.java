@@ -0,0 +1,20 @@
+package edu.kit.tm.ptp.serialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codec which sends the remaining bytes of a ByteBuffer without encoding or copying them.
+ * Decoded buffers wrap the received data.
+ */
+public class ByteBufferCodec implements MessageCodec<ByteBuffer> {
+  @Override
+  public ByteBuffer encode(ByteBuffer message) {
+    // Don't change the position of the supplied buffer
+    return message.slice();
+  }
+
+  @Override
+  public ByteBuffer decode(byte[] data, int offset, int length) {
+    return ByteBuffer.wrap(data, offset, length).slice();
+  }
+}
@@ -0,0 +1,306 @@
+package edu.kit.tm.ptp.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses the codec of a message by its type. An encoded message starts with a one byte tag
+ * which identifies the codec followed by the output of the codec.
+ * Objects without an own codec are encoded using Kryo. byte[] and ByteBuffer messages are sent
+ * without encoding them. The output of Kryo starts with the class id of the object, so the type of
+ * every message can be determined by {@link #peekType(byte[])} without decoding it.
+ * A message may be prefixed by the {@link #TTL_TAG} and the number of milliseconds the message
+ * stays valid after it has been received.
+ * Pings and pongs of the keep-alive protocol use the tags {@link #PING_TAG} and
+ * {@link #PONG_TAG} followed by an eight byte stamp. They aren't decoded by a codec.
+ *
+ * <p>
+ * The tags break the wire format of released versions (v0.4.1 and earlier), which expect the
+ * output of Kryo without a tag. They read the tag of Kryo as a null object and misread the other
+ * tags, and the version isn't negotiated. Peers have to run versions with the same format.
+ * </p>
+ *
+ * <p>
+ * Tags of additional codecs are assigned in the order of registration. The order must be the
+ * same on all peers, like the registration of classes with the {@link Serializer}.
+ * Thread-safe.
+ * </p>
+ */
+public class CodecRegistry {
+  public static final int KRYO_TAG = 0;
+  public static final int BYTE_ARRAY_TAG = 1;
+  public static final int BYTE_BUFFER_TAG = 2;
+  /** Precedes the TTL of a message, followed by the tag of the codec. */
+  public static final int TTL_TAG = 3;
+  /** Length of the TTL tag and the TTL. */
+  private static final int TTL_HEADER_LENGTH = 5;
+  /** Keep-alive which the peer answers at once by a pong with the same stamp. */
+  public static final int PING_TAG = 4;
+  /** Answer to a ping. */
+  public static final int PONG_TAG = 5;
+  /** Length of the tag and the stamp of a ping or pong. */
+  private static final int PROBE_LENGTH = 9;
+  /** Tags below are reserved for codecs of PTP. */
+  private static final int FIRST_CUSTOM_TAG = 16;
+  private static final int MAX_TAGS = 256;
+
+  private final Serializer serializer;
+  private final MessageCodec<?>[] codecs = new MessageCodec<?>[MAX_TAGS];
+  /** Read-only direct buffers containing the tags. Avoid a copy when writing to a socket. */
+  private final ByteBuffer[] tagBuffers = new ByteBuffer[MAX_TAGS];
+  /** Type of the codec with a tag. */
+  private final Class<?>[] types = new Class<?>[MAX_TAGS];
+  /** Tag to use for a class. Contains subclasses of registered types as well. */
+  private final Map<Class<?>, Integer> tags = new ConcurrentHashMap<>();
+  private int nextTag = FIRST_CUSTOM_TAG;
+
+  /**
+   * Constructs a new CodecRegistry.
+   *
+   * @param serializer The Serializer to encode objects without an own codec.
+   */
+  public CodecRegistry(Serializer serializer) {
+    this.serializer = serializer;
+    setCodec(KRYO_TAG, null, new KryoCodec(serializer));
+    setCodec(BYTE_ARRAY_TAG, byte[].class, new ByteArrayCodec());
+    setCodec(BYTE_BUFFER_TAG, ByteBuffer.class, new ByteBufferCodec());
+  }
+
+  /**
+   * Uses the supplied codec for messages of the type and its subclasses.
+   *
+   * @throws IllegalArgumentException If the type has an own codec already.
+   * @throws IllegalStateException If no more codecs can be registered.
+   */
+  public synchronized <T> void registerCodec(Class<T> type, MessageCodec<T> codec) {
+    if (type == null || codec == null) {
+      throw new IllegalArgumentException();
+    }
+
+    if (hasCodec(type)) {
+      throw new IllegalArgumentException("Class " + type.getName() + " has a codec already");
+    }
+
+    if (nextTag >= MAX_TAGS) {
+      throw new IllegalStateException("Maximum number of codecs reached");
+    }
+
+    setCodec(nextTag++, type, codec);
+    // Cached lookups might be outdated
+    tags.clear();
+  }
+
+  /**
+   * Returns true if the type has an own codec.
+   */
+  public synchronized boolean hasCodec(Class<?> type) {
+    for (int tag = 0; tag < nextTag; tag++) {
+      if (type.equals(types[tag])) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Encodes the message.
+   *
+   * @return The tag and the encoded message. The buffers must not be modified.
+   */
+  public ByteBuffer[] encode(Object message) {
+    if (message == null) {
+      throw new IllegalArgumentException("Message is null");
+    }
+
+    int tag = getTag(message.getClass());
+
+    @SuppressWarnings("unchecked")
+    MessageCodec<Object> codec = (MessageCodec<Object>) codecs[tag];
+
+    return new ByteBuffer[] {tagBuffers[tag].duplicate(), codec.encode(message)};
+  }
+
+  /**
+   * Encodes the remaining bytes of the buffer as byte[] message without copying them.
+   * Position and limit of the buffer aren't changed.
+   *
+   * @return The tag and the bytes. The buffers must not be modified.
+   */
+  public ByteBuffer[] encodeBytes(ByteBuffer data) {
+    if (data == null) {
+      throw new IllegalArgumentException("Message is null");
+    }
+
+    return new ByteBuffer[] {tagBuffers[BYTE_ARRAY_TAG].duplicate(), data.slice()};
+  }
+
+  /**
+   * Encodes the message and prefixes it with a TTL.
+   *
+   * @param ttl The number of milliseconds the message stays valid after it has been received.
+   * @return The TTL, the tag and the encoded message. The buffers must not be modified.
+   */
+  public ByteBuffer[] encode(Object message, long ttl) {
+    if (ttl < 0 || ttl > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid TTL " + ttl);
+    }
+
+    ByteBuffer[] encoded = encode(message);
+    ByteBuffer header = ByteBuffer.allocate(TTL_HEADER_LENGTH);
+    header.put((byte) TTL_TAG).putInt((int) ttl).flip();
+
+    return new ByteBuffer[] {header, encoded[0], encoded[1]};
+  }
+
+  /**
+   * Returns the TTL of an encoded message.
+   *
+   * @return The TTL in milliseconds or -1 if the message doesn't have one.
+   * @throws IOException If the message is invalid.
+   */
+  public static long peekTtl(byte[] data) throws IOException {
+    if (payloadOffset(data) == 0) {
+      return -1;
+    }
+
+    return ByteBuffer.wrap(data, 1, TTL_HEADER_LENGTH - 1).getInt() & 0xffffffffL;
+  }
+
+  /**
+   * Encodes a ping or a pong.
+   *
+   * @param tag {@link #PING_TAG} or {@link #PONG_TAG}.
+   * @param stamp The stamp of the ping.
+   */
+  public static byte[] encodeProbe(int tag, long stamp) {
+    if (tag != PING_TAG && tag != PONG_TAG) {
+      throw new IllegalArgumentException("Invalid probe tag " + tag);
+    }
+
+    return ByteBuffer.allocate(PROBE_LENGTH).put((byte) tag).putLong(stamp).array();
+  }
+
+  /**
+   * Returns {@link #PING_TAG} or {@link #PONG_TAG} if the message is a ping or a pong and -1
+   * otherwise.
+   */
+  public static int peekProbe(byte[] data) {
+    if (data.length != PROBE_LENGTH) {
+      return -1;
+    }
+
+    int tag = data[0] & 0xff;
+    return tag == PING_TAG || tag == PONG_TAG ? tag : -1;
+  }
+
+  /**
+   * Returns the stamp of a ping or a pong.
+   */
+  public static long probeStamp(byte[] data) {
+    return ByteBuffer.wrap(data, 1, PROBE_LENGTH - 1).getLong();
+  }
+
+  /**
+   * Decodes a message encoded by {@link #encode(Object)}.
+   *
+   * @param data The tag followed by the encoded message.
+   * @throws IOException If the message is invalid or the tag is unknown.
+   */
+  public Object decode(byte[] data) throws IOException {
+    int offset = payloadOffset(data);
+    int tag = data[offset] & 0xff;
+    MessageCodec<?> codec = codecs[tag];
+
+    if (codec == null) {
+      throw new IOException("Unknown codec tag " + tag);
+    }
+
+    Object message = codec.decode(data, offset + 1, data.length - offset - 1);
+
+    if (message == null) {
+      throw new IOException("Codec returned null");
+    }
+
+    return message;
+  }
+
+  /**
+   * Returns the type of an encoded message by reading the tag and, for messages encoded by Kryo,
+   * the class id. Doesn't decode the message.
+   *
+   * @param data The tag followed by the encoded message.
+   * @return The type or null if it can only be determined by decoding the message.
+   * @throws IOException If the message is invalid or the tag is unknown.
+   */
+  public Class<?> peekType(byte[] data) throws IOException {
+    int offset = payloadOffset(data);
+    int tag = data[offset] & 0xff;
+
+    if (tag == KRYO_TAG) {
+      return serializer.peekClass(data, offset + 1, data.length - offset - 1);
+    }
+
+    if (codecs[tag] == null) {
+      throw new IOException("Unknown codec tag " + tag);
+    }
+
+    return types[tag];
+  }
+
+  /**
+   * Returns the offset of the tag of the codec.
+   *
+   * @throws IOException If the message is too short.
+   */
+  private static int payloadOffset(byte[] data) throws IOException {
+    if (data.length == 0) {
+      throw new IOException("Can't decode empty message");
+    }
+
+    if ((data[0] & 0xff) != TTL_TAG) {
+      return 0;
+    }
+
+    if (data.length <= TTL_HEADER_LENGTH) {
+      throw new IOException("Message with TTL is too short");
+    }
+
+    return TTL_HEADER_LENGTH;
+  }
+
+  private void setCodec(int tag, Class<?> type, MessageCodec<?> codec) {
+    codecs[tag] = codec;
+    types[tag] = type;
+    ByteBuffer tagBuffer = ByteBuffer.allocateDirect(1);
+    tagBuffer.put((byte) tag).flip();
+    tagBuffers[tag] = tagBuffer.asReadOnlyBuffer();
+  }
+
+  private int getTag(Class<?> type) {
+    Integer tag = tags.get(type);
+
+    if (tag == null) {
+      tag = findTag(type);
+    }
+
+    return tag;
+  }
+
+  private synchronized int findTag(Class<?> type) {
+    int found = KRYO_TAG;
+
+    for (int tag = 0; tag < nextTag; tag++) {
+      if (types[tag] != null && types[tag].isAssignableFrom(type)) {
+        found = tag;
+        break;
+      }
+    }
+
+    // Cache while holding the lock to not overwrite a newer registration
+    tags.put(type, found);
+    return found;
+  }
+}
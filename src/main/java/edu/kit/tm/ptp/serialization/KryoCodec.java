@@ -0,0 +1,29 @@
+package edu.kit.tm.ptp.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec which encodes objects of registered classes using Kryo.
+ */
+public class KryoCodec implements MessageCodec<Object> {
+  private final Serializer serializer;
+
+  public KryoCodec(Serializer serializer) {
+    if (serializer == null) {
+      throw new IllegalArgumentException();
+    }
+
+    this.serializer = serializer;
+  }
+
+  @Override
+  public ByteBuffer encode(Object message) {
+    return ByteBuffer.wrap(serializer.serialize(message));
+  }
+
+  @Override
+  public Object decode(byte[] data, int offset, int length) throws IOException {
+    return serializer.deserialize(data, offset, length);
+  }
+}
@@ -0,0 +1,32 @@
+package edu.kit.tm.ptp.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes messages of a type. Codecs are registered per type with a
+ * {@link CodecRegistry}.
+ *
+ * @param <T> The type of the messages.
+ */
+public interface MessageCodec<T> {
+  /**
+   * Encodes a message. The returned buffer may share its content with the message to avoid
+   * copying the data.
+   *
+   * @param message The message to encode.
+   * @return A buffer containing the encoded message between its position and limit.
+   */
+  ByteBuffer encode(T message);
+
+  /**
+   * Decodes a message. The returned message may share its content with the supplied array.
+   *
+   * @param data The array containing the encoded message.
+   * @param offset The index of the first byte of the message.
+   * @param length The length of the encoded message.
+   * @return The decoded message.
+   * @throws IOException If the data isn't a valid encoded message.
+   */
+  T decode(byte[] data, int offset, int length) throws IOException;
+}
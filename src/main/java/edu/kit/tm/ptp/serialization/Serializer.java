@@ -2,12 +2,15 @@ package edu.kit.tm.ptp.serialization;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -15,12 +18,40 @@ import java.util.Set;
  * constructor without any arguments. Classes need to be registered before they can be serialized
  * and deserialized. Also the order in which they are registered is important.
  *
+ * <p>
+ * Thread-safe. Every thread uses an own Kryo instance. The registrations are replayed in the same
+ * order into every instance so that all instances assign the same ids to the classes.
+ * </p>
+ *
  * @author Timon Hackenjos
  */
 public class Serializer {
-  private Kryo kryo = new Kryo();
-  private Set<Class<?>> registeredClasses = new HashSet<>();
-  
+  /** Initial size of the output buffer of a thread. */
+  private static final int BUFFER_SIZE = 1024;
+  /** Output buffers which grew larger are dropped after use to not keep them. */
+  private static final int MAX_KEPT_BUFFER_SIZE = 64 * 1024;
+  /** Header written by Kryo instead of an id for classes which are written by name. */
+  private static final int CLASS_NAME = 1;
+
+  /** Registered classes in the order of registration. Read without locking. */
+  private final List<Class<?>> registrations = new CopyOnWriteArrayList<>();
+  private final Set<Class<?>> registeredClasses = new HashSet<>();
+  private final ThreadLocal<ThreadKryo> kryos = new ThreadLocal<ThreadKryo>() {
+    @Override
+    protected ThreadKryo initialValue() {
+      return new ThreadKryo();
+    }
+  };
+
+  /**
+   * Kryo instance and output buffer of a thread and the number of registrations it contains.
+   */
+  private static class ThreadKryo {
+    private final Kryo kryo = new Kryo();
+    private Output output = newOutput();
+    private int registered = 0;
+  }
+
   public Serializer() {
   }
 
@@ -35,12 +66,21 @@ public class Serializer {
       throw new IllegalArgumentException("Object to serialize is null");
     }
 
-    // No maximum buffer size
-    Output out = new Output(0, -1);
-
-    kryo.writeClassAndObject(out, obj);
+    ThreadKryo threadKryo = getThreadKryo();
+    Output out = threadKryo.output;
 
-    return out.getBuffer();
+    try {
+      threadKryo.kryo.writeClassAndObject(out, obj);
+
+      // Copy of the written bytes only
+      return out.toBytes();
+    } finally {
+      if (out.getBuffer().length > MAX_KEPT_BUFFER_SIZE) {
+        threadKryo.output = newOutput();
+      } else {
+        out.clear();
+      }
+    }
   }
 
   /**
@@ -51,16 +91,29 @@ public class Serializer {
    * @throws IOException If an error occurs while deserializing.
    */
   public Object deserialize(byte[] data) throws IOException {
-    if (data.length == 0) {
+    return deserialize(data, 0, data.length);
+  }
+
+  /**
+   * Deserializes a previously serialized object of a class.
+   *
+   * @param data The array containing the bytes representing the object.
+   * @param offset The index of the first byte of the object.
+   * @param length The number of bytes representing the object.
+   * @return The deserialized object.
+   * @throws IOException If an error occurs while deserializing.
+   */
+  public Object deserialize(byte[] data, int offset, int length) throws IOException {
+    if (length == 0) {
       throw new IOException("Can't deserialize empty byte array");
     }
 
     Object obj = null;
 
     try {
-      Input input = new Input(data);
+      Input input = new Input(data, offset, length);
 
-      obj = kryo.readClassAndObject(input);
+      obj = getThreadKryo().kryo.readClassAndObject(input);
     } catch (KryoException e) { // Handling an unchecked exception
       throw new IOException(e.getMessage());
     }
@@ -72,6 +125,46 @@ public class Serializer {
     return obj;
   }
 
+  /**
+   * Returns the class of a serialized object by reading the Kryo class id at the beginning of the
+   * data without deserializing the object.
+   *
+   * @param data The array containing the bytes representing the object.
+   * @param offset The index of the first byte of the object.
+   * @param length The number of bytes representing the object.
+   * @return The class of the object or null if the class has been written by name instead of id.
+   * @throws IOException If the header is invalid or the id hasn't been registered.
+   */
+  public Class<?> peekClass(byte[] data, int offset, int length) throws IOException {
+    if (length == 0) {
+      throw new IOException("Can't read class of empty byte array");
+    }
+
+    int classId;
+
+    try {
+      classId = new Input(data, offset, length).readVarInt(true);
+    } catch (KryoException e) {
+      throw new IOException(e.getMessage());
+    }
+
+    if (classId == Kryo.NULL) {
+      throw new IOException("Serialized object is null");
+    }
+
+    if (classId == CLASS_NAME) {
+      return null;
+    }
+
+    Registration registration = getThreadKryo().kryo.getRegistration(classId - 2);
+
+    if (registration == null) {
+      throw new IOException("Unregistered class id " + (classId - 2));
+    }
+
+    return registration.getType();
+  }
+
   /**
    * Registers the supplied class to be able to serialize objects of the class.
    * Keep in mind that the order of registration matters.
@@ -79,15 +172,35 @@ public class Serializer {
    * 
    * @param type The class to register.
    */
-  public <T> void registerClass(Class<T> type) {
-    registeredClasses.add(type);
-    kryo.register(type);
+  public synchronized <T> void registerClass(Class<T> type) {
+    if (registeredClasses.add(type)) {
+      registrations.add(type);
+    }
   }
 
   /**
    * Returns true if the supplied class type has already been registered.
    */
-  public <T> boolean isRegistered(Class<T> type) {
+  public synchronized <T> boolean isRegistered(Class<T> type) {
     return registeredClasses.contains(type);
   }
+
+  /**
+   * Returns the Kryo instance of the calling thread after registering missing classes.
+   */
+  private ThreadKryo getThreadKryo() {
+    ThreadKryo threadKryo = kryos.get();
+
+    // Classes are only appended so the first entries stay the same
+    while (threadKryo.registered < registrations.size()) {
+      threadKryo.kryo.register(registrations.get(threadKryo.registered++));
+    }
+
+    return threadKryo;
+  }
+
+  private static Output newOutput() {
+    // No maximum buffer size
+    return new Output(BUFFER_SIZE, -1);
+  }
 }
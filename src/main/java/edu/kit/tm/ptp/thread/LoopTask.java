@@ -0,0 +1,14 @@
+package edu.kit.tm.ptp.thread;
+
+/**
+ * Work which is run periodically by an event loop instead of an own thread.
+ */
+public interface LoopTask {
+  /**
+   * Runs pending work. Called by the thread of the event loop on every iteration.
+   *
+   * @return The time in milliseconds after which the task needs to run again, 0 if it needs to run
+   *         again immediately or -1 if it only needs to run after the loop has been woken.
+   */
+  long runTask();
+}
@@ -0,0 +1,159 @@
+package edu.kit.tm.ptp.thread;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks on an arbitrary Executor while keeping the order of tasks with the same key. Tasks
+ * with the same key are run one after another in the order they have been submitted, tasks with
+ * different keys may run in parallel. In contrast to {@link PartitionedExecutor} a slow task only
+ * delays tasks of its own key. Thread-safe.
+ */
+public class OrderedExecutor {
+  private static final Logger logger = Logger.getLogger(OrderedExecutor.class.getName());
+
+  private final Executor executor;
+  /** Pending tasks of keys which are currently run by the executor. */
+  private final Map<Object, Queue<Runnable>> pending = new HashMap<>();
+  private boolean stopped = false;
+
+  /**
+   * Runs the tasks of a key until none is left.
+   */
+  private class Drain implements Runnable {
+    private final Object key;
+
+    private Drain(Object key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      boolean drained = false;
+
+      try {
+        Runnable task;
+
+        while ((task = next(key)) != null) {
+          try {
+            task.run();
+          } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Task threw Exception: " + e.getMessage(), e);
+          }
+        }
+
+        drained = true;
+      } finally {
+        if (!drained) {
+          // An Error aborted the drain, the key is still pending and has to be drained by another
+          // run to not block its tasks forever
+          submit(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructs a new OrderedExecutor.
+   *
+   * @param executor The executor to run the tasks on.
+   */
+  public OrderedExecutor(Executor executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException();
+    }
+
+    this.executor = executor;
+  }
+
+  /**
+   * Queues the task to be run after the previously submitted tasks of the key. Tasks are
+   * discarded after the executor has been stopped.
+   *
+   * @param key The key which determines the order.
+   * @param task The task to run.
+   */
+  public void execute(Object key, Runnable task) {
+    if (key == null || task == null) {
+      throw new IllegalArgumentException();
+    }
+
+    synchronized (this) {
+      if (stopped) {
+        return;
+      }
+
+      Queue<Runnable> tasks = pending.get(key);
+
+      if (tasks != null) {
+        // Run by the active drain of the key
+        tasks.add(task);
+        return;
+      }
+
+      tasks = new ArrayDeque<>();
+      tasks.add(task);
+      pending.put(key, tasks);
+    }
+
+    submit(key);
+  }
+
+  /**
+   * Hands the drain of a pending key to the executor. If the executor rejects it the tasks of the
+   * key are run by the calling thread to not lose them, including tasks added meanwhile.
+   */
+  private void submit(Object key) {
+    try {
+      executor.execute(new Drain(key));
+    } catch (RejectedExecutionException e) {
+      logger.log(Level.WARNING,
+          "Executor rejected task, running tasks in calling thread: " + e.getMessage());
+      new Drain(key).run();
+    }
+  }
+
+  /**
+   * Discards queued tasks and new tasks. Doesn't stop the underlying executor.
+   */
+  public synchronized void stop() {
+    stopped = true;
+
+    for (Queue<Runnable> tasks : pending.values()) {
+      tasks.clear();
+    }
+  }
+
+  /**
+   * Returns the number of tasks which haven't been started yet.
+   */
+  public synchronized int getQueued() {
+    int queued = 0;
+
+    for (Queue<Runnable> tasks : pending.values()) {
+      queued += tasks.size();
+    }
+
+    return queued;
+  }
+
+  /**
+   * Returns the next task of the key and removes the key if there is none.
+   */
+  private synchronized Runnable next(Object key) {
+    Queue<Runnable> tasks = pending.get(key);
+    Runnable task = tasks.poll();
+
+    if (task == null) {
+      pending.remove(key);
+    }
+
+    return task;
+  }
+}
@@ -0,0 +1,53 @@
+package edu.kit.tm.ptp.thread;
+
+/**
+ * Snapshot of the statistics of a worker of a {@link PartitionedExecutor}.
+ */
+public final class PartitionStatistics {
+  private final int queueDepth;
+  private final long executed;
+  private final long totalNanos;
+  private final long maxNanos;
+
+  PartitionStatistics(int queueDepth, long executed, long totalNanos, long maxNanos) {
+    this.queueDepth = queueDepth;
+    this.executed = executed;
+    this.totalNanos = totalNanos;
+    this.maxNanos = maxNanos;
+  }
+
+  /**
+   * Returns the number of tasks waiting to be run.
+   */
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  /**
+   * Returns the number of tasks which have been run.
+   */
+  public long getExecuted() {
+    return executed;
+  }
+
+  /**
+   * Returns the average time in nanoseconds it took to run a task or 0 if no task has been run.
+   * Parts run by {@link PartitionedExecutor#runUntimed(Runnable)} aren't included.
+   */
+  public long getAverageNanos() {
+    return executed == 0 ? 0 : totalNanos / executed;
+  }
+
+  /**
+   * Returns the maximum time in nanoseconds it took to run a task.
+   */
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "queue depth " + queueDepth + ", executed " + executed + ", average "
+        + getAverageNanos() + " ns, max " + maxNanos + " ns";
+  }
+}
@@ -0,0 +1,273 @@
+package edu.kit.tm.ptp.thread;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks on a fixed number of worker threads. Every task has a key which determines the worker
+ * to run it. Tasks with the same key are run in the order they have been submitted, tasks with
+ * different keys may run in parallel. If a worker has more tasks queued than its capacity, the
+ * producers of the keys which filled the queue are paused through a {@link Backpressure} until
+ * the worker caught up. Tasks are never rejected, so the producers need to stop shortly after
+ * being paused. Thread-safe.
+ */
+public class PartitionedExecutor {
+  private static final Logger logger = Logger.getLogger(PartitionedExecutor.class.getName());
+
+  private final Partition[] partitions;
+  /** Number of queued tasks of a worker at which producers are paused. */
+  private final int capacity;
+  /** Pauses and resumes producers or null. */
+  private final Backpressure backpressure;
+  private volatile boolean stopped = false;
+
+  /**
+   * Pauses and resumes the producer of the tasks of a key. Every pause is followed by a resume,
+   * but the calls for a key may be made by different threads and therefore arrive in any order.
+   */
+  public interface Backpressure {
+    void pause(Object key);
+
+    void resume(Object key);
+  }
+
+  /**
+   * Worker thread with its queue and statistics. The statistics are only written by the worker.
+   */
+  private class Partition extends Thread {
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    /** Keys whose producers have been paused. Guarded by the partition. */
+    private final Set<Object> paused = new HashSet<>();
+    /** True while producers are paused. */
+    private volatile boolean throttled = false;
+    /** Time in nanoseconds the current task spent in parts which aren't measured. */
+    private long untimedNanos = 0;
+    private volatile long executed = 0;
+    private volatile long totalNanos = 0;
+    private volatile long maxNanos = 0;
+
+    private Partition(ThreadGroup group, String name) {
+      super(group, name);
+      setDaemon(true);
+    }
+
+    @Override
+    @SuppressFBWarnings(value = "VO_VOLATILE_INCREMENT",
+        justification = "Statistics are only written by the worker thread.")
+    public void run() {
+      while (!stopped) {
+        Runnable task;
+
+        try {
+          task = queue.take();
+        } catch (InterruptedException e) {
+          continue;
+        }
+
+        resumeIfDrained();
+
+        long start = System.nanoTime();
+        untimedNanos = 0;
+
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          logger.log(Level.SEVERE, "Task of " + getName() + " threw Exception: " + e.getMessage(),
+              e);
+        }
+
+        long nanos = System.nanoTime() - start - untimedNanos;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        executed++;
+      }
+    }
+
+    private void add(Object key, Runnable task) {
+      queue.add(task);
+
+      if (backpressure == null || queue.size() < capacity) {
+        return;
+      }
+
+      boolean pause;
+
+      synchronized (this) {
+        pause = paused.add(key);
+        throttled = true;
+      }
+
+      // Called without holding the lock, the backpressure might block
+      if (pause) {
+        backpressure.pause(key);
+      }
+
+      // The worker might have caught up in the meantime
+      resumeIfDrained();
+    }
+
+    private void resumeIfDrained() {
+      if (!throttled || queue.size() > capacity / 2) {
+        return;
+      }
+
+      List<Object> resumed;
+
+      synchronized (this) {
+        if (queue.size() > capacity / 2) {
+          return;
+        }
+
+        resumed = new ArrayList<>(paused);
+        paused.clear();
+        throttled = false;
+      }
+
+      for (Object key : resumed) {
+        backpressure.resume(key);
+      }
+    }
+
+    private PartitionStatistics getStatistics() {
+      // Read executed first so that the average is never too low
+      long count = executed;
+      return new PartitionStatistics(queue.size(), count, totalNanos, maxNanos);
+    }
+  }
+
+  /**
+   * Constructs a new PartitionedExecutor which never pauses producers.
+   *
+   * @param threads The number of worker threads.
+   * @param group The thread group of the worker threads.
+   * @param name The name prefix of the worker threads.
+   */
+  public PartitionedExecutor(int threads, ThreadGroup group, String name) {
+    this(threads, Integer.MAX_VALUE, null, group, name);
+  }
+
+  /**
+   * Constructs a new PartitionedExecutor.
+   *
+   * @param threads The number of worker threads.
+   * @param capacity The number of queued tasks of a worker at which the producers are paused. They
+   *        are resumed when the worker has less than half of it queued.
+   * @param backpressure Pauses and resumes the producers or null to never pause them.
+   * @param group The thread group of the worker threads.
+   * @param name The name prefix of the worker threads.
+   */
+  public PartitionedExecutor(int threads, int capacity, Backpressure backpressure,
+      ThreadGroup group, String name) {
+    if (threads <= 0 || capacity <= 0) {
+      throw new IllegalArgumentException();
+    }
+
+    this.capacity = capacity;
+    this.backpressure = backpressure;
+    partitions = new Partition[threads];
+
+    for (int i = 0; i < threads; i++) {
+      partitions[i] = new Partition(group, name + "-" + i);
+    }
+  }
+
+  /**
+   * Starts the worker threads.
+   */
+  public void start() {
+    for (Partition partition : partitions) {
+      partition.start();
+    }
+  }
+
+  /**
+   * Stops the worker threads. Queued tasks are discarded.
+   */
+  public void stop() {
+    stopped = true;
+
+    for (Partition partition : partitions) {
+      partition.interrupt();
+      partition.queue.clear();
+    }
+  }
+
+  /**
+   * Queues the task to be run by the worker of the key. Tasks are discarded after the executor has
+   * been stopped. Pauses the producer of the key if the queue of the worker is full.
+   *
+   * @param key The key which determines the worker.
+   * @param task The task to run.
+   */
+  public void execute(Object key, Runnable task) {
+    if (key == null || task == null) {
+      throw new IllegalArgumentException();
+    }
+
+    if (stopped) {
+      return;
+    }
+
+    partitions[partitionOf(key)].add(key, task);
+  }
+
+  /**
+   * Runs a part of a task which doesn't count towards the time of the task in the statistics, like
+   * calling a listener with the result of the task. Just runs the call if the current thread isn't
+   * a worker of an executor.
+   */
+  public static void runUntimed(Runnable call) {
+    Thread thread = Thread.currentThread();
+
+    if (!(thread instanceof Partition)) {
+      call.run();
+      return;
+    }
+
+    Partition partition = (Partition) thread;
+    long start = System.nanoTime();
+
+    try {
+      call.run();
+    } finally {
+      partition.untimedNanos += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Returns the index of the worker which runs tasks of the key.
+   */
+  public int partitionOf(Object key) {
+    int hash = key.hashCode() * 0x9E3779B9;
+    hash ^= hash >>> 16;
+    return (hash & Integer.MAX_VALUE) % partitions.length;
+  }
+
+  /**
+   * Returns the number of worker threads.
+   */
+  public int getPartitions() {
+    return partitions.length;
+  }
+
+  /**
+   * Returns a snapshot of the statistics of every worker.
+   */
+  public PartitionStatistics[] getStatistics() {
+    PartitionStatistics[] statistics = new PartitionStatistics[partitions.length];
+
+    for (int i = 0; i < partitions.length; i++) {
+      statistics[i] = partitions[i].getStatistics();
+    }
+
+    return statistics;
+  }
+}
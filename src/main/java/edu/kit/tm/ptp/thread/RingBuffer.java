@@ -0,0 +1,232 @@
+package edu.kit.tm.ptp.thread;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue for several producers and a single consumer. All slots are allocated
+ * in advance, so adding and removing elements doesn't allocate. The consumer waits for elements
+ * using a {@link WaitStrategy} or, if it waits somewhere else, is only woken by a {@link Signal}.
+ *
+ * @param <E> The type of the elements.
+ */
+public class RingBuffer<E> {
+  /** Number of times a producer yields before it parks while the buffer is full. */
+  private static final int YIELDS = 16;
+  /** Shortest time in nanoseconds a producer parks while the buffer is full. */
+  private static final long MIN_PARK = TimeUnit.MICROSECONDS.toNanos(1);
+  /** Longest time in nanoseconds a producer parks at once while the buffer is full. */
+  private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final Object[] buffer;
+  /**
+   * Sequence number of every slot. A slot can be written by the producer claiming position p if
+   * its sequence is p and read by the consumer at position p if its sequence is p + 1.
+   */
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong(0);
+  /** Null if the consumer doesn't wait on the buffer. */
+  private final WaitStrategy waitStrategy;
+  private final Signal signal;
+  /** Only accessed by the consumer. */
+  private long head = 0;
+
+  /**
+   * Constructs a new RingBuffer.
+   *
+   * @param capacity The maximum number of elements. Is rounded up to a power of two, at least two.
+   * @param waitStrategy Determines how the consumer waits for new elements.
+   */
+  public RingBuffer(int capacity, WaitStrategy waitStrategy) {
+    this(capacity, waitStrategy, waitStrategy);
+  }
+
+  /**
+   * Constructs a new RingBuffer whose consumer waits somewhere else and is woken by the signal.
+   * {@link #await(long)} isn't available.
+   *
+   * @param capacity The maximum number of elements. Is rounded up to a power of two, at least two.
+   * @param signal Wakes the consumer after an element has been added.
+   */
+  public RingBuffer(int capacity, Signal signal) {
+    this(capacity, null, signal);
+  }
+
+  private RingBuffer(int capacity, WaitStrategy waitStrategy, Signal signal) {
+    if (capacity <= 0 || capacity > (1 << 30) || signal == null) {
+      throw new IllegalArgumentException();
+    }
+
+    // A single slot can't tell a full from an empty buffer by its sequence
+    int size = Math.max(2, Integer.highestOneBit(capacity));
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    buffer = new Object[size];
+    sequences = new AtomicLongArray(size);
+    mask = size - 1;
+    this.waitStrategy = waitStrategy;
+    this.signal = signal;
+
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds an element if the buffer isn't full. Can be called by several threads concurrently.
+   *
+   * @return False if the buffer is full.
+   */
+  public boolean offer(E element) {
+    if (element == null) {
+      throw new NullPointerException();
+    }
+
+    long position;
+    int index;
+
+    while (true) {
+      position = tail.get();
+      index = (int) position & mask;
+      long difference = sequences.get(index) - position;
+
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+      } else if (difference < 0) {
+        // The consumer didn't free the slot yet
+        return false;
+      }
+    }
+
+    buffer[index] = element;
+    // Volatile write to order the publication before the check of the wait strategy
+    sequences.set(index, position + 1);
+    signal.signal();
+
+    return true;
+  }
+
+  /**
+   * Adds an element. Waits for the consumer to free a slot if the buffer is full.
+   *
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  public void put(E element) throws InterruptedException {
+    for (int attempt = 0; !offer(element); attempt++) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+
+      backoff(attempt, MAX_PARK);
+    }
+  }
+
+  /**
+   * Adds an element. Waits for the consumer to free a slot if the buffer is full, but at most
+   * for the supplied time. Can be called by several threads concurrently.
+   *
+   * @param timeout The maximum time to wait in nanoseconds.
+   * @return False if the buffer was still full when the timeout expired.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  public boolean offer(E element, long timeout) throws InterruptedException {
+    long deadline = System.nanoTime() + timeout;
+
+    for (int attempt = 0; !offer(element); attempt++) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+
+      long remaining = deadline - System.nanoTime();
+
+      if (remaining <= 0) {
+        return false;
+      }
+
+      backoff(attempt, remaining);
+    }
+
+    return true;
+  }
+
+  /**
+   * Waits before a producer tries again to add an element to the full buffer. Yields at first and
+   * parks for exponentially growing times afterwards, so waiting producers don't keep cores busy
+   * if the consumer is slow.
+   *
+   * @param attempt The number of failed attempts before.
+   * @param limit The maximum time to park in nanoseconds.
+   */
+  private static void backoff(int attempt, long limit) {
+    if (attempt < YIELDS) {
+      Thread.yield();
+      return;
+    }
+
+    long park = MIN_PARK << Math.min(attempt - YIELDS, 10);
+    LockSupport.parkNanos(Math.min(Math.min(park, MAX_PARK), limit));
+  }
+
+  /**
+   * Removes the next element. Must only be called by the consumer.
+   *
+   * @return The element or null if the buffer is empty.
+   */
+  public E poll() {
+    int index = (int) head & mask;
+
+    if (sequences.get(index) != head + 1) {
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    E element = (E) buffer[index];
+    buffer[index] = null;
+    sequences.lazySet(index, head + buffer.length);
+    head++;
+
+    return element;
+  }
+
+  /**
+   * Returns true if the buffer contains no published element. Must only be called by the
+   * consumer.
+   */
+  public boolean isEmpty() {
+    return sequences.get((int) head & mask) != head + 1;
+  }
+
+  /**
+   * Waits until an element is available, the timeout expires or the thread is woken by
+   * {@link #signal()}. Must only be called by the consumer.
+   *
+   * @param timeout The maximum time to wait in nanoseconds or -1 to wait without timeout.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   * @throws IllegalStateException If the buffer has been constructed without a wait strategy.
+   */
+  public void await(long timeout) throws InterruptedException {
+    if (waitStrategy == null) {
+      throw new IllegalStateException("Consumer doesn't wait on the buffer");
+    }
+
+    waitStrategy.await(this, timeout);
+  }
+
+  /**
+   * Wakes the consumer if it is waiting.
+   */
+  public void signal() {
+    signal.signal();
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+}
@@ -0,0 +1,49 @@
+package edu.kit.tm.ptp.thread;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of worker threads shared by all PTP instances of the JVM which signs and verifies
+ * authentication messages. Has a thread per processor and terminates idle threads. If its queue
+ * is full, the submitting thread does the work itself. The threads are daemon threads and the
+ * pool is never shut down.
+ */
+public final class SharedCryptoPool {
+  /** Time in seconds after which an idle worker thread terminates. */
+  public static final long KEEP_ALIVE = 60;
+  /** Maximum number of queued tasks of the workers. */
+  public static final int QUEUE_SIZE = 256;
+
+  private static ExecutorService pool = null;
+
+  private SharedCryptoPool() {
+  }
+
+  /**
+   * Returns the shared pool. Creates it on the first call.
+   */
+  public static synchronized ExecutorService get() {
+    if (pool == null) {
+      final AtomicInteger count = new AtomicInteger(1);
+      int threads = Runtime.getRuntime().availableProcessors();
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE,
+          TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "PTP crypto-" + count.getAndIncrement());
+              thread.setDaemon(true);
+              return thread;
+            }
+          }, new ThreadPoolExecutor.CallerRunsPolicy());
+      executor.allowCoreThreadTimeOut(true);
+      pool = executor;
+    }
+
+    return pool;
+  }
+}
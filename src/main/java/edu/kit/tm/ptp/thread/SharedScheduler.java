@@ -0,0 +1,44 @@
+package edu.kit.tm.ptp.thread;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler shared by all PTP instances of the JVM which haven't been configured with an own one.
+ * Runs timers instead of a thread per instance. The threads are daemon threads and the scheduler
+ * is never shut down.
+ */
+public final class SharedScheduler {
+  /** Number of threads of the scheduler. More than one to not delay timers by a slow task. */
+  public static final int THREADS = 2;
+
+  private static ScheduledExecutorService scheduler = null;
+
+  private SharedScheduler() {
+  }
+
+  /**
+   * Returns the shared scheduler. Creates it on the first call.
+   */
+  public static synchronized ScheduledExecutorService get() {
+    if (scheduler == null) {
+      final AtomicInteger count = new AtomicInteger(1);
+      ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "PTP scheduler-" + count.getAndIncrement());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      // Timers are rescheduled frequently, don't keep cancelled ones until their delay elapsed
+      executor.setRemoveOnCancelPolicy(true);
+      scheduler = executor;
+    }
+
+    return scheduler;
+  }
+}
@@ -0,0 +1,13 @@
+package edu.kit.tm.ptp.thread;
+
+/**
+ * Wakes the consumer of a {@link RingBuffer} after a producer published an element. Consumers
+ * which don't wait on the ring buffer themselves, like an event loop blocked in a selector,
+ * supply a signal without a {@link WaitStrategy}.
+ */
+public interface Signal {
+  /**
+   * Wakes the consumer. Called by producers after publishing an element.
+   */
+  void signal();
+}
@@ -0,0 +1,138 @@
+package edu.kit.tm.ptp.thread;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Determines how the consumer of a {@link RingBuffer} waits for new elements.
+ */
+public abstract class WaitStrategy implements Signal {
+  /**
+   * The available strategies.
+   */
+  public enum Type {
+    /** Parks the consumer thread. Lowest CPU usage. */
+    PARK,
+    /** Yields the processor while waiting. Lower latency, but keeps a core busy. */
+    YIELD,
+    /** Spins while waiting. Lowest latency, but occupies a core completely. */
+    SPIN
+  }
+
+  /**
+   * Creates a new wait strategy of the supplied type.
+   */
+  public static WaitStrategy create(Type type) {
+    switch (type) {
+      case PARK:
+        return new ParkWaitStrategy();
+      case YIELD:
+        return new BusyWaitStrategy(true);
+      case SPIN:
+        return new BusyWaitStrategy(false);
+      default:
+        throw new IllegalArgumentException("Unknown wait strategy " + type);
+    }
+  }
+
+  /**
+   * Waits until the ring buffer contains an element, the timeout expires or
+   * {@link #signal()} is called.
+   *
+   * @param ring The buffer to wait for.
+   * @param timeout The maximum time to wait in nanoseconds or -1 to wait without timeout.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  public abstract void await(RingBuffer<?> ring, long timeout) throws InterruptedException;
+
+  /**
+   * Wakes the waiting consumer. Called by producers after publishing an element.
+   */
+  @Override
+  public abstract void signal();
+
+  /**
+   * Parks the consumer until a producer unparks it.
+   */
+  private static class ParkWaitStrategy extends WaitStrategy {
+    private final AtomicReference<Thread> waiter = new AtomicReference<>();
+
+    @Override
+    public void await(RingBuffer<?> ring, long timeout) throws InterruptedException {
+      long deadline = timeout < 0 ? 0 : System.nanoTime() + timeout;
+
+      waiter.set(Thread.currentThread());
+
+      try {
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+
+        // Check again after announcing the waiter to avoid missing a signal
+        if (!ring.isEmpty()) {
+          return;
+        }
+
+        if (timeout < 0) {
+          LockSupport.park(this);
+        } else {
+          long remaining = deadline - System.nanoTime();
+
+          if (remaining > 0) {
+            LockSupport.parkNanos(this, remaining);
+          }
+        }
+      } finally {
+        waiter.lazySet(null);
+      }
+    }
+
+    @Override
+    public void signal() {
+      Thread thread = waiter.get();
+
+      // Only the first producer unparks the consumer
+      if (thread != null && waiter.compareAndSet(thread, null)) {
+        LockSupport.unpark(thread);
+      }
+    }
+  }
+
+  /**
+   * Polls the ring buffer in a loop, optionally yielding the processor.
+   */
+  private static class BusyWaitStrategy extends WaitStrategy {
+    private final boolean yield;
+    private volatile boolean signalled = false;
+
+    BusyWaitStrategy(boolean yield) {
+      this.yield = yield;
+    }
+
+    @Override
+    public void await(RingBuffer<?> ring, long timeout) throws InterruptedException {
+      long deadline = System.nanoTime() + timeout;
+
+      while (ring.isEmpty() && !signalled) {
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+
+        if (timeout >= 0 && System.nanoTime() - deadline >= 0) {
+          break;
+        }
+
+        if (yield) {
+          Thread.yield();
+        }
+      }
+
+      signalled = false;
+    }
+
+    @Override
+    public void signal() {
+      signalled = true;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package edu.kit.tm.ptp.utility;
+
+/**
+ * Pool of heap buffers in power of two size classes. Acquiring and releasing a buffer doesn't
+ * allocate unless the size class is empty. Messages larger than the largest size class get an
+ * own buffer which isn't pooled. Thread-safe.
+ */
+public class BufferPool {
+  /** Size of the smallest size class as power of two (1 KiB). */
+  private static final int MIN_SHIFT = 10;
+  /** Size of the largest size class as power of two (64 KiB). */
+  private static final int MAX_SHIFT = 16;
+  private static final int DEFAULT_BUFFERS_PER_CLASS = 32;
+
+  private final ObjectPool<PooledBuffer>[] pools;
+
+  public BufferPool() {
+    this(DEFAULT_BUFFERS_PER_CLASS);
+  }
+
+  /**
+   * Constructs a new BufferPool.
+   *
+   * @param buffersPerClass The maximum number of idle buffers kept per size class.
+   */
+  public BufferPool(int buffersPerClass) {
+    pools = newPools(MAX_SHIFT - MIN_SHIFT + 1);
+
+    for (int i = 0; i < pools.length; i++) {
+      final int sizeClass = i;
+
+      pools[i] = new ObjectPool<PooledBuffer>(buffersPerClass) {
+        @Override
+        protected PooledBuffer create() {
+          return new PooledBuffer(BufferPool.this, sizeClass, 1 << (MIN_SHIFT + sizeClass));
+        }
+      };
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static ObjectPool<PooledBuffer>[] newPools(int length) {
+    // Arrays of a generic type can't be created directly
+    return new ObjectPool[length];
+  }
+
+  /**
+   * Returns a buffer for a message of the supplied length. The caller holds one reference.
+   */
+  public PooledBuffer acquire(int length) {
+    if (length < 0) {
+      throw new IllegalArgumentException();
+    }
+
+    PooledBuffer buffer;
+
+    if (length > 1 << MAX_SHIFT) {
+      buffer = new PooledBuffer(null, -1, length);
+    } else {
+      buffer = pools[sizeClassOf(length)].acquire();
+    }
+
+    buffer.reset(length);
+    return buffer;
+  }
+
+  /**
+   * Returns the number of idle buffers of all size classes.
+   */
+  public int idle() {
+    int idle = 0;
+
+    for (ObjectPool<PooledBuffer> pool : pools) {
+      idle += pool.idle();
+    }
+
+    return idle;
+  }
+
+  void recycle(PooledBuffer buffer) {
+    pools[buffer.getSizeClass()].release(buffer);
+  }
+
+  private static int sizeClassOf(int length) {
+    if (length <= 1 << MIN_SHIFT) {
+      return 0;
+    }
+
+    // Smallest power of two which is large enough
+    return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_SHIFT;
+  }
+}
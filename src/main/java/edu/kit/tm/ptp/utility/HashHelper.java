@@ -0,0 +1,60 @@
+package edu.kit.tm.ptp.utility;
+
+/**
+ * Helper methods shared by the open addressing hash maps.
+ */
+final class HashHelper {
+  /** Maximum ratio of used slots before the table is doubled. */
+  private static final float LOAD_FACTOR = 0.5f;
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private HashHelper() {
+  }
+
+  /**
+   * Spreads the bits of a hash code to reduce clustering of linear probing.
+   */
+  static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Spreads the bits of a long key (finalizer of MurmurHash3).
+   */
+  static int mix(long key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  /**
+   * Returns a power of two table size which is able to hold the expected number of entries.
+   */
+  static int tableSize(int expectedSize) {
+    long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR) + 1;
+    int size = 2;
+
+    while (size < needed && size < MAX_CAPACITY) {
+      size <<= 1;
+    }
+
+    return size;
+  }
+
+  /**
+   * Returns the number of entries at which a table with the supplied size needs to be doubled.
+   */
+  static int resizeThreshold(int capacity) {
+    if (capacity >= MAX_CAPACITY) {
+      // Never resize again, the table will fill up completely instead
+      return capacity;
+    }
+
+    return (int) (capacity * LOAD_FACTOR);
+  }
+}
@@ -0,0 +1,73 @@
+package edu.kit.tm.ptp.utility;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Counts per key how often something has been requested and released, like pausing the reading of
+ * a peer by several independent components. A key counts as contained while it has been requested
+ * more often than released. Releases may arrive before their request, so callers don't need to
+ * keep their calls in order. Thread-safe and lock-free.
+ *
+ * @param <K> The type of the keys.
+ */
+public class KeyCounter<K> {
+  private final ConcurrentMap<K, Integer> counts = new ConcurrentHashMap<>();
+
+  /**
+   * Adds a request for the key.
+   *
+   * @return The new count of the key.
+   */
+  public int increment(K key) {
+    return add(key, 1);
+  }
+
+  /**
+   * Releases a request for the key.
+   *
+   * @return The new count of the key.
+   */
+  public int decrement(K key) {
+    return add(key, -1);
+  }
+
+  /**
+   * Returns true if the key has been requested more often than released.
+   */
+  public boolean contains(K key) {
+    Integer count = counts.get(key);
+    return count != null && count > 0;
+  }
+
+  /**
+   * Returns the current count of the key.
+   */
+  public int get(K key) {
+    Integer count = counts.get(key);
+    return count == null ? 0 : count;
+  }
+
+  private int add(K key, int delta) {
+    if (key == null) {
+      throw new IllegalArgumentException();
+    }
+
+    while (true) {
+      Integer count = counts.get(key);
+
+      if (count == null) {
+        if (counts.putIfAbsent(key, delta) == null) {
+          return delta;
+        }
+      } else {
+        int updated = count + delta;
+
+        // Balanced keys are removed to not keep every key ever seen
+        if (updated == 0 ? counts.remove(key, count) : counts.replace(key, count, updated)) {
+          return updated;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package edu.kit.tm.ptp.utility;
+
+/**
+ * Open addressing hash map with primitive long keys. Avoids boxing the keys and allocating an
+ * entry object for every mapping. Null values are not allowed. Not thread-safe.
+ *
+ * <p>
+ * Iterate over the mappings by looping over the slots from 0 to {@link #capacity()} and skipping
+ * slots where {@link #valueAt(int)} returns null.
+ * </p>
+ *
+ * @param <V> The type of the values.
+ */
+public class LongObjectMap<V> {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private long[] keys;
+  private Object[] values;
+  private int size = 0;
+  private int mask;
+  private int resizeAt;
+
+  public LongObjectMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a new map which is able to hold the supplied number of mappings without resizing.
+   */
+  public LongObjectMap(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException();
+    }
+
+    allocate(HashHelper.tableSize(expectedSize));
+  }
+
+  /**
+   * Returns the value mapped to the key or null if there is none.
+   */
+  public V get(long key) {
+    int slot = HashHelper.mix(key) & mask;
+
+    while (values[slot] != null) {
+      if (keys[slot] == key) {
+        return valueAt(slot);
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    return null;
+  }
+
+  public boolean containsKey(long key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Maps the value to the key.
+   *
+   * @return The previously mapped value or null.
+   */
+  public V put(long key, V value) {
+    if (value == null) {
+      throw new NullPointerException("Null values aren't supported");
+    }
+
+    int slot = HashHelper.mix(key) & mask;
+
+    while (values[slot] != null) {
+      if (keys[slot] == key) {
+        V previous = valueAt(slot);
+        values[slot] = value;
+        return previous;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    keys[slot] = key;
+    values[slot] = value;
+
+    if (++size >= resizeAt) {
+      rehash(keys.length << 1);
+    }
+
+    return null;
+  }
+
+  /**
+   * Removes the mapping of the key.
+   *
+   * @return The previously mapped value or null.
+   */
+  public V remove(long key) {
+    int slot = HashHelper.mix(key) & mask;
+
+    while (values[slot] != null) {
+      if (keys[slot] == key) {
+        V previous = valueAt(slot);
+        shiftBack(slot);
+        size--;
+        return previous;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    return null;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all mappings. Keeps the allocated table.
+   */
+  public void clear() {
+    for (int i = 0; i < values.length; i++) {
+      values[i] = null;
+    }
+    size = 0;
+  }
+
+  /**
+   * Returns the number of slots of the table.
+   */
+  public int capacity() {
+    return values.length;
+  }
+
+  /**
+   * Returns the key stored in the slot. Only meaningful if {@link #valueAt(int)} isn't null.
+   */
+  public long keyAt(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * Returns the value stored in the slot or null if the slot is empty.
+   */
+  public V valueAt(int slot) {
+    @SuppressWarnings("unchecked")
+    V value = (V) values[slot];
+    return value;
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    resizeAt = HashHelper.resizeThreshold(capacity);
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+
+    allocate(capacity);
+
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int slot = HashHelper.mix(oldKeys[i]) & mask;
+
+        while (values[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Removes the entry in the slot and moves following entries of the probe sequence back so that
+   * lookups don't need tombstones.
+   */
+  private void shiftBack(int slot) {
+    int gap = slot;
+    int current = (slot + 1) & mask;
+
+    while (values[current] != null) {
+      int home = HashHelper.mix(keys[current]) & mask;
+
+      if (((current - home) & mask) >= ((current - gap) & mask)) {
+        keys[gap] = keys[current];
+        values[gap] = values[current];
+        gap = current;
+      }
+
+      current = (current + 1) & mask;
+    }
+
+    values[gap] = null;
+  }
+}
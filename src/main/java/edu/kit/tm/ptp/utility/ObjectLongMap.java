@@ -0,0 +1,225 @@
+package edu.kit.tm.ptp.utility;
+
+/**
+ * Open addressing hash map with primitive long values. Avoids boxing the values and allocating an
+ * entry object for every mapping. Null keys are not allowed. Not thread-safe.
+ *
+ * <p>
+ * Iterate over the mappings by looping over the slots from 0 to {@link #capacity()} and skipping
+ * slots where {@link #keyAt(int)} returns null.
+ * </p>
+ *
+ * @param <K> The type of the keys.
+ */
+public class ObjectLongMap<K> {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private Object[] keys;
+  private long[] values;
+  private int size = 0;
+  private int mask;
+  private int resizeAt;
+
+  public ObjectLongMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a new map which is able to hold the supplied number of mappings without resizing.
+   */
+  public ObjectLongMap(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException();
+    }
+
+    allocate(HashHelper.tableSize(expectedSize));
+  }
+
+  /**
+   * Returns the value mapped to the key or the supplied default value if there is none.
+   */
+  public long get(K key, long defaultValue) {
+    int slot = indexOf(key);
+    return slot < 0 ? defaultValue : values[slot];
+  }
+
+  public boolean containsKey(K key) {
+    return indexOf(key) >= 0;
+  }
+
+  /**
+   * Maps the value to the key. Overwrites an existing mapping.
+   */
+  public void put(K key, long value) {
+    if (key == null) {
+      throw new NullPointerException("Null keys aren't supported");
+    }
+
+    int slot = HashHelper.mix(key.hashCode()) & mask;
+
+    while (keys[slot] != null) {
+      if (keys[slot].equals(key)) {
+        values[slot] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    keys[slot] = key;
+    values[slot] = value;
+
+    if (++size >= resizeAt) {
+      rehash(keys.length << 1);
+    }
+  }
+
+  /**
+   * Maps the value to the key if no mapping exists yet.
+   *
+   * @return True if the value has been added.
+   */
+  public boolean putIfAbsent(K key, long value) {
+    if (containsKey(key)) {
+      return false;
+    }
+
+    put(key, value);
+    return true;
+  }
+
+  /**
+   * Removes the mapping of the key.
+   *
+   * @return True if a mapping existed.
+   */
+  public boolean remove(K key) {
+    int slot = indexOf(key);
+
+    if (slot < 0) {
+      return false;
+    }
+
+    removeAt(slot);
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all mappings. Keeps the allocated table.
+   */
+  public void clear() {
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = null;
+    }
+    size = 0;
+  }
+
+  /**
+   * Returns the number of slots of the table.
+   */
+  public int capacity() {
+    return keys.length;
+  }
+
+  /**
+   * Returns the key stored in the slot or null if the slot is empty.
+   */
+  public K keyAt(int slot) {
+    @SuppressWarnings("unchecked")
+    K key = (K) keys[slot];
+    return key;
+  }
+
+  /**
+   * Returns the value stored in the slot. Only meaningful if {@link #keyAt(int)} isn't null.
+   */
+  public long valueAt(int slot) {
+    return values[slot];
+  }
+
+  /**
+   * Overwrites the value of an occupied slot.
+   */
+  public void setValueAt(int slot, long value) {
+    if (keys[slot] == null) {
+      throw new IllegalStateException("Slot is empty");
+    }
+
+    values[slot] = value;
+  }
+
+  private int indexOf(K key) {
+    if (key == null) {
+      return -1;
+    }
+
+    int slot = HashHelper.mix(key.hashCode()) & mask;
+
+    while (keys[slot] != null) {
+      if (keys[slot].equals(key)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    return -1;
+  }
+
+  private void allocate(int capacity) {
+    keys = new Object[capacity];
+    values = new long[capacity];
+    mask = capacity - 1;
+    resizeAt = HashHelper.resizeThreshold(capacity);
+  }
+
+  private void rehash(int capacity) {
+    Object[] oldKeys = keys;
+    long[] oldValues = values;
+
+    allocate(capacity);
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int slot = HashHelper.mix(oldKeys[i].hashCode()) & mask;
+
+        while (keys[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Removes the entry in the slot and moves following entries of the probe sequence back so that
+   * lookups don't need tombstones.
+   */
+  private void removeAt(int slot) {
+    int gap = slot;
+    int current = (slot + 1) & mask;
+
+    while (keys[current] != null) {
+      int home = HashHelper.mix(keys[current].hashCode()) & mask;
+
+      if (((current - home) & mask) >= ((current - gap) & mask)) {
+        keys[gap] = keys[current];
+        values[gap] = values[current];
+        gap = current;
+      }
+
+      current = (current + 1) & mask;
+    }
+
+    keys[gap] = null;
+    size--;
+  }
+}
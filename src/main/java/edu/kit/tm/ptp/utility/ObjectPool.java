@@ -0,0 +1,75 @@
+package edu.kit.tm.ptp.utility;
+
+/**
+ * Bounded pool of reusable objects. Objects are created on demand if the pool is empty and
+ * dropped if the pool is full when they are released. Acquiring and releasing objects doesn't
+ * allocate. Thread-safe.
+ *
+ * @param <T> The type of the pooled objects.
+ */
+public abstract class ObjectPool<T> {
+  private final Object[] pool;
+  private int size = 0;
+
+  /**
+   * Constructs a new pool.
+   *
+   * @param capacity The maximum number of idle objects kept by the pool.
+   */
+  public ObjectPool(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException();
+    }
+
+    pool = new Object[capacity];
+  }
+
+  /**
+   * Creates a new object if the pool is empty.
+   */
+  protected abstract T create();
+
+  /**
+   * Returns an idle object of the pool or a new one.
+   */
+  public T acquire() {
+    T obj = poll();
+
+    if (obj == null) {
+      obj = create();
+    }
+
+    return obj;
+  }
+
+  /**
+   * Returns an object to the pool. The object must not be used afterwards.
+   */
+  public synchronized void release(T obj) {
+    if (obj == null) {
+      throw new NullPointerException();
+    }
+
+    if (size < pool.length) {
+      pool[size++] = obj;
+    }
+  }
+
+  /**
+   * Returns the number of idle objects.
+   */
+  public synchronized int idle() {
+    return size;
+  }
+
+  private synchronized T poll() {
+    if (size == 0) {
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    T obj = (T) pool[--size];
+    pool[size] = null;
+    return obj;
+  }
+}
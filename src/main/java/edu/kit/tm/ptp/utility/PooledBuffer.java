@@ -0,0 +1,96 @@
+package edu.kit.tm.ptp.utility;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted buffer of a {@link BufferPool}. The buffer returns to the pool when the last
+ * reference has been released and must not be used afterwards. Buffers which are too large for
+ * the pool are simply dropped. The references are thread-safe, the content isn't.
+ */
+public final class PooledBuffer {
+  private final BufferPool pool;
+  private final int sizeClass;
+  private final ByteBuffer buffer;
+  /** Read-only view which is reused for every message to not allocate it. */
+  private final ByteBuffer view;
+  private final AtomicInteger references = new AtomicInteger(0);
+
+  PooledBuffer(BufferPool pool, int sizeClass, int capacity) {
+    this.pool = pool;
+    this.sizeClass = sizeClass;
+    buffer = ByteBuffer.allocate(capacity);
+    view = buffer.asReadOnlyBuffer();
+  }
+
+  /**
+   * Prepares the buffer to hold a message of the supplied length. Holds one reference afterwards.
+   */
+  void reset(int length) {
+    buffer.clear();
+    buffer.limit(length);
+    references.set(1);
+  }
+
+  int getSizeClass() {
+    return sizeClass;
+  }
+
+  /**
+   * Returns the writable buffer to fill. Its limit is the length of the message.
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Returns the length of the message.
+   */
+  public int length() {
+    return buffer.limit();
+  }
+
+  /**
+   * Returns a read-only view of the message. The same view is returned on every call, its
+   * position is reset to 0. Only valid until the buffer has been released.
+   */
+  public ByteBuffer asReadOnlyBuffer() {
+    view.clear();
+    view.limit(buffer.limit());
+    return view;
+  }
+
+  /**
+   * Returns a copy of the message.
+   */
+  public byte[] toArray() {
+    return Arrays.copyOf(buffer.array(), buffer.limit());
+  }
+
+  /**
+   * Adds a reference which needs to be released by calling {@link #release()}.
+   */
+  public PooledBuffer retain() {
+    if (references.getAndIncrement() <= 0) {
+      throw new IllegalStateException("Buffer has been released");
+    }
+
+    return this;
+  }
+
+  /**
+   * Releases a reference. Returns the buffer to the pool if it was the last one.
+   */
+  public void release() {
+    int remaining = references.decrementAndGet();
+
+    if (remaining == 0) {
+      if (pool != null) {
+        pool.recycle(this);
+      }
+    } else if (remaining < 0) {
+      throw new IllegalStateException("Buffer released too often");
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package edu.kit.tm.ptp;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import edu.kit.tm.ptp.Configuration;
 import edu.kit.tm.ptp.Identifier;
@@ -8,8 +9,9 @@ import edu.kit.tm.ptp.PTP;
 import edu.kit.tm.ptp.SendListener;
 import edu.kit.tm.ptp.auth.DummyAuthenticatorFactory;
 import edu.kit.tm.ptp.connection.ConnectionManager;
-import edu.kit.tm.ptp.serialization.ByteArrayMessage;
+import edu.kit.tm.ptp.serialization.CodecRegistry;
 import edu.kit.tm.ptp.serialization.Serializer;
+import edu.kit.tm.ptp.thread.LoopTask;
 import edu.kit.tm.ptp.utility.Constants;
 import edu.kit.tm.ptp.utility.TestConstants;
 import edu.kit.tm.ptp.utility.TestHelper;
@@ -21,6 +23,8 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ConnectionManagerTest {
   private ConnectionManager manager;
@@ -63,9 +67,7 @@ public class ConnectionManagerTest {
     ptp.reuseHiddenService();
 
     Configuration config = ptp.getConfiguration();
-    Serializer serializer = new Serializer();
-    serializer.registerClass(byte[].class);
-    serializer.registerClass(ByteArrayMessage.class);
+    CodecRegistry codecs = new CodecRegistry(new Serializer());
 
     SendReceiveListener listener = new SendReceiveListener();
 
@@ -77,8 +79,7 @@ public class ConnectionManagerTest {
     manager.start();
 
     byte[] data = new byte[] {0x0, 0x1, 0x2, 0x3};
-    ByteArrayMessage message = new ByteArrayMessage(data);
-    long id = manager.send(serializer.serialize(message), ptp.getIdentifier(),
+    long id = manager.send(codecs.encode(data), ptp.getIdentifier(),
         TestConstants.hiddenServiceSetupTimeout);
 
     TestHelper.wait(listener.sent, 1, TestConstants.hiddenServiceSetupTimeout);
@@ -90,6 +91,63 @@ public class ConnectionManagerTest {
     assertEquals(ptp.getIdentifier(), listener.getDestination());
   }
 
+  @Test
+  public void testSendToAll() throws IOException {
+    SendReceiveListener listener = new SendReceiveListener();
+    SendReceiveListener payloadListener = new SendReceiveListener();
+
+    manager = new ConnectionManager(1000, listener, listener, null);// Dummy port
+    manager.start();
+
+    CodecRegistry codecs = new CodecRegistry(new Serializer());
+    long[] ids = manager.send(codecs.encode(new byte[] {0x1}),
+        Arrays.asList(new Identifier("invalid1"), new Identifier("invalid2")), -1,
+        payloadListener, false);
+
+    assertEquals(2, ids.length);
+    assertTrue(ids[0] != ids[1]);
+
+    TestHelper.wait(listener.sent, 2, TestConstants.listenerTimeout);
+    TestHelper.wait(payloadListener.sent, 2, TestConstants.listenerTimeout);
+
+    assertEquals(2, listener.sent.get());
+    assertEquals(2, payloadListener.sent.get());
+    assertEquals(SendListener.State.INVALID_DESTINATION, payloadListener.getState());
+    assertEquals(ids[1], payloadListener.getId());
+  }
+
+  @Test
+  public void testEventLoop() throws IOException {
+    SendReceiveListener listener = new SendReceiveListener();
+    Configuration config = new Configuration();
+    config.setUseEventLoop(true);
+
+    manager = new ConnectionManager(1000, listener, listener, config);// Dummy port
+    manager.start();
+    assertTrue(manager.usesEventLoop());
+
+    final AtomicInteger runs = new AtomicInteger(0);
+    manager.addLoopTask(new LoopTask() {
+      @Override
+      public long runTask() {
+        runs.incrementAndGet();
+        return 10;
+      }
+    });
+
+    TestHelper.wait(runs, 5, 1000);
+    assertTrue(runs.get() >= 5);
+
+    int port = manager.startBindServer(Constants.anyport);
+
+    Socket socket = new Socket();
+    socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+        TestConstants.socketConnectTimeout);
+
+    assertEquals(true, socket.isConnected());
+    socket.close();
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void invalidLocalIdentifier() {
     SendReceiveListener listener = new SendReceiveListener();
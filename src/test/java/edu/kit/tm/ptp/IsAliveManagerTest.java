@@ -4,7 +4,7 @@ import static org.junit.Assert.assertEquals;
 
 import edu.kit.tm.ptp.auth.DummyAuthenticatorFactory;
 import edu.kit.tm.ptp.connection.ConnectionManager;
-import edu.kit.tm.ptp.serialization.ByteArrayMessage;
+import edu.kit.tm.ptp.serialization.CodecRegistry;
 import edu.kit.tm.ptp.serialization.Serializer;
 import edu.kit.tm.ptp.utility.Constants;
 import edu.kit.tm.ptp.utility.TestConstants;
@@ -28,7 +28,27 @@ public class IsAliveManagerTest {
 
   @After
   public void tearDown() {
-    ptp.exit();
+    if (ptp != null) {
+      ptp.exit();
+    }
+  }
+
+  @Test
+  public void testTimeoutRestartedAfterPause() throws IOException {
+    IsAliveManager manager = new IsAliveManager(null, new Configuration());
+    Identifier identifier = new Identifier("aaaaaaaaaaaaaaaa.onion");
+    // The receive timer expires while reading is paused twice
+    manager.setReadingPaused(identifier, true);
+    manager.setReadingPaused(identifier, true);
+    manager.expired(identifier, 1);
+
+    assertEquals(0, manager.getTimerManager().size());
+
+    manager.setReadingPaused(identifier, false);
+    assertEquals(0, manager.getTimerManager().size());
+
+    manager.setReadingPaused(identifier, false);
+    assertEquals(1, manager.getTimerManager().size());
   }
 
   @Test
@@ -48,9 +68,7 @@ public class IsAliveManagerTest {
     ptp.init();
     ptp.reuseHiddenService();
 
-    Serializer serializer = new Serializer();
-    serializer.registerClass(byte[].class);
-    serializer.registerClass(ByteArrayMessage.class);
+    CodecRegistry codecs = new CodecRegistry(new Serializer());
 
     SendReceiveListener listener = new SendReceiveListener();
 
@@ -64,8 +82,7 @@ public class IsAliveManagerTest {
     Identifier identifier = ptp.getIdentifier();
 
     byte[] data = new byte[] {0x0, 0x1, 0x2, 0x3};
-    ByteArrayMessage message = new ByteArrayMessage(data);
-    long id = manager.send(serializer.serialize(message), identifier,
+    long id = manager.send(codecs.encode(data), identifier,
         TestConstants.hiddenServiceSetupTimeout);
 
     TestHelper.wait(listener.sent, 1, TestConstants.hiddenServiceSetupTimeout);
@@ -0,0 +1,148 @@
+package edu.kit.tm.ptp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessagePublisherTest {
+  private Identifier source;
+  private Throttle throttle;
+  private MessagePublisher<String> publisher;
+
+  private static class Throttle implements MessagePublisher.ReadThrottle {
+    private int pauses = 0;
+    private int resumes = 0;
+
+    @Override
+    public synchronized void pause(Identifier source) {
+      pauses++;
+    }
+
+    @Override
+    public synchronized void resume(Identifier source) {
+      resumes++;
+    }
+  }
+
+  private static class Subscriber implements Flow.Subscriber<QueuedMessage<String>> {
+    private final List<String> received = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private Throwable error = null;
+    private boolean completed = false;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(QueuedMessage<String> item) {
+      received.add(item.getData());
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    source = new Identifier("aaaaaaaaaaaaaaaa.onion");
+    throttle = new Throttle();
+    publisher = new MessagePublisher<>(throttle);
+  }
+
+  @Test
+  public void testDemand() {
+    Subscriber subscriber = new Subscriber();
+    publisher.subscribe(subscriber);
+    assertTrue(publisher.hasSubscribers());
+
+    publish(3);
+    assertEquals(0, subscriber.received.size());
+
+    subscriber.subscription.request(2);
+    assertEquals(2, subscriber.received.size());
+    assertEquals("0", subscriber.received.get(0));
+
+    subscriber.subscription.request(5);
+    publish(1);
+    assertEquals(4, subscriber.received.size());
+    assertEquals("0", subscriber.received.get(3));
+  }
+
+  @Test
+  public void testPauseAndResume() {
+    Subscriber subscriber = new Subscriber();
+    publisher.subscribe(subscriber);
+
+    publish(MessagePublisher.HIGH_WATERMARK);
+    assertEquals(1, throttle.pauses);
+    assertEquals(0, throttle.resumes);
+
+    // Still above the low watermark
+    subscriber.subscription.request(MessagePublisher.HIGH_WATERMARK
+        - MessagePublisher.LOW_WATERMARK - 1);
+    assertEquals(0, throttle.resumes);
+
+    subscriber.subscription.request(1);
+    assertEquals(1, throttle.resumes);
+    assertEquals(MessagePublisher.HIGH_WATERMARK - MessagePublisher.LOW_WATERMARK,
+        subscriber.received.size());
+  }
+
+  @Test
+  public void testCancel() {
+    Subscriber subscriber = new Subscriber();
+    publisher.subscribe(subscriber);
+
+    publish(MessagePublisher.HIGH_WATERMARK);
+    assertEquals(1, throttle.pauses);
+
+    // Cancelling resumes reading because nobody waits for the messages anymore
+    subscriber.subscription.cancel();
+    assertEquals(1, throttle.resumes);
+    assertFalse(publisher.hasSubscribers());
+
+    subscriber.subscription.request(1);
+    assertEquals(0, subscriber.received.size());
+  }
+
+  @Test
+  public void testInvalidRequest() {
+    Subscriber subscriber = new Subscriber();
+    publisher.subscribe(subscriber);
+
+    subscriber.subscription.request(0);
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+    assertFalse(publisher.hasSubscribers());
+  }
+
+  @Test
+  public void testComplete() {
+    Subscriber subscriber = new Subscriber();
+    publisher.subscribe(subscriber);
+
+    publisher.complete();
+    assertTrue(subscriber.completed);
+    assertFalse(publisher.hasSubscribers());
+  }
+
+  private void publish(int count) {
+    for (int i = 0; i < count; i++) {
+      publisher.offer(new QueuedMessage<String>(source, String.valueOf(i), 0));
+    }
+  }
+}
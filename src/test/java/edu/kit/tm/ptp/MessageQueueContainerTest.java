@@ -0,0 +1,292 @@
+package edu.kit.tm.ptp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class MessageQueueContainerTest {
+  private MessageQueueContainer container;
+  private Identifier source;
+
+  @Before
+  public void setUp() {
+    container = new MessageQueueContainer();
+    source = new Identifier("aaaaaaaaaaaaaaaa.onion");
+  }
+
+  @Test
+  public void testTake() throws InterruptedException {
+    container.addMessageQueue(byte[].class);
+    final IMessageQueue<byte[]> queue = new MessageQueue<>(byte[].class, container);
+    final CountDownLatch taken = new CountDownLatch(1);
+
+    Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          if (queue.take() != null) {
+            taken.countDown();
+          }
+        } catch (InterruptedException e) {
+          // Test fails
+        }
+      }
+    };
+    consumer.start();
+
+    assertFalse(taken.await(50, TimeUnit.MILLISECONDS));
+    container.addMessageToQueue(new byte[] {0x1}, source, 0);
+    assertTrue(taken.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testPollTimeout() throws InterruptedException {
+    container.addMessageQueue(byte[].class);
+    IMessageQueue<byte[]> queue = new MessageQueue<>(byte[].class, container);
+
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+    container.addMessageToQueue(new byte[] {0x1}, source, 0);
+    assertArrayEquals(new byte[] {0x1}, queue.poll(10, TimeUnit.MILLISECONDS).getData());
+  }
+
+  @Test
+  public void testDrainTo() {
+    container.addMessageQueue(byte[].class);
+    IMessageQueue<byte[]> queue = new MessageQueue<>(byte[].class, container);
+
+    for (byte i = 0; i < 5; i++) {
+      container.addMessageToQueue(new byte[] {i}, source, 0);
+    }
+
+    List<QueuedMessage<byte[]>> batch = new ArrayList<>();
+    assertEquals(3, queue.drainTo(batch, 3));
+    assertEquals(2, queue.drainTo(batch, 3));
+    assertEquals(0, queue.drainTo(batch, 3));
+
+    for (byte i = 0; i < 5; i++) {
+      assertArrayEquals(new byte[] {i}, batch.get(i).getData());
+    }
+  }
+
+  @Test
+  public void testDropOldest() {
+    container.addMessageQueue(byte[].class, 2, IMessageQueue.OverflowPolicy.DROP_OLDEST);
+    IMessageQueue<byte[]> queue = new MessageQueue<>(byte[].class, container);
+
+    for (byte i = 0; i < 3; i++) {
+      container.addMessageToQueue(new byte[] {i}, source, 0);
+    }
+
+    assertEquals(1, queue.getDropped());
+    assertArrayEquals(new byte[] {1}, queue.pollMessage().getData());
+    assertArrayEquals(new byte[] {2}, queue.pollMessage().getData());
+    assertFalse(queue.hasMessage());
+  }
+
+  @Test
+  public void testDropNewest() {
+    container.addMessageQueue(byte[].class, 2, IMessageQueue.OverflowPolicy.DROP_NEWEST);
+    IMessageQueue<byte[]> queue = new MessageQueue<>(byte[].class, container);
+
+    for (byte i = 0; i < 3; i++) {
+      container.addMessageToQueue(new byte[] {i}, source, 0);
+    }
+
+    assertEquals(1, queue.getDropped());
+    assertArrayEquals(new byte[] {0}, queue.pollMessage().getData());
+    assertArrayEquals(new byte[] {1}, queue.pollMessage().getData());
+    assertFalse(queue.hasMessage());
+  }
+
+  @Test
+  public void testBlock() throws InterruptedException {
+    container.addMessageQueue(byte[].class, 1, IMessageQueue.OverflowPolicy.BLOCK);
+    IMessageQueue<byte[]> queue = new MessageQueue<>(byte[].class, container);
+    final CountDownLatch added = new CountDownLatch(2);
+
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        for (byte i = 0; i < 2; i++) {
+          container.addMessageToQueue(new byte[] {i}, source, 0);
+          added.countDown();
+        }
+      }
+    };
+    producer.start();
+
+    // The second message waits for space
+    assertFalse(added.await(50, TimeUnit.MILLISECONDS));
+    assertEquals(1, added.getCount());
+
+    assertArrayEquals(new byte[] {0}, queue.take().getData());
+    assertTrue(added.await(10, TimeUnit.SECONDS));
+    assertArrayEquals(new byte[] {1}, queue.take().getData());
+    assertEquals(0, queue.getDropped());
+  }
+
+  @Test
+  public void testRouteIsUpdatedByRegistration() {
+    assertNull(container.route(String.class).type);
+
+    container.addMessageQueue(CharSequence.class);
+    ListenerContainer.Route route = container.route(String.class);
+    assertEquals(CharSequence.class, route.type);
+    assertNull(route.listener);
+    assertTrue(route.queue != null);
+
+    MessageReceivedListener<String> listener = new MessageReceivedListener<String>() {
+      @Override
+      public void messageReceived(String message, Identifier source) {
+      }
+    };
+    container.putListener(String.class, listener);
+
+    // The exact class is preferred
+    route = container.route(String.class);
+    assertEquals(String.class, route.type);
+    assertSame(listener, route.listener);
+    assertNull(route.queue);
+
+    // The route is cached until the next registration
+    assertSame(route, container.route(String.class));
+  }
+
+  @Test
+  public void testReplacedQueueForwardsMessages() {
+    container.addMessageQueue(byte[].class);
+    // Resolved before the replacement like by a concurrently receiving thread
+    ListenerContainer.Route stale = container.route(byte[].class);
+
+    container.replaceMessageQueue(byte[].class, 10, IMessageQueue.OverflowPolicy.DROP_NEWEST);
+    assertTrue(stale.queue != container.route(byte[].class).queue);
+
+    container.addMessageToQueue(stale, new LazyMessage(new byte[] {0x1}, null), source, 0, -1);
+
+    assertTrue(container.hasMessage(byte[].class));
+    assertTrue(stale.queue.isEmpty());
+  }
+
+  @Test
+  public void testSourcesInTurns() {
+    Identifier other = new Identifier("bbbbbbbbbbbbbbbb.onion");
+    container.addMessageQueue(byte[].class, 10, IMessageQueue.OverflowPolicy.DROP_NEWEST, true);
+    IMessageQueue<byte[]> queue = new MessageQueue<>(byte[].class, container);
+
+    for (byte i = 0; i < 3; i++) {
+      container.addMessageToQueue(new byte[] {i}, source, 0);
+    }
+    container.addMessageToQueue(new byte[] {10}, other, 0);
+
+    // The message of the other source isn't queued behind the ones of the first source
+    assertArrayEquals(new byte[] {0}, queue.pollMessage().getData());
+    assertArrayEquals(new byte[] {10}, queue.pollMessage().getData());
+    assertArrayEquals(new byte[] {1}, queue.pollMessage().getData());
+    assertArrayEquals(new byte[] {2}, queue.pollMessage().getData());
+    assertNull(queue.pollMessage());
+  }
+
+  @Test
+  public void testPollSource() throws InterruptedException {
+    Identifier other = new Identifier("bbbbbbbbbbbbbbbb.onion");
+    container.addMessageQueue(byte[].class, 2, IMessageQueue.OverflowPolicy.DROP_OLDEST, true);
+    IMessageQueue<byte[]> queue = new MessageQueue<>(byte[].class, container, other);
+
+    for (byte i = 0; i < 3; i++) {
+      container.addMessageToQueue(new byte[] {i}, source, 0);
+      container.addMessageToQueue(new byte[] {(byte) (10 + i)}, other, 0);
+    }
+
+    // The capacity applies to every source
+    assertEquals(2, queue.getDropped());
+    assertArrayEquals(new byte[] {11}, queue.take().getData());
+    assertArrayEquals(new byte[] {12}, queue.poll(1, TimeUnit.SECONDS).getData());
+    assertFalse(queue.hasMessage());
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+    IMessageQueue<byte[]> all = new MessageQueue<>(byte[].class, container);
+    assertTrue(all.hasMessage());
+    assertArrayEquals(new byte[] {1}, all.pollMessage().getData());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPollSourceRequiresSourceQueue() {
+    container.addMessageQueue(byte[].class);
+    new MessageQueue<>(byte[].class, container, source).pollMessage();
+  }
+
+  @Test
+  public void testTtl() {
+    container.addMessageQueue(byte[].class);
+    container.setTtl(byte[].class, 1000);
+    IMessageQueue<byte[]> queue = new MessageQueue<>(byte[].class, container);
+    long now = System.currentTimeMillis();
+
+    container.addMessageToQueue(new byte[] {0}, source, now - 2000);
+    container.addMessageToQueue(new byte[] {1}, source, now);
+    // The TTL of the sender applies as well
+    container.addMessageToQueue(new byte[] {2}, source, now, now - 1);
+
+    assertArrayEquals(new byte[] {1}, queue.pollMessage().getData());
+    assertNull(queue.pollMessage());
+    assertEquals(2, queue.getExpired());
+  }
+
+  @Test
+  public void testSourceQueueSkipsExpired() {
+    Identifier other = new Identifier("bbbbbbbbbbbbbbbb.onion");
+    container.addMessageQueue(byte[].class, 10, IMessageQueue.OverflowPolicy.DROP_NEWEST, true);
+    long now = System.currentTimeMillis();
+
+    container.addMessageToQueue(new byte[] {0}, source, now, now - 1);
+    container.addMessageToQueue(new byte[] {1}, source, now, -1);
+    container.addMessageToQueue(new byte[] {10}, other, now, now - 1);
+
+    assertFalse(new MessageQueue<>(byte[].class, container, other).hasMessage());
+    assertTrue(new MessageQueue<>(byte[].class, container, source).hasMessage());
+    assertTrue(container.hasMessage(byte[].class));
+    assertEquals(2, container.getQueue(byte[].class).getExpired());
+    assertArrayEquals(new byte[] {1}, container.pollMessage(byte[].class).getData());
+    assertFalse(container.hasMessage(byte[].class));
+  }
+
+  @Test
+  public void testEvictExpired() {
+    container.addMessageQueue(byte[].class);
+    container.addMessageQueue(String.class, 10, IMessageQueue.OverflowPolicy.BLOCK, true);
+    long now = System.currentTimeMillis();
+
+    container.addMessageToQueue(new byte[] {0}, source, now, now + 1000);
+    container.addMessageToQueue("expired", source, now, now + 1000);
+    container.addMessageToQueue("valid", source, now, -1);
+
+    assertEquals(2, container.evictExpired(now + 2000));
+    assertEquals(1, container.getQueue(String.class).getExpired());
+    assertFalse(container.hasMessage(byte[].class));
+    assertEquals("valid", container.pollMessage(String.class).getData());
+  }
+
+  @Test
+  public void testExpiredMessagesMakeSpace() {
+    container.addMessageQueue(byte[].class, 1, IMessageQueue.OverflowPolicy.DROP_NEWEST);
+    long now = System.currentTimeMillis();
+
+    container.addMessageToQueue(new byte[] {0}, source, now, now - 1);
+    container.addMessageToQueue(new byte[] {1}, source, now, -1);
+
+    assertEquals(0, container.getQueue(byte[].class).getDropped());
+    assertArrayEquals(new byte[] {1}, container.pollMessage(byte[].class).getData());
+  }
+}
@@ -659,7 +659,7 @@ public class PTPTest {
     assertNotNull(client1.getIdentifier());
 
     thrown.expect(IllegalArgumentException.class);
-    client1.sendMessage(null, client1.getIdentifier());
+    client1.sendMessage((byte[]) null, client1.getIdentifier());
   }
 
   @Test
@@ -681,7 +681,7 @@ public class PTPTest {
     assertNotNull(client1.getIdentifier());
 
     thrown.expect(IllegalArgumentException.class);
-    client1.sendMessage(null, client1.getIdentifier(), -1);
+    client1.sendMessage((byte[]) null, client1.getIdentifier(), -1);
   }
 
   @Test
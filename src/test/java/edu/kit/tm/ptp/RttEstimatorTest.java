@@ -0,0 +1,83 @@
+package edu.kit.tm.ptp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RttEstimatorTest {
+  private RttEstimator estimator;
+
+  @Before
+  public void setUp() {
+    estimator = new RttEstimator();
+  }
+
+  @Test
+  public void testSamples() {
+    assertEquals(-1, estimator.getSrtt());
+    assertEquals(-1, estimator.getRto());
+
+    estimator.sample(2000, 0);
+    assertEquals(2000, estimator.getSrtt());
+    // srtt + 4 * rttvar with rttvar = rtt / 2
+    assertEquals(6000, estimator.getRto());
+
+    for (int i = 0; i < 100; i++) {
+      estimator.sample(300, 0);
+    }
+
+    // Converges to the new round-trip time, the timeout doesn't drop below the minimum
+    assertEquals(300, estimator.getSrtt());
+    assertEquals(RttEstimator.MIN_RTO, estimator.getRto());
+
+    for (int i = 0; i < 100; i++) {
+      estimator.sample(10000, 0);
+      estimator.sample(50000, 0);
+    }
+
+    assertEquals(RttEstimator.MAX_RTO, estimator.getRto());
+  }
+
+  @Test
+  public void testProbe() {
+    long nanos = 1000000000L;
+
+    assertTrue(estimator.startProbe(0, nanos));
+    // Only one unanswered ping at a time
+    assertFalse(estimator.startProbe(10, nanos + 10000000L));
+
+    // Unknown stamps are ignored
+    assertFalse(estimator.probeAnswered(nanos + 1, 500, nanos + 500000000L));
+    assertTrue(estimator.probeAnswered(nanos, 500, nanos + 500000000L));
+    assertEquals(500, estimator.getSrtt());
+    assertFalse(estimator.probeAnswered(nanos, 600, nanos + 600000000L));
+
+    // The estimate is fresh
+    assertFalse(estimator.startProbe(1000, nanos + 1000000000L));
+    assertTrue(estimator.startProbe(500 + RttEstimator.PROBE_INTERVAL, nanos));
+  }
+
+  @Test
+  public void testLostProbe() {
+    assertTrue(estimator.startProbe(0, 0));
+    assertFalse(estimator.startProbe(1000, 1000000000L));
+    assertTrue(estimator.startProbe(RttEstimator.MAX_RTO, RttEstimator.MAX_RTO * 1000000L));
+  }
+
+  @Test
+  public void testPeerWithoutPings() {
+    long lost = RttEstimator.MAX_RTO * 1000000L;
+
+    for (int i = 0; i < RttEstimator.MAX_LOST_PROBES; i++) {
+      assertTrue(estimator.startProbe(i * RttEstimator.MAX_RTO, i * lost));
+    }
+
+    // Never answered, the peer isn't probed anymore
+    long later = RttEstimator.MAX_LOST_PROBES * lost;
+    assertFalse(estimator.startProbe(RttEstimator.MAX_LOST_PROBES * RttEstimator.MAX_RTO, later));
+    assertFalse(estimator.startProbe(10 * RttEstimator.MAX_RTO, 10 * lost));
+  }
+}
@@ -0,0 +1,220 @@
+package edu.kit.tm.ptp.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.auth.PublicKeyAuthenticator.AuthenticationMessage;
+import edu.kit.tm.ptp.crypt.CryptHelper;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+public class AuthenticationSignerTest {
+  private static KeyPair keyPair;
+  private final Identifier own = new Identifier("aaaaaaaaaaaaaaaa.onion");
+  private final Identifier peer1 = new Identifier("bbbbbbbbbbbbbbbb.onion");
+  private final Identifier peer2 = new Identifier("cccccccccccccccc.onion");
+  private CryptHelper cryptHelper;
+  private final List<Runnable> tasks = new ArrayList<>();
+  private final Executor executor = new Executor() {
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+  };
+
+  private static class Callback implements AuthenticationSigner.Callback {
+    private final List<AuthenticationMessage> messages = new ArrayList<>();
+    private int failures = 0;
+
+    @Override
+    public void signed(AuthenticationMessage message) {
+      messages.add(message);
+    }
+
+    @Override
+    public void failed() {
+      failures++;
+    }
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws GeneralSecurityException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    keyPair = generator.generateKeyPair();
+  }
+
+  @Before
+  public void setUp() throws GeneralSecurityException {
+    cryptHelper = new CryptHelper();
+    cryptHelper.init();
+    cryptHelper.setKeyPair(keyPair);
+    tasks.clear();
+  }
+
+  @Test
+  public void testSign() throws GeneralSecurityException, UnsupportedEncodingException {
+    AuthenticationSigner signer = new AuthenticationSigner(cryptHelper, executor, null);
+    Callback callback = new Callback();
+    assertNull(signer.get(own, peer1));
+
+    signer.sign(own, peer1, callback);
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+
+    assertEquals(1, callback.messages.size());
+    AuthenticationMessage message = callback.messages.get(0);
+    assertEquals(own, message.source);
+    assertEquals(peer1, message.destination);
+
+    PublicKeyAuthenticator auth = new PublicKeyAuthenticator(null, null, cryptHelper);
+    assertTrue(cryptHelper.verifySignature(auth.getBytes(message.source, message.destination,
+        message.pubKey, message.timestamp), message.signature, keyPair.getPublic()));
+
+    // Reused for the same destination only
+    assertSame(message, signer.get(own, peer1));
+    assertNull(signer.get(own, peer2));
+    assertNull(signer.get(peer2, peer1));
+  }
+
+  @Test
+  public void testBatch() {
+    PublicKeyCache statistics = new PublicKeyCache();
+    AuthenticationSigner signer = new AuthenticationSigner(cryptHelper, executor, statistics);
+    Callback callback = new Callback();
+
+    signer.sign(own, peer1, callback);
+    signer.sign(own, peer2, callback);
+    signer.sign(own, peer1, callback);
+
+    // A single task signs all pending messages
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+
+    assertEquals(3, callback.messages.size());
+    assertEquals(0, callback.failures);
+    assertSame(callback.messages.get(0), callback.messages.get(2));
+    assertEquals(peer2, callback.messages.get(1).destination);
+    assertEquals(2, statistics.getStatistics().getHandshakes());
+
+    signer.sign(own, peer2, callback);
+    assertEquals(2, tasks.size());
+  }
+
+  @Test
+  public void testExpired() throws Exception {
+    AuthenticationSigner signer = new AuthenticationSigner(cryptHelper, executor, null);
+    Callback callback = new Callback();
+    signer.sign(own, peer1, callback);
+    tasks.get(0).run();
+
+    AuthenticationMessage message = callback.messages.get(0);
+    assertNotNull(signer.get(own, peer1));
+
+    message.timestamp -= AuthenticationSigner.REUSE_INTERVAL;
+    assertNull(signer.get(own, peer1));
+  }
+
+  @Test
+  public void testKeyChanged() throws GeneralSecurityException {
+    AuthenticationSigner signer = new AuthenticationSigner(cryptHelper, executor, null);
+    signer.sign(own, peer1, new Callback());
+    tasks.get(0).run();
+    assertNotNull(signer.get(own, peer1));
+
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    cryptHelper.setKeyPair(generator.generateKeyPair());
+
+    assertNull(signer.get(own, peer1));
+  }
+
+  @Test(timeout = 10000)
+  public void testGetWhileSigning() throws InterruptedException {
+    AuthenticationSigner signer = new AuthenticationSigner(cryptHelper, executor, null);
+    signer.sign(own, peer1, new Callback());
+    tasks.get(0).run();
+
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        // Occupies the CryptHelper like a running signature
+        synchronized (cryptHelper) {
+          locked.countDown();
+
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            // Exit
+          }
+        }
+      }
+    });
+    thread.start();
+    locked.await();
+
+    try {
+      assertNotNull(signer.get(own, peer1));
+    } finally {
+      release.countDown();
+      thread.join();
+    }
+  }
+
+  @Test
+  public void testErrorFailsBatch() {
+    AuthenticationSigner signer = new AuthenticationSigner(cryptHelper, executor, null);
+    Callback throwing = new Callback() {
+      @Override
+      public void signed(AuthenticationMessage message) {
+        throw new IllegalStateException();
+      }
+    };
+    Callback callback = new Callback();
+
+    signer.sign(own, peer1, throwing);
+    signer.sign(own, peer2, callback);
+    signer.sign(own, peer1, callback);
+    assertEquals(1, tasks.size());
+
+    try {
+      tasks.get(0).run();
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    // The rest of the batch failed and new requests are signed again
+    assertEquals(0, callback.messages.size());
+    assertEquals(2, callback.failures);
+    assertEquals(0, throwing.failures);
+
+    signer.sign(own, peer2, callback);
+    assertEquals(2, tasks.size());
+    tasks.get(1).run();
+    assertEquals(1, callback.messages.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidExecutor() {
+    new AuthenticationSigner(cryptHelper, null, null);
+  }
+}
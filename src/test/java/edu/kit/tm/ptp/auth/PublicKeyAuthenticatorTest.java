@@ -6,8 +6,11 @@ import static org.junit.Assert.assertEquals;
 import edu.kit.tm.ptp.Identifier;
 import edu.kit.tm.ptp.PTP;
 import edu.kit.tm.ptp.auth.PublicKeyAuthenticator.AuthenticationMessage;
+import edu.kit.tm.ptp.channels.ChannelManager;
+import edu.kit.tm.ptp.channels.MessageChannel;
 import edu.kit.tm.ptp.crypt.CryptHelper;
 import edu.kit.tm.ptp.utility.Constants;
+import edu.kit.tm.ptp.utility.Listener;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -19,12 +22,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.crypto.Cipher;
 
@@ -39,6 +47,46 @@ public class PublicKeyAuthenticatorTest {
   private static File pk1;
   private static File pk2;
 
+  /** Runs tasks in the calling thread. */
+  private final Executor inline = new Executor() {
+    @Override
+    public void execute(Runnable task) {
+      task.run();
+    }
+  };
+
+  /**
+   * MessageChannel which keeps the added messages without writing them.
+   */
+  private static class RecordingChannel extends MessageChannel {
+    private final List<byte[]> messages = new ArrayList<>();
+
+    RecordingChannel(SocketChannel channel) {
+      super(channel, new ChannelManager(new Listener()));
+    }
+
+    @Override
+    public synchronized boolean addMessage(byte[] data, long id) {
+      messages.add(data);
+      return true;
+    }
+  }
+
+  private static class RecordingListener implements AuthenticationListener {
+    private Identifier identifier = null;
+    private int failures = 0;
+
+    @Override
+    public void authenticationSuccess(MessageChannel channel, Identifier identifier) {
+      this.identifier = identifier;
+    }
+
+    @Override
+    public void authenticationFailed(MessageChannel channel) {
+      failures++;
+    }
+  }
+
   @BeforeClass
   public static void setUpClass() throws IOException, InvalidKeyException, InvalidKeySpecException,
       NoSuchAlgorithmException, NoSuchProviderException {
@@ -270,6 +318,104 @@ public class PublicKeyAuthenticatorTest {
     assertEquals(false, auth2.authenticationMessageValid(authMessage));
   }
 
+  @Test
+  public void testCachedPublicKey() throws GeneralSecurityException, IOException {
+    CountingCryptHelper counting = new CountingCryptHelper();
+    counting.init();
+    PublicKeyAuthenticator cachingAuth =
+        new PublicKeyAuthenticator(null, null, counting, new PublicKeyCache());
+    cachingAuth.own = ptp2.getIdentifier();
+    cachingAuth.other = ptp1.getIdentifier();
+
+    auth.own = ptp1.getIdentifier();
+    auth.other = ptp2.getIdentifier();
+
+    assertEquals(true, cachingAuth.authenticationMessageValid(auth.createAuthenticationMessage()));
+    assertEquals(1, counting.decodes);
+
+    // The cached key is used without decoding it again
+    assertEquals(true, cachingAuth.authenticationMessageValid(auth.createAuthenticationMessage()));
+    assertEquals(1, counting.decodes);
+
+    // The signature is still verified if the key is cached
+    AuthenticationMessage authMessage = auth.createAuthenticationMessage();
+    authMessage.signature[0] = (byte) (authMessage.signature[0] ^ 0xff);
+    assertEquals(false, cachingAuth.authenticationMessageValid(authMessage));
+    assertEquals(1, counting.decodes);
+
+    // A changed key misses the cache and is checked against the identifier
+    authMessage = auth.createAuthenticationMessage();
+    authMessage.pubKey = cryptHelper2.getPublicKeyBytes();
+    assertEquals(false, cachingAuth.authenticationMessageValid(authMessage));
+    assertEquals(2, counting.decodes);
+  }
+
+  @Test
+  public void testBackground() throws IOException {
+    PublicKeyCache keyCache = new PublicKeyCache();
+    AuthenticationSigner signer = new AuthenticationSigner(cryptHelper, inline, keyCache);
+    RecordingListener listener = new RecordingListener();
+    RecordingListener listener2 = new RecordingListener();
+
+    try (SocketChannel socket = SocketChannel.open();
+        SocketChannel socket2 = SocketChannel.open()) {
+      RecordingChannel channel = new RecordingChannel(socket);
+      RecordingChannel channel2 = new RecordingChannel(socket2);
+      PublicKeyAuthenticator initiator = new PublicKeyAuthenticator(listener, channel,
+          cryptHelper, keyCache, signer, inline, inline);
+      PublicKeyAuthenticator responder = new PublicKeyAuthenticator(listener2, channel2,
+          cryptHelper2, keyCache, null, inline, inline);
+
+      // Signed by the signer
+      initiator.authenticate(ptp1.getIdentifier(), ptp2.getIdentifier());
+      assertEquals(1, channel.messages.size());
+
+      // Verified by the workers
+      responder.authenticate(ptp2.getIdentifier());
+      responder.messageReceived(channel.messages.get(0), channel2);
+      assertEquals(1, channel2.messages.size());
+      responder.messageSent(0, channel2);
+      assertEquals(ptp1.getIdentifier(), listener2.identifier);
+      assertEquals(0, listener2.failures);
+
+      initiator.messageSent(0, channel);
+      initiator.messageReceived(channel2.messages.get(0), channel);
+      assertEquals(ptp2.getIdentifier(), listener.identifier);
+      assertEquals(0, listener.failures);
+      assertEquals(2, keyCache.getStatistics().getHandshakes());
+    }
+  }
+
+  @Test
+  public void testBackgroundError() throws IOException, GeneralSecurityException {
+    CryptHelper failing = new CryptHelper() {
+      @Override
+      public PublicKey decodePublicKey(byte[] pubKeyBytes) throws InvalidKeySpecException {
+        throw new IllegalStateException();
+      }
+    };
+    failing.init();
+    RecordingListener listener = new RecordingListener();
+
+    try (SocketChannel socket = SocketChannel.open();
+        SocketChannel socket2 = SocketChannel.open()) {
+      RecordingChannel channel = new RecordingChannel(socket);
+      RecordingChannel channel2 = new RecordingChannel(socket2);
+      PublicKeyAuthenticator initiator =
+          new PublicKeyAuthenticator(new RecordingListener(), channel, cryptHelper);
+      PublicKeyAuthenticator responder =
+          new PublicKeyAuthenticator(listener, channel2, failing, null, null, inline, inline);
+
+      initiator.authenticate(ptp1.getIdentifier(), ptp2.getIdentifier());
+
+      // An error of a worker fails the authentication
+      responder.authenticate(ptp2.getIdentifier());
+      responder.messageReceived(channel.messages.get(0), channel2);
+      assertEquals(1, listener.failures);
+      assertEquals(0, channel2.messages.size());
+    }
+  }
+
   /**
    * Test to check the padding of the signatures. Right now we use PKCS #1 v1.5 with SHA256.
    * If that is changed the test fails of course. The test decrypts the signature with
@@ -323,6 +469,16 @@ public class PublicKeyAuthenticatorTest {
     assertArrayEquals(hash, decryptedHash);
   }
 
+  private static class CountingCryptHelper extends CryptHelper {
+    private int decodes = 0;
+
+    @Override
+    public PublicKey decodePublicKey(byte[] pubKeyBytes) throws InvalidKeySpecException {
+      decodes++;
+      return super.decodePublicKey(pubKeyBytes);
+    }
+  }
+
   private String toHex(byte[] bytes) {
     StringBuilder sb = new StringBuilder();
     for (byte b : bytes) {
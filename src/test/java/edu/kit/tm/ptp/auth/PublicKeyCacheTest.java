@@ -0,0 +1,83 @@
+package edu.kit.tm.ptp.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import edu.kit.tm.ptp.Identifier;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+
+public class PublicKeyCacheTest {
+  private static PublicKey key1;
+  private static PublicKey key2;
+  private final Identifier peer1 = new Identifier("aaaaaaaaaaaaaaaa.onion");
+  private final Identifier peer2 = new Identifier("bbbbbbbbbbbbbbbb.onion");
+  private final Identifier peer3 = new Identifier("cccccccccccccccc.onion");
+
+  @BeforeClass
+  public static void setUpClass() throws NoSuchAlgorithmException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    key1 = generator.generateKeyPair().getPublic();
+    key2 = generator.generateKeyPair().getPublic();
+  }
+
+  @Test
+  public void testGet() {
+    PublicKeyCache cache = new PublicKeyCache();
+    assertNull(cache.get(peer1, key1.getEncoded()));
+
+    byte[] encoded = key1.getEncoded();
+    cache.put(peer1, encoded, key1);
+    // The cache keeps a copy
+    encoded[0]++;
+
+    assertSame(key1, cache.get(peer1, key1.getEncoded()));
+    // A different key needs to be verified again
+    assertNull(cache.get(peer1, key2.getEncoded()));
+    assertNull(cache.get(peer2, key1.getEncoded()));
+    assertEquals(1, cache.getStatistics().getCacheHits());
+  }
+
+  @Test
+  public void testCapacity() {
+    PublicKeyCache cache = new PublicKeyCache(2);
+    cache.put(peer1, key1.getEncoded(), key1);
+    cache.put(peer2, key2.getEncoded(), key2);
+
+    // Makes peer2 the least recently used key
+    assertSame(key1, cache.get(peer1, key1.getEncoded()));
+    cache.put(peer3, key2.getEncoded(), key2);
+
+    assertEquals(2, cache.size());
+    assertSame(key1, cache.get(peer1, key1.getEncoded()));
+    assertNull(cache.get(peer2, key2.getEncoded()));
+    assertSame(key2, cache.get(peer3, key2.getEncoded()));
+  }
+
+  @Test
+  public void testStatistics() {
+    PublicKeyCache cache = new PublicKeyCache();
+    assertEquals(0, cache.getStatistics().getAverageWallClockNanos());
+
+    cache.handshakeFinished(100);
+    cache.handshakeFinished(300);
+
+    AuthenticationStatistics statistics = cache.getStatistics();
+    assertEquals(2, statistics.getHandshakes());
+    assertEquals(400, statistics.getTotalWallClockNanos());
+    assertEquals(200, statistics.getAverageWallClockNanos());
+    assertEquals(300, statistics.getMaxWallClockNanos());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCapacity() {
+    new PublicKeyCache(0);
+  }
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
+import edu.kit.tm.ptp.utility.BufferPool;
 import edu.kit.tm.ptp.utility.Constants;
 import edu.kit.tm.ptp.utility.Listener;
 import edu.kit.tm.ptp.utility.TestConstants;
@@ -16,6 +17,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 
@@ -101,6 +103,149 @@ public class MessageChannelTest {
     assertEquals(c2, listener.getPassedChannel());
   }
 
+  @Test
+  public void testWriteDirectSegments() throws IOException {
+    SocketChannel client = SocketChannel.open();
+    client.configureBlocking(false);
+    client.connect(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), server.socket().getLocalPort()));
+
+    SocketChannel serverChannel = server.accept();
+    assertNotEquals(null, serverChannel);
+    serverChannel.configureBlocking(false);
+    client.finishConnect();
+
+    Listener listener = new Listener();
+    ChannelManager manager = new ChannelManager(listener);
+    MessageChannel c1 = new MessageChannel(client, manager);
+    MessageChannel c2 = new MessageChannel(serverChannel, manager);
+
+    ByteBuffer payload = ByteBuffer.allocateDirect(1024);
+    for (int i = 0; i < payload.capacity(); i++) {
+      payload.put((byte) i);
+    }
+    payload.flip();
+
+    c1.addMessage(new ByteBuffer[] {ByteBuffer.wrap(new byte[] {0x7}), payload}, 1);
+
+    for (int i = 0; i < 10 && listener.read.get() == 0; i++) {
+      c1.write();
+      c2.read();
+      TestHelper.sleep(10);
+    }
+    TestHelper.wait(listener.read, 1, TestConstants.listenerTimeout);
+
+    assertEquals(1, listener.write.get());
+    byte[] received = listener.getPassedBytes();
+    assertEquals(1025, received.length);
+    assertEquals(0x7, received[0]);
+    assertEquals((byte) 1023, received[1024]);
+
+    // Buffer of the caller isn't changed
+    assertEquals(0, payload.position());
+    assertEquals(1024, payload.remaining());
+
+    client.close();
+  }
+
+  @Test
+  public void testRawFrames() throws IOException {
+    SocketChannel client = SocketChannel.open();
+    client.configureBlocking(false);
+    client.connect(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), server.socket().getLocalPort()));
+
+    SocketChannel serverChannel = server.accept();
+    assertNotEquals(null, serverChannel);
+    serverChannel.configureBlocking(false);
+    client.finishConnect();
+
+    Listener listener = new Listener();
+    ChannelManager manager = new ChannelManager(listener);
+    MessageChannel c1 = new MessageChannel(client, manager);
+    MessageChannel c2 = new MessageChannel(serverChannel, manager);
+
+    byte[] data = new byte[] {0x1, 0x2, 0x3};
+    c1.addMessage(new ByteBuffer[] {ByteBuffer.wrap(data)}, 1, true);
+
+    for (int i = 0; i < 10 && listener.read.get() == 0; i++) {
+      c1.write();
+      c2.read();
+      TestHelper.sleep(10);
+    }
+    TestHelper.wait(listener.read, 1, TestConstants.listenerTimeout);
+
+    assertEquals(1, listener.raw.get());
+    assertArrayEquals(data, listener.getPassedBytes());
+
+    // Empty raw frames aren't confused with empty messages
+    c1.addMessage(new ByteBuffer[] {ByteBuffer.allocate(0)}, 2, true);
+
+    for (int i = 0; i < 10 && listener.read.get() < 2; i++) {
+      c1.write();
+      c2.read();
+      TestHelper.sleep(10);
+    }
+    TestHelper.wait(listener.read, 2, TestConstants.listenerTimeout);
+
+    assertEquals(2, listener.raw.get());
+    assertEquals(0, listener.getPassedBytes().length);
+
+    c1.addMessage(data, 3);
+
+    for (int i = 0; i < 10 && listener.read.get() < 3; i++) {
+      c1.write();
+      c2.read();
+      TestHelper.sleep(10);
+    }
+    TestHelper.wait(listener.read, 3, TestConstants.listenerTimeout);
+
+    assertEquals(2, listener.raw.get());
+    assertArrayEquals(data, listener.getPassedBytes());
+
+    client.close();
+  }
+
+  @Test
+  public void testReadIntoPooledBuffers() throws IOException {
+    SocketChannel client = SocketChannel.open();
+    client.configureBlocking(false);
+    client.connect(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), server.socket().getLocalPort()));
+
+    SocketChannel serverChannel = server.accept();
+    assertNotEquals(null, serverChannel);
+    serverChannel.configureBlocking(false);
+    client.finishConnect();
+
+    Listener listener = new Listener();
+    ChannelManager manager = new ChannelManager(listener);
+    BufferPool pool = new BufferPool();
+    manager.setBufferPool(pool);
+    MessageChannel c1 = new MessageChannel(client, manager);
+    MessageChannel c2 = new MessageChannel(serverChannel, manager);
+
+    byte[] data = new byte[] {0x1, 0x2, 0x3};
+
+    for (int message = 1; message <= 2; message++) {
+      c1.addMessage(data, message);
+
+      for (int i = 0; i < 10 && listener.read.get() < message; i++) {
+        c1.write();
+        c2.read();
+        TestHelper.sleep(10);
+      }
+      TestHelper.wait(listener.read, message, TestConstants.listenerTimeout);
+
+      assertEquals(message, listener.pooled.get());
+      assertArrayEquals(data, listener.getPassedBytes());
+      // Buffer has been returned to the pool and is reused
+      assertEquals(1, pool.idle());
+    }
+
+    client.close();
+  }
+
   @Test
   public void testGetChannel() throws IOException {
     SocketChannel client = SocketChannel.open();
@@ -0,0 +1,113 @@
+package edu.kit.tm.ptp.connection;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.ReceiveListener;
+import edu.kit.tm.ptp.SendListener;
+import edu.kit.tm.ptp.channels.MessageChannel;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the bytes allocated per message by the bookkeeping of the ConnectionManager for the
+ * send, sent and received cycle. Channels and listeners are stubbed out so that only the
+ * ConnectionManager and its states are measured.
+ *
+ * <p>
+ * Not a JUnit test. Run the main method with the test classpath.
+ * </p>
+ */
+public class ConnectionManagerAllocationBenchmark {
+  private static final int WARMUP = 200000;
+  private static final int ITERATIONS = 1000000;
+
+  private static class NullListener implements SendListener, ReceiveListener {
+    @Override
+    public void messageReceived(byte[] data, Identifier source) {
+    }
+
+    @Override
+    public void messageSent(long id, Identifier destination, State state) {
+    }
+  }
+
+  /**
+   * MessageChannel which accepts every message without writing it.
+   */
+  private static class AcceptingChannel extends MessageChannel {
+    long lastId;
+
+    AcceptingChannel(SocketChannel channel, ConnectionManager manager) {
+      super(channel, manager.channelManager);
+    }
+
+    @Override
+    public synchronized boolean addMessage(byte[] data, long id) {
+      lastId = id;
+      return true;
+    }
+  }
+
+  /**
+   * Runs the benchmark.
+   */
+  public static void main(String[] args) throws IOException {
+    // Same level as the default logger configuration of PTP
+    Logger.getLogger("").setLevel(Level.WARNING);
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    NullListener listener = new NullListener();
+    ConnectionManager manager = new ConnectionManager(0, listener, listener, null);
+    Identifier destination = new Identifier("aaaaaaaaaaaaaaaa.onion");
+    SocketChannel socket = SocketChannel.open();
+    AcceptingChannel channel = new AcceptingChannel(socket, manager);
+
+    Context context = new Context(manager);
+    context.setState(context.getConcreteAuthenticated());
+    manager.identifierMap.put(destination, channel);
+    manager.channelMap.put(channel, destination);
+    manager.channelContexts.put(channel, context);
+
+    byte[] data = new byte[64];
+
+    cycle(manager, channel, destination, data, WARMUP);
+
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+
+    cycle(manager, channel, destination, data, ITERATIONS);
+
+    long elapsed = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    System.out.println("send -> sent -> received cycle:");
+    System.out.println("  " + (allocated / (double) ITERATIONS) + " bytes/op");
+    System.out.println("  " + (elapsed / (double) ITERATIONS) + " ns/op");
+
+    socket.close();
+  }
+
+  private static void cycle(ConnectionManager manager, AcceptingChannel channel,
+      Identifier destination, byte[] data, int iterations) {
+    for (int i = 0; i < iterations; i++) {
+      manager.send(data, destination, -1);
+      drain(manager);
+      manager.messageSent(channel.lastId, channel);
+      drain(manager);
+      manager.messageReceived(data, channel);
+      drain(manager);
+    }
+  }
+
+  private static void drain(ConnectionManager manager) {
+    if (manager.processEvents() != 0) {
+      throw new IllegalStateException("Event couldn't be processed");
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package edu.kit.tm.ptp.connection;
+
+import static org.junit.Assert.assertEquals;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.ReceiveListener;
+import edu.kit.tm.ptp.SendListener;
+import edu.kit.tm.ptp.channels.MessageChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Tests the transition of a connection from connected to authenticated.
+ */
+public class StateConnectedTest {
+  private static final long TIMEOUT = 60 * 1000;
+
+  private static class NullListener implements SendListener, ReceiveListener {
+    @Override
+    public void messageReceived(byte[] data, Identifier source) {
+    }
+
+    @Override
+    public void messageSent(long id, Identifier destination, State state) {
+    }
+  }
+
+  /**
+   * MessageChannel which accepts every message without writing it.
+   */
+  private static class AcceptingChannel extends MessageChannel {
+    long lastId = -1;
+
+    AcceptingChannel(SocketChannel channel, ConnectionManager manager) {
+      super(channel, manager.channelManager);
+    }
+
+    @Override
+    public synchronized boolean addMessage(byte[] data, long id) {
+      lastId = id;
+      return true;
+    }
+  }
+
+  private ConnectionManager manager;
+  private SocketChannel socket;
+  private AcceptingChannel channel;
+  private Identifier destination;
+
+  @Before
+  public void setUp() throws IOException {
+    NullListener listener = new NullListener();
+    manager = new ConnectionManager(0, listener, listener, null);
+    destination = new Identifier("aaaaaaaaaaaaaaaa.onion");
+    socket = SocketChannel.open();
+    channel = new AcceptingChannel(socket, manager);
+
+    // The events are processed by the test instead of the thread of the manager
+    Context context = new Context(manager);
+    context.setState(context.getConcreteConnected());
+    manager.identifierMap.put(destination, channel);
+    manager.channelMap.put(channel, destination);
+    manager.channelContexts.put(channel, context);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    socket.close();
+  }
+
+  @Test
+  public void testSendQueuedBeforeAuthentication() {
+    long id = manager.send(new byte[] {0x1}, destination, TIMEOUT);
+
+    // Waits for the authentication
+    assertEquals(1, manager.processEvents());
+
+    manager.execute(new Runnable() {
+      @Override
+      public void run() {
+        manager.authenticationSuccess(channel, destination);
+      }
+    });
+
+    // The message is retried at once instead of after its timeout
+    assertEquals(0, manager.runTask());
+    assertEquals(0, manager.processEvents());
+    assertEquals(id, channel.lastId);
+  }
+}
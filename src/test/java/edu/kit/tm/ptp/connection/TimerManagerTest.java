@@ -1,5 +1,6 @@
 package edu.kit.tm.ptp.connection;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -16,7 +17,14 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -144,6 +152,185 @@ public class TimerManagerTest {
     assertTrue("Listener was not notified of the expired TTL.", client.disconnected.get());
   }
 
+  /**
+   * Test method for {@link edu.kit.tm.ptp.connection.TimerManager#runTask()}.
+   * Checks whether the timers are updated by an event loop instead of the own thread.
+   */
+  @Test
+  public void testLoopTask() {
+    Client loopClient = new Client();
+    TimerManager loopManager = new TimerManager(loopClient, step);
+
+    assertTrue(loopManager.runTask() <= step);
+    loopManager.setTimerIfNoneExists(identifier, expiration, 0);
+
+    final long start = System.currentTimeMillis();
+    while (!loopClient.disconnected.get()
+        && System.currentTimeMillis() - start < step + expiration + 50) {
+      long next = loopManager.runTask();
+      assertTrue(next > 0 && next <= step);
+
+      try {
+        Thread.sleep(next);
+      } catch (InterruptedException e) {
+        // Sleeping was interrupted. Do nothing.
+      }
+    }
+
+    assertTrue("Listener was not notified of the expired TTL.", loopClient.disconnected.get());
+    assertFalse(loopManager.isRunning());
+  }
+
+  /**
+   * Checks that timers expire shortly after their deadline even if the update interval is long.
+   */
+  @Test
+  public void testSubStepPrecision() throws InterruptedException {
+    Client preciseClient = new Client();
+    TimerManager preciseManager = new TimerManager(preciseClient, 1000);
+    preciseManager.start();
+
+    try {
+      final long start = System.currentTimeMillis();
+      preciseManager.setTimer(identifier, 20, 0);
+
+      while (!preciseClient.disconnected.get() && System.currentTimeMillis() - start < 1000) {
+        Thread.sleep(5);
+      }
+
+      long elapsed = System.currentTimeMillis() - start;
+      assertTrue("Listener was not notified of the expired TTL.",
+          preciseClient.disconnected.get());
+      assertTrue("Timer expired after " + elapsed + "ms", elapsed < 500);
+    } finally {
+      preciseManager.stop();
+    }
+  }
+
+  /**
+   * Checks that timers expire if the updates run on a scheduler instead of an own thread.
+   */
+  @Test
+  public void testScheduler() throws InterruptedException {
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    Client scheduledClient = new Client();
+    TimerManager scheduledManager = new TimerManager(scheduledClient, 1000, scheduler);
+    scheduledManager.start();
+
+    try {
+      assertTrue(scheduledManager.isRunning());
+      final long start = System.currentTimeMillis();
+      scheduledManager.setTimer(identifier, 20, 0);
+
+      while (!scheduledClient.disconnected.get() && System.currentTimeMillis() - start < 1000) {
+        Thread.sleep(5);
+      }
+
+      long elapsed = System.currentTimeMillis() - start;
+      assertTrue("Listener was not notified of the expired TTL.",
+          scheduledClient.disconnected.get());
+      assertTrue("Timer expired after " + elapsed + "ms", elapsed < 500);
+    } finally {
+      scheduledManager.stop();
+      scheduler.shutdown();
+    }
+
+    assertFalse(scheduledManager.isRunning());
+  }
+
+  /**
+   * Checks that expiries are handed to the executor and dropped once the manager has stopped.
+   */
+  @Test
+  public void testExecutor() throws InterruptedException {
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    final BlockingQueue<Runnable> expiries = new LinkedBlockingQueue<>();
+    Client scheduledClient = new Client();
+    TimerManager scheduledManager =
+        new TimerManager(scheduledClient, 1000, scheduler, new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            expiries.add(command);
+          }
+        });
+    scheduledManager.start();
+
+    try {
+      scheduledManager.setTimer(identifier, 20, 0);
+      Runnable expiry = expiries.poll(1, TimeUnit.SECONDS);
+
+      assertTrue("Expiry wasn't handed to the executor.", expiry != null);
+      // Not informed by the scheduler thread
+      assertFalse(scheduledClient.disconnected.get());
+
+      scheduledManager.stop();
+      expiry.run();
+      assertFalse("Listener was informed after stop.", scheduledClient.disconnected.get());
+    } finally {
+      scheduledManager.stop();
+      scheduler.shutdown();
+    }
+  }
+
+  /**
+   * Checks that a loop task with a waker only asks to run again when a timer expires.
+   */
+  @Test
+  public void testWaker() {
+    final AtomicInteger wakeups = new AtomicInteger(0);
+    TimerManager loopManager = new TimerManager(new Client(), step);
+    loopManager.setWaker(new Runnable() {
+      @Override
+      public void run() {
+        wakeups.incrementAndGet();
+      }
+    });
+
+    // No timers, wait until woken
+    assertEquals(-1, loopManager.runTask());
+
+    loopManager.setTimer(identifier, 60000, 0);
+    assertEquals(1, wakeups.get());
+    long timeout = loopManager.runTask();
+    assertTrue("Unexpected timeout " + timeout, timeout > step && timeout <= 60000);
+
+    // A later timer doesn't change the next wakeup
+    loopManager.setTimer(identifier, 120000, 1);
+    assertEquals(1, wakeups.get());
+
+    loopManager.setTimer(identifier, 1000, 1);
+    assertEquals(2, wakeups.get());
+
+    loopManager.clear();
+    assertEquals(0, loopManager.size());
+    assertEquals(-1, loopManager.runTask());
+  }
+
+  /**
+   * Checks that removed and overwritten timers don't expire.
+   */
+  @Test
+  public void testRemoveAndReset() throws InterruptedException {
+    Client loopClient = new Client();
+    TimerManager loopManager = new TimerManager(loopClient, step);
+
+    loopManager.setTimer(identifier, 20, 0);
+    loopManager.setTimer(identifier, 20, 1);
+    loopManager.remove(identifier, 0);
+    // Moves the deadline to the future
+    loopManager.setTimer(identifier, 60000, 1);
+    assertEquals(1, loopManager.size());
+
+    Thread.sleep(50);
+    loopManager.runTask();
+
+    assertFalse(loopClient.disconnected.get());
+    assertEquals(1, loopManager.size());
+
+    loopManager.remove(identifier, 1);
+    assertEquals(0, loopManager.size());
+  }
+
   /**
    * Test method for {@link edu.kit.tm.ptp.thread.Suspendable#running()}.
    * Checks whether the running TTLManager, the not started TTLManager and the stopped running
@@ -0,0 +1,121 @@
+package edu.kit.tm.ptp.connection;
+
+import edu.kit.tm.ptp.Identifier;
+import edu.kit.tm.ptp.utility.ObjectLongMap;
+
+/**
+ * Compares the hashed timing wheel of the {@link TimerManager} with the previous design which
+ * subtracted the step from every timer on every update. Sets the timers of 100000 peers, resets
+ * them like {@link edu.kit.tm.ptp.IsAliveManager} does for every message and measures the cost of
+ * an update while no timer expires.
+ *
+ * <p>
+ * Not a JUnit test. Run the main method with the test classpath.
+ * </p>
+ */
+public class TimerWheelBenchmark {
+  private static final int PEERS = 100000;
+  private static final int RESETS = 2000000;
+  private static final int UPDATES = 1000;
+  private static final int TIMEOUT = 60000;
+  private static final int STEP = 1000;
+  private static final int ROUNDS = 3;
+
+  private static final ExpireListener listener = new ExpireListener() {
+    @Override
+    public void expired(Identifier identifier, int timerClass) {
+      throw new IllegalStateException("No timer should expire");
+    }
+  };
+
+  /**
+   * The previous design, subtracts the step from all timers on every update.
+   */
+  private static class ScanTimers {
+    private final ObjectLongMap<Identifier> timers = new ObjectLongMap<>();
+
+    synchronized void setTimer(Identifier identifier, int timer) {
+      timers.put(identifier, timer);
+    }
+
+    synchronized void remove(Identifier identifier) {
+      timers.remove(identifier);
+    }
+
+    synchronized void update() {
+      for (int slot = 0; slot < timers.capacity(); slot++) {
+        if (timers.keyAt(slot) != null) {
+          long timer = timers.valueAt(slot) - STEP;
+          timers.setValueAt(slot, timer);
+
+          if (timer < 0) {
+            throw new IllegalStateException("No timer should expire");
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the benchmark.
+   */
+  public static void main(String[] args) {
+    Identifier[] peers = new Identifier[PEERS];
+
+    for (int i = 0; i < PEERS; i++) {
+      peers[i] = new Identifier(String.format("%016d.onion", i));
+    }
+
+    for (int round = 0; round < ROUNDS; round++) {
+      System.out.println("Round " + (round + 1));
+      runWheel(peers);
+      runScan(peers);
+    }
+  }
+
+  private static void runWheel(Identifier[] peers) {
+    TimerManager manager = new TimerManager(listener, STEP);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < RESETS; i++) {
+      Identifier peer = peers[i % PEERS];
+      manager.remove(peer, 0);
+      manager.setTimer(peer, TIMEOUT, 1);
+    }
+    long resets = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < UPDATES; i++) {
+      manager.runTask();
+    }
+    long updates = System.nanoTime() - start;
+
+    print("TimingWheel", manager.size(), resets, updates);
+  }
+
+  private static void runScan(Identifier[] peers) {
+    ScanTimers timers = new ScanTimers();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < RESETS; i++) {
+      Identifier peer = peers[i % PEERS];
+      timers.remove(peer);
+      timers.setTimer(peer, TIMEOUT);
+    }
+    long resets = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    // Fewer updates as the step would expire the timers
+    for (int i = 0; i < TIMEOUT / STEP - 1; i++) {
+      timers.update();
+    }
+    long updates = (System.nanoTime() - start) * UPDATES / (TIMEOUT / STEP - 1);
+
+    print("Scan", timers.timers.size(), resets, updates);
+  }
+
+  private static void print(String name, int timers, long resetNanos, long updateNanos) {
+    System.out.println(String.format("%-12s %d timers: %6.1f ns/reset, %9.1f us/update", name,
+        timers, (double) resetNanos / RESETS, updateNanos / 1000.0 / UPDATES));
+  }
+}
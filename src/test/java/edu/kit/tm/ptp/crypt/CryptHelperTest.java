@@ -1,6 +1,7 @@
 package edu.kit.tm.ptp.crypt;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
 import edu.kit.tm.ptp.Identifier;
@@ -16,11 +17,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CryptHelperTest {
 
@@ -78,4 +83,51 @@ public class CryptHelperTest {
     ptp.exit();
   }
 
+  /**
+   * Checks that several threads can verify signatures at the same time.
+   */
+  @Test
+  public void testParallelVerify() throws GeneralSecurityException, InterruptedException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    final KeyPair pair = generator.generateKeyPair();
+
+    final CryptHelper helper = new CryptHelper();
+    helper.init();
+    helper.setKeyPair(pair);
+
+    final byte[] data = new byte[] {1, 2, 3, 4};
+    final byte[] signature = helper.sign(ByteBuffer.wrap(data));
+    final AtomicInteger valid = new AtomicInteger(0);
+    final int rounds = 50;
+    Thread[] threads = new Thread[4];
+
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < rounds; j++) {
+              if (helper.verifySignature(ByteBuffer.wrap(data), signature,
+                  helper.decodePublicKey(helper.getPublicKeyBytes()))) {
+                valid.incrementAndGet();
+              }
+            }
+          } catch (GeneralSecurityException e) {
+            // Counted as invalid
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(threads.length * rounds, valid.get());
+
+    byte[] other = new byte[] {4, 3, 2, 1};
+    assertFalse(helper.verifySignature(ByteBuffer.wrap(other), signature, pair.getPublic()));
+  }
 }
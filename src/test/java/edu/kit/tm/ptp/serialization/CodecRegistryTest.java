@@ -0,0 +1,167 @@
+package edu.kit.tm.ptp.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class CodecRegistryTest {
+  private CodecRegistry codecs;
+
+  /**
+   * Codec which encodes a String as its length.
+   */
+  private static class LengthCodec implements MessageCodec<String> {
+    @Override
+    public ByteBuffer encode(String message) {
+      return ByteBuffer.wrap(new byte[] {(byte) message.length()});
+    }
+
+    @Override
+    public String decode(byte[] data, int offset, int length) {
+      return "length " + data[offset];
+    }
+  }
+
+  @Before
+  public void setUp() {
+    Serializer serializer = new Serializer();
+    serializer.registerClass(byte[].class);
+    serializer.registerClass(ByteArrayMessage.class);
+    codecs = new CodecRegistry(serializer);
+  }
+
+  @Test
+  public void testByteArrayWithoutCopy() throws IOException {
+    byte[] data = new byte[] {1, 2, 3};
+    ByteBuffer[] encoded = codecs.encode(data);
+
+    assertEquals(CodecRegistry.BYTE_ARRAY_TAG, encoded[0].get(0));
+    assertSame(data, encoded[1].array());
+
+    assertArrayEquals(data, (byte[]) codecs.decode(toArray(encoded)));
+  }
+
+  @Test
+  public void testByteBuffer() throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(new byte[] {0, 1, 2, 3});
+    buffer.position(1);
+
+    ByteBuffer[] encoded = codecs.encode(buffer);
+    assertEquals(CodecRegistry.BYTE_BUFFER_TAG, encoded[0].get(0));
+    // Position of the supplied buffer is kept
+    assertEquals(1, buffer.position());
+
+    ByteBuffer decoded = (ByteBuffer) codecs.decode(toArray(encoded));
+    assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 3}), decoded);
+  }
+
+  @Test
+  public void testDirectBufferAsBytes() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(3);
+    buffer.put(new byte[] {1, 2, 3}).flip();
+
+    ByteBuffer[] encoded = codecs.encodeBytes(buffer);
+    assertEquals(CodecRegistry.BYTE_ARRAY_TAG, encoded[0].get(0));
+    assertTrue(encoded[1].isDirect());
+
+    assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) codecs.decode(toArray(encoded)));
+  }
+
+  @Test
+  public void testKryo() throws IOException {
+    ByteArrayMessage message = new ByteArrayMessage(new byte[] {1, 2});
+    ByteBuffer[] encoded = codecs.encode(message);
+
+    assertEquals(CodecRegistry.KRYO_TAG, encoded[0].get(0));
+
+    Object decoded = codecs.decode(toArray(encoded));
+    assertArrayEquals(message.getData(), ((ByteArrayMessage) decoded).getData());
+  }
+
+  @Test
+  public void testCustomCodec() throws IOException {
+    assertFalse(codecs.hasCodec(String.class));
+    codecs.registerCodec(String.class, new LengthCodec());
+    assertTrue(codecs.hasCodec(String.class));
+
+    assertEquals("length 5", codecs.decode(toArray(codecs.encode("Hallo"))));
+  }
+
+  @Test
+  public void testPeekType() throws IOException {
+    codecs.registerCodec(String.class, new LengthCodec());
+
+    assertEquals(byte[].class, codecs.peekType(toArray(codecs.encode(new byte[] {1}))));
+    assertEquals(ByteBuffer.class,
+        codecs.peekType(toArray(codecs.encode(ByteBuffer.allocate(1)))));
+    assertEquals(String.class, codecs.peekType(toArray(codecs.encode("Hallo"))));
+    assertEquals(ByteArrayMessage.class,
+        codecs.peekType(toArray(codecs.encode(new ByteArrayMessage(new byte[] {1})))));
+  }
+
+  @Test
+  public void testTtl() throws IOException {
+    byte[] withTtl = toArray(codecs.encode(new byte[] {1, 2}, 1500));
+    byte[] withoutTtl = toArray(codecs.encode(new byte[] {1, 2}));
+
+    assertEquals(1500, CodecRegistry.peekTtl(withTtl));
+    assertEquals(-1, CodecRegistry.peekTtl(withoutTtl));
+    assertEquals(byte[].class, codecs.peekType(withTtl));
+    assertArrayEquals(new byte[] {1, 2}, (byte[]) codecs.decode(withTtl));
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedTtl() throws IOException {
+    codecs.decode(new byte[] {CodecRegistry.TTL_TAG, 0, 0, 1});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRegisterTwice() {
+    codecs.registerCodec(String.class, new LengthCodec());
+    codecs.registerCodec(String.class, new LengthCodec());
+  }
+
+  @Test
+  public void testProbe() throws IOException {
+    byte[] ping = CodecRegistry.encodeProbe(CodecRegistry.PING_TAG, -42L);
+    assertEquals(CodecRegistry.PING_TAG, CodecRegistry.peekProbe(ping));
+    assertEquals(-42L, CodecRegistry.probeStamp(ping));
+
+    byte[] pong = CodecRegistry.encodeProbe(CodecRegistry.PONG_TAG, Long.MAX_VALUE);
+    assertEquals(CodecRegistry.PONG_TAG, CodecRegistry.peekProbe(pong));
+    assertEquals(Long.MAX_VALUE, CodecRegistry.probeStamp(pong));
+
+    // Regular messages aren't mistaken for probes
+    assertEquals(-1, CodecRegistry.peekProbe(new byte[0]));
+    assertEquals(-1, CodecRegistry.peekProbe(toArray(codecs.encode(new byte[8]))));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownTag() throws IOException {
+    codecs.decode(new byte[] {(byte) 200, 1});
+  }
+
+  private static byte[] toArray(ByteBuffer[] buffers) {
+    int length = 0;
+
+    for (ByteBuffer buffer : buffers) {
+      length += buffer.remaining();
+    }
+
+    ByteBuffer frame = ByteBuffer.allocate(length);
+
+    for (ByteBuffer buffer : buffers) {
+      frame.put(buffer.duplicate());
+    }
+
+    return frame.array();
+  }
+}
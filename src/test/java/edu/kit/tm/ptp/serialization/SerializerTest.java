@@ -2,6 +2,7 @@ package edu.kit.tm.ptp.serialization;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import edu.kit.tm.ptp.utility.Constants;
 
@@ -11,6 +12,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SerializerTest {
   private Serializer serializer;
@@ -40,4 +42,89 @@ public class SerializerTest {
     assertArrayEquals(message.getData(), ((ByteArrayMessage) deserializedMessage).getData());
   }
 
+  @Test
+  public void testPeekClass() throws IOException {
+    serializer.registerClass(byte[].class);
+    serializer.registerClass(ByteArrayMessage.class);
+
+    byte[] serialized = serializer.serialize(new ByteArrayMessage(new byte[] {1}));
+    assertEquals(ByteArrayMessage.class, serializer.peekClass(serialized, 0, serialized.length));
+
+    serialized = serializer.serialize(new byte[] {1});
+    assertEquals(byte[].class, serializer.peekClass(serialized, 0, serialized.length));
+  }
+
+  @Test(expected = IOException.class)
+  public void testPeekUnregisteredClass() throws IOException {
+    serializer.registerClass(byte[].class);
+    serializer.registerClass(ByteArrayMessage.class);
+
+    Serializer other = new Serializer();
+    other.registerClass(byte[].class);
+
+    byte[] serialized = serializer.serialize(new ByteArrayMessage(new byte[] {1}));
+    other.peekClass(serialized, 0, serialized.length);
+  }
+
+  @Test
+  public void testExactLength() throws IOException {
+    serializer.registerClass(byte[].class);
+
+    // Class id, length and data without unused capacity
+    int length = serializer.serialize(new byte[] {1, 2, 3}).length;
+    assertTrue(length < 10);
+
+    byte[] large = new byte[100000];
+    large[large.length - 1] = 1;
+    byte[] serialized = serializer.serialize(large);
+    assertTrue(serialized.length < large.length + 10);
+    assertArrayEquals(large, (byte[]) serializer.deserialize(serialized));
+
+    // Buffer of the thread is reused
+    assertEquals(length, serializer.serialize(new byte[] {1, 2, 3}).length);
+  }
+
+  @Test
+  public void testSerializeInOtherThreads() throws Exception {
+    serializer.registerClass(byte[].class);
+    final byte[] serializedMessage = serializer.serialize(new byte[] {1, 2, 3});
+
+    // Registered after the first serialization, other threads need to register it as well
+    serializer.registerClass(ByteArrayMessage.class);
+    final byte[] serializedByteArrayMessage =
+        serializer.serialize(new ByteArrayMessage(new byte[] {4, 5}));
+
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread[] threads = new Thread[4];
+
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < 1000; j++) {
+              assertArrayEquals(new byte[] {1, 2, 3},
+                  (byte[]) serializer.deserialize(serializedMessage));
+              ByteArrayMessage message =
+                  (ByteArrayMessage) serializer.deserialize(serializedByteArrayMessage);
+              assertArrayEquals(new byte[] {4, 5}, message.getData());
+              assertArrayEquals(serializedByteArrayMessage, serializer.serialize(message));
+            }
+          } catch (Throwable t) {
+            error.set(t);
+          }
+        }
+      });
+      threads[i].start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    if (error.get() != null) {
+      throw new AssertionError(error.get());
+    }
+  }
+
 }
@@ -0,0 +1,159 @@
+package edu.kit.tm.ptp.thread;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the handoff of events between threads using a {@link RingBuffer} with the different
+ * wait strategies against the previous design of a ConcurrentLinkedQueue and a Semaphore.
+ * Measures the throughput of bursts and the latency of single events.
+ *
+ * <p>
+ * Not a JUnit test. Run the main method with the test classpath.
+ * </p>
+ */
+public class EventHandoffBenchmark {
+  private static final int PRODUCERS = 2;
+  private static final int BURST_EVENTS = 2000000;
+  private static final int LATENCY_EVENTS = 20000;
+  private static final int ROUNDS = 3;
+
+  /**
+   * Handoff implementation under test.
+   */
+  private abstract static class Handoff {
+    final AtomicLong latencySum = new AtomicLong();
+
+    abstract void add(long timestamp) throws InterruptedException;
+
+    /**
+     * Consumes events until the supplied number has been received.
+     */
+    abstract void consume(long events) throws InterruptedException;
+  }
+
+  private static class QueueHandoff extends Handoff {
+    private final Queue<Long> queue = new ConcurrentLinkedQueue<>();
+    private final Semaphore semaphore = new Semaphore(0);
+
+    @Override
+    void add(long timestamp) {
+      queue.add(timestamp);
+      semaphore.release();
+    }
+
+    @Override
+    void consume(long events) throws InterruptedException {
+      long received = 0;
+
+      while (received < events) {
+        semaphore.acquire();
+        semaphore.drainPermits();
+
+        Iterator<Long> it = queue.iterator();
+        while (it.hasNext()) {
+          latencySum.addAndGet(System.nanoTime() - it.next());
+          it.remove();
+          received++;
+        }
+      }
+    }
+  }
+
+  private static class RingHandoff extends Handoff {
+    private final RingBuffer<long[]> ring;
+
+    RingHandoff(WaitStrategy.Type type) {
+      ring = new RingBuffer<>(4096, WaitStrategy.create(type));
+    }
+
+    @Override
+    void add(long timestamp) {
+      long[] event = new long[] {timestamp};
+
+      while (!ring.offer(event)) {
+        Thread.yield();
+      }
+    }
+
+    @Override
+    void consume(long events) throws InterruptedException {
+      long received = 0;
+      long[] event;
+
+      while (received < events) {
+        while ((event = ring.poll()) != null) {
+          latencySum.addAndGet(System.nanoTime() - event[0]);
+          received++;
+        }
+
+        if (received < events) {
+          ring.await(-1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the benchmark.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    for (int round = 0; round < ROUNDS; round++) {
+      System.out.println("Round " + (round + 1));
+      run("Semaphore/ConcurrentLinkedQueue", new QueueHandoff(), new QueueHandoff());
+
+      for (WaitStrategy.Type type : WaitStrategy.Type.values()) {
+        run("RingBuffer/" + type, new RingHandoff(type), new RingHandoff(type));
+      }
+    }
+  }
+
+  private static void run(String name, Handoff burst, Handoff single)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    produce(burst, BURST_EVENTS, false);
+    long elapsed = System.nanoTime() - start;
+
+    produce(single, LATENCY_EVENTS, true);
+
+    System.out.println(String.format("  %-32s %8.1f ns/event burst, %8.1f us latency", name,
+        elapsed / (double) (PRODUCERS * BURST_EVENTS),
+        single.latencySum.get() / (double) (PRODUCERS * LATENCY_EVENTS) / 1000));
+  }
+
+  private static void produce(final Handoff handoff, final int events, final boolean pause)
+      throws InterruptedException {
+    Thread[] producers = new Thread[PRODUCERS];
+
+    for (int p = 0; p < PRODUCERS; p++) {
+      producers[p] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < events; i++) {
+              handoff.add(System.nanoTime());
+
+              if (pause) {
+                // Let the consumer go idle between events
+                TimeUnit.MICROSECONDS.sleep(50);
+              }
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+      producers[p].start();
+    }
+
+    handoff.consume((long) PRODUCERS * events);
+
+    for (Thread producer : producers) {
+      producer.join();
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package edu.kit.tm.ptp.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class OrderedExecutorTest {
+  private static final int THREADS = 4;
+  private static final int KEYS = 8;
+  private static final int TASKS = 1000;
+
+  private ExecutorService threads;
+  private OrderedExecutor executor;
+
+  @Before
+  public void setUp() {
+    threads = Executors.newFixedThreadPool(THREADS);
+    executor = new OrderedExecutor(threads);
+  }
+
+  @After
+  public void tearDown() {
+    executor.stop();
+    threads.shutdownNow();
+  }
+
+  @Test
+  public void testOrderPerKey() throws InterruptedException {
+    final List<List<Integer>> results = new ArrayList<>();
+    final CountDownLatch done = new CountDownLatch(KEYS * TASKS);
+
+    for (int key = 0; key < KEYS; key++) {
+      // Tasks of a key never run concurrently
+      results.add(new ArrayList<Integer>());
+    }
+
+    for (int i = 0; i < TASKS; i++) {
+      for (int key = 0; key < KEYS; key++) {
+        final List<Integer> result = results.get(key);
+        final int value = i;
+
+        executor.execute("key" + key, new Runnable() {
+          @Override
+          public void run() {
+            synchronized (result) {
+              result.add(value);
+            }
+            done.countDown();
+          }
+        });
+      }
+    }
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+
+    for (List<Integer> result : results) {
+      synchronized (result) {
+        assertEquals(TASKS, result.size());
+
+        for (int i = 0; i < TASKS; i++) {
+          assertEquals(Integer.valueOf(i), result.get(i));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSlowKeyDoesntBlockOthers() throws InterruptedException {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch other = new CountDownLatch(1);
+
+    executor.execute("slow", new Runnable() {
+      @Override
+      public void run() {
+        blocked.countDown();
+
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+
+    assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+    executor.execute("slow", new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+    executor.execute("fast", new Runnable() {
+      @Override
+      public void run() {
+        other.countDown();
+      }
+    });
+
+    assertTrue(other.await(10, TimeUnit.SECONDS));
+    assertEquals(1, executor.getQueued());
+    release.countDown();
+  }
+
+  @Test
+  public void testDiscardAfterStop() throws InterruptedException {
+    executor.stop();
+
+    final CountDownLatch run = new CountDownLatch(1);
+    executor.execute("key", new Runnable() {
+      @Override
+      public void run() {
+        run.countDown();
+      }
+    });
+
+    assertFalse(run.await(100, TimeUnit.MILLISECONDS));
+    assertEquals(0, executor.getQueued());
+  }
+
+  @Test
+  public void testErrorDoesntBlockKey() throws InterruptedException {
+    final CountDownLatch run = new CountDownLatch(1);
+
+    executor.execute("key", new Runnable() {
+      @Override
+      public void run() {
+        throw new Error("Test error");
+      }
+    });
+    executor.execute("key", new Runnable() {
+      @Override
+      public void run() {
+        run.countDown();
+      }
+    });
+
+    assertTrue(run.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testRejectedRunsInCaller() {
+    threads.shutdown();
+
+    final List<Integer> result = new ArrayList<>();
+
+    for (int i = 0; i < 3; i++) {
+      final int value = i;
+
+      executor.execute("key", new Runnable() {
+        @Override
+        public void run() {
+          result.add(value);
+        }
+      });
+    }
+
+    assertEquals(3, result.size());
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Integer.valueOf(i), result.get(i));
+    }
+
+    assertEquals(0, executor.getQueued());
+  }
+}
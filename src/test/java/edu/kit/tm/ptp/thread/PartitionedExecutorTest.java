@@ -0,0 +1,247 @@
+package edu.kit.tm.ptp.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PartitionedExecutorTest {
+  private static final int THREADS = 4;
+  private static final int KEYS = 8;
+  private static final int TASKS = 1000;
+
+  private PartitionedExecutor executor;
+
+  @Before
+  public void setUp() {
+    executor = new PartitionedExecutor(THREADS, Thread.currentThread().getThreadGroup(), "Test");
+    executor.start();
+  }
+
+  @After
+  public void tearDown() {
+    executor.stop();
+  }
+
+  @Test
+  public void testOrderPerKey() throws InterruptedException {
+    final List<List<Integer>> results = new ArrayList<>();
+    final CountDownLatch done = new CountDownLatch(KEYS * TASKS);
+
+    for (int key = 0; key < KEYS; key++) {
+      // Only accessed by the worker of the key
+      results.add(new ArrayList<Integer>());
+    }
+
+    for (int i = 0; i < TASKS; i++) {
+      for (int key = 0; key < KEYS; key++) {
+        final List<Integer> result = results.get(key);
+        final int value = i;
+
+        executor.execute("key" + key, new Runnable() {
+          @Override
+          public void run() {
+            result.add(value);
+            done.countDown();
+          }
+        });
+      }
+    }
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+
+    for (List<Integer> result : results) {
+      assertEquals(TASKS, result.size());
+
+      for (int i = 0; i < TASKS; i++) {
+        assertEquals(Integer.valueOf(i), result.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testKeysRunInParallel() throws InterruptedException {
+    String first = "a";
+    String second = null;
+
+    for (int i = 0; second == null; i++) {
+      if (executor.partitionOf("b" + i) != executor.partitionOf(first)) {
+        second = "b" + i;
+      }
+    }
+
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+
+    executor.execute(first, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          blocked.await();
+        } catch (InterruptedException e) {
+          // Executor has been stopped
+        }
+      }
+    });
+
+    executor.execute(second, new Runnable() {
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    });
+
+    // Second task isn't blocked by the first one
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    blocked.countDown();
+  }
+
+  @Test
+  public void testStatistics() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(TASKS);
+
+    for (int i = 0; i < TASKS; i++) {
+      executor.execute("key", new Runnable() {
+        @Override
+        public void run() {
+          done.countDown();
+        }
+      });
+    }
+
+    final CountDownLatch reached = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    // The statistics of the previous tasks have been updated once the next task runs
+    executor.execute("key", new Runnable() {
+      @Override
+      public void run() {
+        reached.countDown();
+
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          // Executor has been stopped
+        }
+      }
+    });
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(reached.await(10, TimeUnit.SECONDS));
+
+    PartitionStatistics[] statistics = executor.getStatistics();
+    release.countDown();
+    assertEquals(THREADS, statistics.length);
+
+    PartitionStatistics partition = statistics[executor.partitionOf("key")];
+    assertEquals(TASKS, partition.getExecuted());
+    assertEquals(0, partition.getQueueDepth());
+    assertTrue(partition.getMaxNanos() >= partition.getAverageNanos());
+  }
+
+  @Test
+  public void testUntimed() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(1);
+    final CountDownLatch reached = new CountDownLatch(1);
+
+    executor.execute("key", new Runnable() {
+      @Override
+      public void run() {
+        PartitionedExecutor.runUntimed(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              Thread.sleep(100);
+            } catch (InterruptedException e) {
+              // Executor has been stopped
+            }
+          }
+        });
+        done.countDown();
+      }
+    });
+
+    executor.execute("key", new Runnable() {
+      @Override
+      public void run() {
+        reached.countDown();
+      }
+    });
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(reached.await(10, TimeUnit.SECONDS));
+
+    PartitionStatistics partition = executor.getStatistics()[executor.partitionOf("key")];
+    assertTrue(partition.getExecuted() >= 1);
+    assertTrue("Untimed part was measured",
+        partition.getMaxNanos() < TimeUnit.MILLISECONDS.toNanos(100));
+  }
+
+  @Test
+  public void testBackpressure() throws InterruptedException {
+    final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch resumed = new CountDownLatch(1);
+    PartitionedExecutor bounded = new PartitionedExecutor(1, 4,
+        new PartitionedExecutor.Backpressure() {
+          @Override
+          public void pause(Object key) {
+            calls.add("pause " + key);
+          }
+
+          @Override
+          public void resume(Object key) {
+            calls.add("resume " + key);
+            resumed.countDown();
+          }
+        }, Thread.currentThread().getThreadGroup(), "Bounded");
+
+    final CountDownLatch release = new CountDownLatch(1);
+    Runnable blocking = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          // Executor has been stopped
+        }
+      }
+    };
+    Runnable empty = new Runnable() {
+      @Override
+      public void run() {
+      }
+    };
+
+    // Not started yet, tasks stay queued
+    for (int i = 0; i < 6; i++) {
+      bounded.execute("key", i == 0 ? blocking : empty);
+    }
+
+    // Paused once even though the queue got full several times
+    assertEquals(Collections.singletonList("pause key"), calls);
+
+    bounded.start();
+    release.countDown();
+
+    try {
+      assertTrue(resumed.await(10, TimeUnit.SECONDS));
+      assertEquals(2, calls.size());
+      assertEquals("resume key", calls.get(1));
+    } finally {
+      bounded.stop();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidThreads() {
+    new PartitionedExecutor(0, Thread.currentThread().getThreadGroup(), "Test");
+  }
+}
@@ -0,0 +1,170 @@
+package edu.kit.tm.ptp.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RingBufferTest {
+  private static final int PRODUCERS = 4;
+  private static final int ELEMENTS = 100000;
+
+  @Test
+  public void testOfferPoll() {
+    RingBuffer<Integer> ring = new RingBuffer<>(3, WaitStrategy.create(WaitStrategy.Type.PARK));
+
+    assertEquals(4, ring.capacity());
+    assertTrue(ring.isEmpty());
+    assertNull(ring.poll());
+
+    for (int i = 0; i < 4; i++) {
+      assertTrue(ring.offer(i));
+    }
+    assertFalse(ring.offer(4));
+
+    assertEquals(Integer.valueOf(0), ring.poll());
+    assertTrue(ring.offer(4));
+
+    for (int i = 1; i <= 4; i++) {
+      assertEquals(Integer.valueOf(i), ring.poll());
+    }
+    assertTrue(ring.isEmpty());
+  }
+
+  @Test
+  public void testOfferTimeout() throws InterruptedException {
+    final RingBuffer<Integer> ring =
+        new RingBuffer<>(1, WaitStrategy.create(WaitStrategy.Type.PARK));
+    assertEquals(2, ring.capacity());
+    assertTrue(ring.offer(0));
+    assertTrue(ring.offer(0));
+
+    long start = System.nanoTime();
+    assertFalse(ring.offer(1, TimeUnit.MILLISECONDS.toNanos(20)));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+
+    Thread consumer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          // Poll earlier
+        }
+        ring.poll();
+      }
+    });
+    consumer.start();
+
+    // The producer parks until the consumer frees the slot
+    assertTrue(ring.offer(1, TimeUnit.SECONDS.toNanos(5)));
+    consumer.join();
+  }
+
+  @Test
+  public void testSignal() throws InterruptedException {
+    final AtomicInteger signals = new AtomicInteger(0);
+    RingBuffer<Integer> ring = new RingBuffer<>(4, new Signal() {
+      @Override
+      public void signal() {
+        signals.incrementAndGet();
+      }
+    });
+
+    assertTrue(ring.offer(0));
+    ring.signal();
+    assertEquals(2, signals.get());
+    assertEquals(Integer.valueOf(0), ring.poll());
+
+    try {
+      ring.await(0);
+      fail("Consumer without wait strategy awaited elements");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCapacity() {
+    new RingBuffer<Integer>(0, WaitStrategy.create(WaitStrategy.Type.PARK));
+  }
+
+  @Test
+  public void testAwaitTimeout() throws InterruptedException {
+    for (WaitStrategy.Type type : WaitStrategy.Type.values()) {
+      RingBuffer<Integer> ring = new RingBuffer<>(4, WaitStrategy.create(type));
+      long start = System.nanoTime();
+
+      ring.await(TimeUnit.MILLISECONDS.toNanos(50));
+
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+  }
+
+  @Test
+  public void testMultipleProducersPark() throws InterruptedException {
+    testMultipleProducers(WaitStrategy.Type.PARK);
+  }
+
+  @Test
+  public void testMultipleProducersYield() throws InterruptedException {
+    testMultipleProducers(WaitStrategy.Type.YIELD);
+  }
+
+  @Test
+  public void testMultipleProducersSpin() throws InterruptedException {
+    testMultipleProducers(WaitStrategy.Type.SPIN);
+  }
+
+  private void testMultipleProducers(WaitStrategy.Type type) throws InterruptedException {
+    final RingBuffer<long[]> ring = new RingBuffer<>(64, WaitStrategy.create(type));
+    Thread[] producers = new Thread[PRODUCERS];
+
+    for (int p = 0; p < PRODUCERS; p++) {
+      final int producer = p;
+      producers[p] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < ELEMENTS; i++) {
+            long[] element = new long[] {producer, i};
+
+            while (!ring.offer(element)) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+      producers[p].start();
+    }
+
+    long[] next = new long[PRODUCERS];
+    int received = 0;
+
+    while (received < PRODUCERS * ELEMENTS) {
+      long[] element = ring.poll();
+
+      if (element == null) {
+        ring.await(TimeUnit.SECONDS.toNanos(1));
+        continue;
+      }
+
+      // Elements of a single producer keep their order
+      int producer = (int) element[0];
+      assertEquals(next[producer], element[1]);
+      next[producer]++;
+      received++;
+    }
+
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    assertTrue(ring.isEmpty());
+  }
+}
@@ -0,0 +1,85 @@
+package edu.kit.tm.ptp.utility;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class BufferPoolTest {
+  private BufferPool pool;
+
+  @Before
+  public void setUp() {
+    pool = new BufferPool(2);
+  }
+
+  @Test
+  public void testReuse() {
+    PooledBuffer buffer = pool.acquire(100);
+    assertEquals(100, buffer.length());
+    assertEquals(0, pool.idle());
+
+    buffer.release();
+    assertEquals(1, pool.idle());
+
+    PooledBuffer other = pool.acquire(1000);
+    assertSame(buffer, other);
+    assertEquals(1000, other.length());
+    assertEquals(0, pool.idle());
+  }
+
+  @Test
+  public void testSizeClasses() {
+    PooledBuffer small = pool.acquire(1024);
+    PooledBuffer medium = pool.acquire(1025);
+    assertEquals(1024, small.getBuffer().capacity());
+    assertEquals(2048, medium.getBuffer().capacity());
+
+    PooledBuffer large = pool.acquire(1 << 16);
+    assertEquals(1 << 16, large.getBuffer().capacity());
+
+    PooledBuffer unpooled = pool.acquire((1 << 16) + 1);
+    unpooled.release();
+    assertEquals(0, pool.idle());
+  }
+
+  @Test
+  public void testReferences() {
+    PooledBuffer buffer = pool.acquire(10);
+    buffer.retain();
+
+    buffer.release();
+    assertEquals(0, pool.idle());
+
+    buffer.release();
+    assertEquals(1, pool.idle());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReleaseTwice() {
+    PooledBuffer buffer = pool.acquire(10);
+    buffer.release();
+    buffer.release();
+  }
+
+  @Test
+  public void testReadOnlyView() {
+    PooledBuffer buffer = pool.acquire(3);
+    buffer.getBuffer().put(new byte[] {1, 2, 3});
+
+    ByteBuffer view = buffer.asReadOnlyBuffer();
+    assertTrue(view.isReadOnly());
+    assertEquals(3, view.remaining());
+    assertEquals(2, view.get(1));
+    assertArrayEquals(new byte[] {1, 2, 3}, buffer.toArray());
+
+    view.position(3);
+    // Position is reset for every call
+    assertEquals(0, buffer.asReadOnlyBuffer().position());
+  }
+}
@@ -0,0 +1,40 @@
+package edu.kit.tm.ptp.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class KeyCounterTest {
+  @Test
+  public void testCount() {
+    KeyCounter<String> counter = new KeyCounter<>();
+    assertFalse(counter.contains("a"));
+
+    assertEquals(1, counter.increment("a"));
+    assertEquals(2, counter.increment("a"));
+    assertEquals(1, counter.decrement("a"));
+    assertTrue(counter.contains("a"));
+    assertFalse(counter.contains("b"));
+
+    assertEquals(0, counter.decrement("a"));
+    assertFalse(counter.contains("a"));
+    assertEquals(0, counter.get("a"));
+  }
+
+  @Test
+  public void testReleaseBeforeRequest() {
+    KeyCounter<String> counter = new KeyCounter<>();
+
+    assertEquals(-1, counter.decrement("a"));
+    assertFalse(counter.contains("a"));
+    assertEquals(0, counter.increment("a"));
+    assertFalse(counter.contains("a"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullKey() {
+    new KeyCounter<String>().increment(null);
+  }
+}
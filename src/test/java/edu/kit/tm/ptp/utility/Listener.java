@@ -1,19 +1,22 @@
 package edu.kit.tm.ptp.utility;
 
-import edu.kit.tm.ptp.channels.ChannelListener;
 import edu.kit.tm.ptp.channels.MessageChannel;
+import edu.kit.tm.ptp.channels.PooledMessageListener;
+import edu.kit.tm.ptp.channels.RawMessageListener;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class Listener implements ChannelListener {
+public class Listener implements PooledMessageListener, RawMessageListener {
   public AtomicInteger conOpen = new AtomicInteger(0);
   public AtomicInteger conClosed = new AtomicInteger(0);
   public AtomicInteger other = new AtomicInteger(0);
   public AtomicInteger read = new AtomicInteger(0);
   public AtomicInteger write = new AtomicInteger(0);
+  public AtomicInteger pooled = new AtomicInteger(0);
+  public AtomicInteger raw = new AtomicInteger(0);
   private MessageChannel passedChannel;
   private byte[] passedBytes;
   private long passedId;
@@ -38,6 +41,25 @@ public class Listener implements ChannelListener {
     read.incrementAndGet();
   }
 
+  @Override
+  public void rawMessageReceived(byte[] data, MessageChannel source) {
+    raw.incrementAndGet();
+    messageReceived(data, source);
+  }
+
+  @Override
+  public void messageReceived(PooledBuffer data, boolean raw, MessageChannel source) {
+    byte[] bytes = data.toArray();
+    data.release();
+    pooled.incrementAndGet();
+
+    if (raw) {
+      rawMessageReceived(bytes, source);
+    } else {
+      messageReceived(bytes, source);
+    }
+  }
+
   @Override
   public synchronized void channelOpened(MessageChannel channel) {
     passedChannel = channel;
@@ -0,0 +1,71 @@
+package edu.kit.tm.ptp.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongObjectMapTest {
+  private LongObjectMap<String> map;
+
+  @Before
+  public void setUp() {
+    map = new LongObjectMap<>(4);
+  }
+
+  @Test
+  public void testPutGetRemove() {
+    assertNull(map.put(1, "a"));
+    assertEquals("a", map.put(1, "b"));
+    assertEquals("b", map.get(1));
+    assertEquals(1, map.size());
+    assertNull(map.get(2));
+
+    assertEquals("b", map.remove(1));
+    assertNull(map.remove(1));
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testAgainstHashMap() {
+    Map<Long, String> reference = new HashMap<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 100000; i++) {
+      // Small key range to provoke collisions and removals of present keys
+      long key = random.nextInt(512) - 256;
+
+      if (random.nextBoolean()) {
+        String value = Integer.toString(i);
+        assertEquals(reference.put(key, value), map.put(key, value));
+      } else {
+        assertEquals(reference.remove(key), map.remove(key));
+      }
+    }
+
+    assertEquals(reference.size(), map.size());
+
+    int counted = 0;
+    for (int slot = 0; slot < map.capacity(); slot++) {
+      String value = map.valueAt(slot);
+
+      if (value != null) {
+        assertEquals(reference.get(map.keyAt(slot)), value);
+        counted++;
+      }
+    }
+
+    assertEquals(reference.size(), counted);
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullValue() {
+    map.put(1, null);
+  }
+}
@@ -0,0 +1,58 @@
+package edu.kit.tm.ptp.utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class ObjectLongMapTest {
+  private ObjectLongMap<String> map;
+
+  @Before
+  public void setUp() {
+    map = new ObjectLongMap<>(4);
+  }
+
+  @Test
+  public void testPutGetRemove() {
+    map.put("a", 1);
+    assertEquals(1, map.get("a", -1));
+    assertEquals(-1, map.get("b", -1));
+
+    assertFalse(map.putIfAbsent("a", 2));
+    assertEquals(1, map.get("a", -1));
+
+    assertTrue(map.remove("a"));
+    assertFalse(map.remove("a"));
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testAgainstHashMap() {
+    Map<String, Long> reference = new HashMap<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 100000; i++) {
+      String key = Integer.toString(random.nextInt(512));
+
+      if (random.nextBoolean()) {
+        reference.put(key, (long) i);
+        map.put(key, i);
+      } else {
+        assertEquals(reference.remove(key) != null, map.remove(key));
+      }
+    }
+
+    assertEquals(reference.size(), map.size());
+
+    for (Map.Entry<String, Long> entry : reference.entrySet()) {
+      assertEquals(entry.getValue().longValue(), map.get(entry.getKey(), -1));
+    }
+  }
+}